@@ -0,0 +1,42 @@
+package uk.co.littlestickyleaves.aws.lambda.base.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import uk.co.littlestickyleaves.aws.lambda.base.error.ErrorJsonProvider;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures turning an exception into the Lambda API's error json, for shallow and framework-deep stack traces.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ErrorJsonProviderBenchmark {
+
+    @Param({"5", "200"})
+    public int stackDepth;
+
+    private ErrorJsonProvider errorJsonProvider;
+    private Exception exception;
+
+    @Setup
+    public void setUp() {
+        errorJsonProvider = new ErrorJsonProvider();
+        exception = exceptionWithDepth(stackDepth);
+    }
+
+    @Benchmark
+    public String transform() {
+        return errorJsonProvider.transform(exception);
+    }
+
+    private static Exception exceptionWithDepth(int depth) {
+        if (depth <= 1) {
+            return new IllegalStateException("Something went wrong in \"the\" worker");
+        }
+        return exceptionWithDepth(depth - 1);
+    }
+}
@@ -0,0 +1,63 @@
+package uk.co.littlestickyleaves.aws.lambda.base.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import uk.co.littlestickyleaves.aws.lambda.base.api.LambdaIOHandler;
+import uk.co.littlestickyleaves.aws.lambda.base.api.LambdaIOHandlerKeepAlive;
+import uk.co.littlestickyleaves.aws.lambda.base.api.LambdaIOHandlerSimple;
+import uk.co.littlestickyleaves.aws.lambda.base.api.LambdaInputWithId;
+import uk.co.littlestickyleaves.aws.lambda.base.error.ErrorJsonProvider;
+import uk.co.littlestickyleaves.aws.lambda.base.log.LambdaLogger;
+import uk.co.littlestickyleaves.aws.lambda.base.log.LogFormat;
+import uk.co.littlestickyleaves.aws.lambda.base.log.LogLevel;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures one GET for input plus one POST of output, through each LambdaIOHandler,
+ * against an in-process loopback stub of the runtime API.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LambdaIOHandlerBenchmark {
+
+    @Param({"simple", "keepAlive"})
+    public String handler;
+
+    @Param({"128", "65536"})
+    public int payloadSize;
+
+    private RuntimeApiStub runtimeApiStub;
+    private LambdaIOHandler lambdaIOHandler;
+    private byte[] output;
+
+    @Setup
+    public void setUp() throws Exception {
+        LambdaLogger.configure(LogLevel.WARN, LogFormat.TEXT);
+        byte[] payload = new byte[payloadSize];
+        Arrays.fill(payload, (byte) 'x');
+        output = "{\"result\":\"ok\"}".getBytes(StandardCharsets.UTF_8);
+        runtimeApiStub = new RuntimeApiStub(payload);
+        lambdaIOHandler = "simple".equals(handler) ?
+                new LambdaIOHandlerSimple(runtimeApiStub.getEndpoint(), new ErrorJsonProvider()) :
+                new LambdaIOHandlerKeepAlive(runtimeApiStub.getEndpoint(), new ErrorJsonProvider());
+    }
+
+    @TearDown
+    public void tearDown() {
+        runtimeApiStub.close();
+    }
+
+    @Benchmark
+    public LambdaInputWithId roundTrip() throws Exception {
+        LambdaInputWithId lambdaInputWithId = lambdaIOHandler.getLambdaInput();
+        lambdaIOHandler.returnLambdaOutput(lambdaInputWithId.getAwsRequestId(), ByteBuffer.wrap(output));
+        return lambdaInputWithId;
+    }
+}
@@ -0,0 +1,105 @@
+package uk.co.littlestickyleaves.aws.lambda.base.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import uk.co.littlestickyleaves.aws.lambda.base.LambdaRunner;
+import uk.co.littlestickyleaves.aws.lambda.base.LambdaWorker;
+import uk.co.littlestickyleaves.aws.lambda.base.api.LambdaIOHandler;
+import uk.co.littlestickyleaves.aws.lambda.base.api.LambdaInputWithId;
+import uk.co.littlestickyleaves.aws.lambda.base.log.LambdaLogger;
+import uk.co.littlestickyleaves.aws.lambda.base.log.LogFormat;
+import uk.co.littlestickyleaves.aws.lambda.base.log.LogLevel;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the runtime's own overhead per invocation: full LambdaRunner iterations with a no-op LambdaWorker
+ * and an in-memory LambdaIOHandler, at several payload sizes.
+ * Each benchmark call runs a batch of invocations, ended by the handler throwing, as the runner loops forever.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LambdaRunnerBenchmark {
+
+    private static final int BATCH = 1000;
+
+    @Param({"0", "1024", "1048576"})
+    public int payloadSize;
+
+    private InMemoryLambdaIOHandler lambdaIOHandler;
+    private LambdaRunner lambdaRunner;
+
+    @Setup
+    public void setUp() {
+        LambdaLogger.configure(LogLevel.WARN, LogFormat.TEXT);
+        byte[] payload = new byte[payloadSize];
+        Arrays.fill(payload, (byte) 'x');
+        lambdaIOHandler = new InMemoryLambdaIOHandler(payload);
+        LambdaWorker noOpWorker = rawInput -> rawInput;
+        lambdaRunner = new LambdaRunner(lambdaIOHandler, noOpWorker);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long invocations() throws Exception {
+        lambdaIOHandler.remaining = BATCH;
+        try {
+            lambdaRunner.loop();
+        } catch (EndOfBatch endOfBatch) {
+            // expected: the runner only stops when the handler throws
+        }
+        return lambdaIOHandler.outputBytes;
+    }
+
+    private static final class EndOfBatch extends Exception {
+        EndOfBatch() {
+            super("End of benchmark batch", null, false, false);
+        }
+    }
+
+    private static final class InMemoryLambdaIOHandler implements LambdaIOHandler {
+
+        private static final EndOfBatch END_OF_BATCH = new EndOfBatch();
+
+        private final byte[] payload;
+        private int remaining;
+        private long outputBytes;
+
+        InMemoryLambdaIOHandler(byte[] payload) {
+            this.payload = payload;
+        }
+
+        @Override
+        public LambdaInputWithId getLambdaInput() throws Exception {
+            if (remaining-- == 0) {
+                throw END_OF_BATCH;
+            }
+            return new LambdaInputWithId("benchmark-request-id", ByteBuffer.wrap(payload));
+        }
+
+        @Override
+        public void returnLambdaOutput(String awsRequestId, String result) {
+            outputBytes += result.length();
+        }
+
+        @Override
+        public void returnLambdaOutput(String awsRequestId, ByteBuffer result) {
+            outputBytes += result.remaining();
+        }
+
+        @Override
+        public void returnInvocationError(String awsRequestId, Exception exception) {
+            throw new IllegalStateException("No-op worker should not fail", exception);
+        }
+
+        @Override
+        public void returnInitializationError(Exception exception) throws Exception {
+            throw exception;
+        }
+    }
+}
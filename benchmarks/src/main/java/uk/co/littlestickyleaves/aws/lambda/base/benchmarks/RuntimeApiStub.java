@@ -0,0 +1,62 @@
+package uk.co.littlestickyleaves.aws.lambda.base.benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A minimal in-process stand-in for the Lambda runtime API, on a loopback port, for benchmarking the
+ * LambdaIOHandlers. GET next always returns the same payload; every POST is accepted.
+ */
+class RuntimeApiStub implements AutoCloseable {
+
+    private static final String RUNTIME = "/2018-06-01/runtime/";
+
+    private final HttpServer httpServer;
+    private final byte[] payload;
+
+    RuntimeApiStub(byte[] payload) throws IOException {
+        // without this the JDK server's separate header and body writes meet delayed ACKs, costing ~40ms a response
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        this.payload = payload;
+        this.httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.httpServer.createContext(RUNTIME, this::handle);
+        this.httpServer.setExecutor(Executors.newSingleThreadExecutor());
+        this.httpServer.start();
+    }
+
+    String getEndpoint() {
+        return "127.0.0.1:" + httpServer.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (InputStream requestBody = exchange.getRequestBody()) {
+            byte[] discard = new byte[8192];
+            while (requestBody.read(discard) >= 0) {
+                // drain the request so the connection can be kept alive
+            }
+        }
+        if ("GET".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().add("Lambda-Runtime-Aws-Request-Id", "benchmark-request-id");
+            exchange.sendResponseHeaders(200, payload.length);
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+                responseBody.write(payload);
+            }
+        } else {
+            exchange.sendResponseHeaders(202, -1);
+            exchange.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        httpServer.stop(0);
+        ((ExecutorService) httpServer.getExecutor()).shutdownNow();
+    }
+}
@@ -0,0 +1,25 @@
+package uk.co.littlestickyleaves.aws.lambda.base;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Interface for a LambdaWorker which hands back a future of its result rather than the result itself,
+ * so that a worker which fans out to several downstream calls can make them all at once and combine them,
+ * without blocking a thread per call or running executors of its own.
+ * handleAsync is called on the invocation's thread, so InvocationContext.current() works there,
+ * but it isn't set on the executor's threads: capture it first if those need it.
+ * Run one with LambdaRunner.builder(new AsyncLambdaWorkerAdapter(asyncLambdaWorker)).
+ */
+@FunctionalInterface
+public interface AsyncLambdaWorker {
+
+    /**
+     * @param rawInput the input, as a String
+     * @param executor a bounded executor, shared across invocations, for the worker's tasks, which rejects them
+     *                 when full, and cancels them if the invocation runs out of time
+     * @return a future of the output, as a String
+     * @throws Exception if the work can't be started
+     */
+    CompletableFuture<String> handleAsync(String rawInput, Executor executor) throws Exception;
+}
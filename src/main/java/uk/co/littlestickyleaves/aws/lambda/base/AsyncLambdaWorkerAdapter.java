@@ -0,0 +1,185 @@
+package uk.co.littlestickyleaves.aws.lambda.base;
+
+import uk.co.littlestickyleaves.aws.lambda.base.error.InvocationTimeoutException;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lets an AsyncLambdaWorker be driven as a LambdaWorker.
+ * The invocation finishes when the worker's future does; if it hasn't by the invocation's deadline, less a reserve
+ * for posting the error, the future is cancelled and an InvocationTimeoutException thrown instead.
+ * The worker's tasks are kept track of, so that they are cancelled too, interrupting any which are running,
+ * rather than going on taking up the executor's threads.
+ * Unless given an executor, all adapters share one pool of daemon threads, bounded in threads and in queued tasks;
+ * once it is full, tasks are rejected with a RejectedExecutionException, so the invocation fails rather than
+ * running them on its own thread, where the deadline couldn't stop them.
+ * If the wrapped worker is a LambdaLifecycle, its hooks are passed on.
+ */
+public class AsyncLambdaWorkerAdapter implements LambdaWorker, LambdaLifecycle {
+
+    private static final long DEFAULT_RESERVE_MILLIS = 50;
+
+    private static final int MAX_QUEUED_TASKS = 1024;
+
+    private final AsyncLambdaWorker asyncLambdaWorker;
+
+    private final Executor executor;
+
+    private final long reserveMillis;
+
+    public AsyncLambdaWorkerAdapter(AsyncLambdaWorker asyncLambdaWorker) {
+        this(asyncLambdaWorker, SharedExecutor.INSTANCE, DEFAULT_RESERVE_MILLIS);
+    }
+
+    /**
+     * @param asyncLambdaWorker the worker to drive
+     * @param executor the executor to hand the worker
+     * @param reserveMillis how long before the invocation's deadline to stop waiting for the result
+     */
+    public AsyncLambdaWorkerAdapter(AsyncLambdaWorker asyncLambdaWorker, Executor executor, long reserveMillis) {
+        this.asyncLambdaWorker = asyncLambdaWorker;
+        this.executor = executor;
+        this.reserveMillis = reserveMillis;
+    }
+
+    @Override
+    public String handleRaw(String rawInput) throws Exception {
+        InvocationExecutor invocationExecutor = new InvocationExecutor(executor);
+        CompletableFuture<String> result;
+        try {
+            result = asyncLambdaWorker.handleAsync(rawInput, invocationExecutor);
+        } catch (Exception ex) {
+            invocationExecutor.cancel();
+            throw ex;
+        }
+        InvocationContext context = InvocationContext.current();
+        try {
+            if (context != null && context.hasDeadline()) {
+                return result.get(Math.max(context.getRemainingTimeMillis() - reserveMillis, 0),
+                        TimeUnit.MILLISECONDS);
+            }
+            return result.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            while (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        } catch (TimeoutException ex) {
+            result.cancel(true);
+            invocationExecutor.cancel();
+            throw new InvocationTimeoutException("Invocation " + context.getAwsRequestId() +
+                    " was stopped waiting for its result with " + context.getRemainingTimeMillis() +
+                    "ms left before its deadline");
+        } catch (InterruptedException ex) {
+            result.cancel(true);
+            invocationExecutor.cancel();
+            throw ex;
+        }
+    }
+
+    @Override
+    public void init() throws Exception {
+        if (asyncLambdaWorker instanceof LambdaLifecycle) {
+            ((LambdaLifecycle) asyncLambdaWorker).init();
+        }
+    }
+
+    @Override
+    public void beforeCheckpoint() throws Exception {
+        if (asyncLambdaWorker instanceof LambdaLifecycle) {
+            ((LambdaLifecycle) asyncLambdaWorker).beforeCheckpoint();
+        }
+    }
+
+    @Override
+    public void afterRestore() throws Exception {
+        if (asyncLambdaWorker instanceof LambdaLifecycle) {
+            ((LambdaLifecycle) asyncLambdaWorker).afterRestore();
+        }
+    }
+
+    public AsyncLambdaWorker getAsyncLambdaWorker() {
+        return asyncLambdaWorker;
+    }
+
+    /**
+     * @param threads the most threads the pool runs
+     * @param maxQueuedTasks the most tasks it queues for them, beyond which it rejects tasks
+     * @return a pool of daemon threads which go when idle, so none are left over to be snapshotted
+     */
+    static ThreadPoolExecutor boundedPool(int threads, int maxQueuedTasks) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(maxQueuedTasks), runnable -> {
+                    Thread thread = new Thread(runnable, "lambda-async-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Holds the shared pool, so it is only made if an adapter uses it.
+     */
+    private static final class SharedExecutor {
+
+        private static final Executor INSTANCE =
+                boundedPool(Math.max(8, 4 * Runtime.getRuntime().availableProcessors()), MAX_QUEUED_TASKS);
+    }
+
+    /**
+     * The executor handed to the worker for one invocation, which keeps each task's Future,
+     * so they can all be cancelled if the invocation is given up on.
+     */
+    private static final class InvocationExecutor implements Executor {
+
+        private final Executor executor;
+
+        private final Queue<Future<?>> tasks = new ConcurrentLinkedQueue<>();
+
+        private volatile boolean cancelled;
+
+        private InvocationExecutor(Executor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if (cancelled) {
+                throw new RejectedExecutionException("The invocation has been given up on");
+            }
+            FutureTask<Void> task = new FutureTask<>(command, null);
+            tasks.add(task);
+            executor.execute(task);
+            // in case cancel() ran between the check and the add
+            if (cancelled) {
+                task.cancel(true);
+            }
+        }
+
+        private void cancel() {
+            cancelled = true;
+            for (Future<?> task = tasks.poll(); task != null; task = tasks.poll()) {
+                task.cancel(true);
+            }
+        }
+    }
+}
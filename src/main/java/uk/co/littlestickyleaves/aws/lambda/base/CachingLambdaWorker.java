@@ -0,0 +1,239 @@
+package uk.co.littlestickyleaves.aws.lambda.base;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Wraps an idempotent LambdaWorker so that the result for an input it has seen recently is returned again
+ * without calling the worker, for functions which get the same payload many times (retries, duplicates, polling).
+ * Entries are found by a 64-bit hash of the raw input (then checked against the input itself),
+ * expire after a fixed time, and are evicted least recently used first once the cache's estimated size passes its
+ * limit, which by default is a tenth of the maximum heap (which Lambda sizes from the function's memory).
+ * Identical inputs arriving at the same time, from different threads, share one call to the worker.
+ * Failures and null results are not cached.
+ * If the wrapped worker is a LambdaLifecycle, its hooks are passed on.
+ */
+public class CachingLambdaWorker implements LambdaWorker, LambdaLifecycle {
+
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+    private final LambdaWorker lambdaWorker;
+
+    private final long ttlNanos;
+
+    private final long maxBytes;
+
+    // in access order, so the eldest entry is the least recently used
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    private final Map<Key, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    private long bytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public CachingLambdaWorker(LambdaWorker lambdaWorker, long ttlMillis) {
+        this(lambdaWorker, ttlMillis, Runtime.getRuntime().maxMemory() / 10);
+    }
+
+    /**
+     * @param lambdaWorker the worker whose results are cached
+     * @param ttlMillis how long a result stays usable
+     * @param maxBytes roughly how much memory the cached inputs and results may take up
+     */
+    public CachingLambdaWorker(LambdaWorker lambdaWorker, long ttlMillis, long maxBytes) {
+        this.lambdaWorker = lambdaWorker;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public String handleRaw(String rawInput) throws Exception {
+        Key key = new Key(rawInput);
+        String cached = lookup(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        CompletableFuture<String> call = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(key, call);
+        if (existing != null) {
+            coalesced.increment();
+            return await(existing);
+        }
+        try {
+            // it may have been stored between the lookup and taking the in-flight slot
+            cached = lookup(key);
+            if (cached != null) {
+                hits.increment();
+                call.complete(cached);
+                return cached;
+            }
+            misses.increment();
+            String result = lambdaWorker.handleRaw(rawInput);
+            store(key, result);
+            call.complete(result);
+            return result;
+        } catch (Throwable throwable) {
+            call.completeExceptionally(throwable);
+            throw throwable;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    @Override
+    public void init() throws Exception {
+        if (lambdaWorker instanceof LambdaLifecycle) {
+            ((LambdaLifecycle) lambdaWorker).init();
+        }
+    }
+
+    @Override
+    public void beforeCheckpoint() throws Exception {
+        if (lambdaWorker instanceof LambdaLifecycle) {
+            ((LambdaLifecycle) lambdaWorker).beforeCheckpoint();
+        }
+    }
+
+    @Override
+    public void afterRestore() throws Exception {
+        if (lambdaWorker instanceof LambdaLifecycle) {
+            ((LambdaLifecycle) lambdaWorker).afterRestore();
+        }
+    }
+
+    public LambdaWorker getLambdaWorker() {
+        return lambdaWorker;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return how many calls waited for an identical call already in progress instead of calling the worker
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public String toString() {
+        return "CachingLambdaWorker{hits=" + getHitCount() + ", misses=" + getMissCount() +
+                ", coalesced=" + getCoalescedCount() + ", evictions=" + getEvictionCount() + ", size=" + size() + "}";
+    }
+
+    private synchronized String lookup(Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.storedNanos > ttlNanos) {
+            remove(key, entry);
+            return null;
+        }
+        return entry.result;
+    }
+
+    private synchronized void store(Key key, String result) {
+        if (result == null) {
+            return;
+        }
+        long size = ENTRY_OVERHEAD_BYTES + 2L * (key.input.length() + result.length());
+        if (size > maxBytes) {
+            return;
+        }
+        Entry previous = entries.put(key, new Entry(result, size, System.nanoTime()));
+        if (previous != null) {
+            bytes -= previous.size;
+        }
+        bytes += size;
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().getValue().size;
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    private void remove(Key key, Entry entry) {
+        entries.remove(key);
+        bytes -= entry.size;
+        evictions.increment();
+    }
+
+    private static String await(CompletableFuture<String> call) throws Exception {
+        try {
+            return call.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw (Error) e.getCause();
+        }
+    }
+
+    private static final class Key {
+
+        private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+        private static final long FNV_PRIME = 0x100000001b3L;
+
+        private final String input;
+        private final long hash;
+
+        Key(String input) {
+            this.input = input;
+            long h = FNV_OFFSET_BASIS;
+            for (int i = 0; i < input.length(); i++) {
+                h = (h ^ input.charAt(i)) * FNV_PRIME;
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && ((Key) other).hash == hash && ((Key) other).input.equals(input);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (hash ^ (hash >>> 32));
+        }
+    }
+
+    private static final class Entry {
+
+        private final String result;
+        private final long size;
+        private final long storedNanos;
+
+        Entry(String result, long size, long storedNanos) {
+            this.result = result;
+            this.size = size;
+            this.storedNanos = storedNanos;
+        }
+    }
+}
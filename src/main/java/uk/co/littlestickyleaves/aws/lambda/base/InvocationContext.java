@@ -0,0 +1,69 @@
+package uk.co.littlestickyleaves.aws.lambda.base;
+
+/**
+ * What a worker can find out about the invocation it is handling: its request id, its deadline and its X-Ray trace.
+ * LambdaRunner sets it on whichever thread it calls the worker on, so current() works from inside the worker,
+ * for instance to skip optional work when getRemainingTimeMillis() is getting low.
+ */
+public final class InvocationContext {
+
+    private static final ThreadLocal<InvocationContext> CURRENT = new ThreadLocal<>();
+
+    private final String awsRequestId;
+
+    private final long deadlineEpochMillis;
+
+    private final String traceId;
+
+    InvocationContext(String awsRequestId, long deadlineEpochMillis, String traceId) {
+        this.awsRequestId = awsRequestId;
+        this.deadlineEpochMillis = deadlineEpochMillis;
+        this.traceId = traceId;
+    }
+
+    /**
+     * @return the context of the invocation being handled on this thread, or null if there isn't one
+     */
+    public static InvocationContext current() {
+        return CURRENT.get();
+    }
+
+    static void set(InvocationContext context) {
+        if (context == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(context);
+        }
+    }
+
+    public String getAwsRequestId() {
+        return awsRequestId;
+    }
+
+    /**
+     * @return when Lambda will stop the invocation, in milliseconds since the epoch, or 0 if not known
+     */
+    public long getDeadlineEpochMillis() {
+        return deadlineEpochMillis;
+    }
+
+    /**
+     * @return the X-Ray trace header (Root=...;Parent=...;Sampled=...), to pass on to downstream calls,
+     * or null if Lambda didn't send one
+     */
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public boolean hasDeadline() {
+        return deadlineEpochMillis > 0;
+    }
+
+    /**
+     * @return the time left before the deadline, which may be negative once it has passed;
+     * Long.MAX_VALUE if there is no deadline
+     */
+    public long getRemainingTimeMillis() {
+        return hasDeadline() ? deadlineEpochMillis - System.currentTimeMillis() : Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,16 @@
+package uk.co.littlestickyleaves.aws.lambda.base;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Interface for a LambdaWorker which deals in bytes rather than Strings.
+ * It reads the raw input from an InputStream and writes its output to an OutputStream,
+ * so large payloads can go straight into (and out of) a streaming parser without being decoded to a String first.
+ * The input stream is a ByteBufferInputStream over the bytes exactly as the Lambda API sent them.
+ * An ordinary LambdaWorker can be used wherever one of these is wanted, via LambdaWorkerAdapter.
+ */
+@FunctionalInterface
+public interface LambdaByteWorker {
+    void handle(InputStream input, OutputStream output) throws Exception;
+}
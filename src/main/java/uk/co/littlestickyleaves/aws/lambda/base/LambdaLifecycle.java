@@ -0,0 +1,37 @@
+package uk.co.littlestickyleaves.aws.lambda.base;
+
+/**
+ * Hooks into the runtime's lifecycle, for a worker or anything else that needs to know about it.
+ * A worker which implements this is registered with its LambdaRunner automatically;
+ * anything else can be registered with LambdaRunner.Builder.lifecycle().
+ * Every method does nothing by default.
+ */
+public interface LambdaLifecycle {
+
+    /**
+     * Called once, before the first GET for input, for setting up anything the worker needs
+     * so that the first invocation doesn't pay for it.
+     * @throws Exception if initialization fails; it is reported to the Lambda API as an initialization error
+     */
+    default void init() throws Exception {
+    }
+
+    /**
+     * Called after init(), when the runtime is about to be snapshotted, for letting go of anything which
+     * won't survive being restored elsewhere, such as open connections or cached credentials.
+     * Only called when the LambdaRunner is doing checkpoint/restore.
+     * @throws Exception if it fails; it is reported to the Lambda API as an initialization error
+     */
+    default void beforeCheckpoint() throws Exception {
+    }
+
+    /**
+     * Called once the runtime has been restored from a snapshot, before the first GET for input,
+     * for putting back whatever beforeCheckpoint() let go of, and refreshing anything which should differ
+     * between restored copies, such as random seeds.
+     * Only called when the LambdaRunner is doing checkpoint/restore.
+     * @throws Exception if it fails; it is reported to the Lambda API as a restore error
+     */
+    default void afterRestore() throws Exception {
+    }
+}
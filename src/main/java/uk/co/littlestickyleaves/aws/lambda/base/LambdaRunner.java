@@ -1,45 +1,735 @@
 package uk.co.littlestickyleaves.aws.lambda.base;
 
+import uk.co.littlestickyleaves.aws.lambda.base.api.ByteBufferInputStream;
+import uk.co.littlestickyleaves.aws.lambda.base.api.ByteBufferOutputStream;
+import uk.co.littlestickyleaves.aws.lambda.base.api.DeferredOutputFailure;
 import uk.co.littlestickyleaves.aws.lambda.base.api.LambdaIOHandler;
 import uk.co.littlestickyleaves.aws.lambda.base.api.LambdaIOHandlerFactory;
 import uk.co.littlestickyleaves.aws.lambda.base.api.LambdaInputWithId;
+import uk.co.littlestickyleaves.aws.lambda.base.api.LambdaResponseStream;
+import uk.co.littlestickyleaves.aws.lambda.base.error.InvocationTimeoutException;
+import uk.co.littlestickyleaves.aws.lambda.base.error.LambdaException;
+import uk.co.littlestickyleaves.aws.lambda.base.log.LambdaLogger;
+import uk.co.littlestickyleaves.aws.lambda.base.metrics.InvocationMetrics;
+import uk.co.littlestickyleaves.aws.lambda.base.metrics.Phase;
+import uk.co.littlestickyleaves.aws.lambda.base.trace.RuntimeSubsegment;
+import uk.co.littlestickyleaves.aws.lambda.base.trace.XRaySubsegmentEmitter;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 /**
  * This class ia the core class for the runtime.
  * To start the runtime, create one of these and call loop() on it.
- * It needs a LambdaWorker, which does the specific lambda task.
+ * It needs a LambdaWorker, a LambdaByteWorker or a TypedLambdaWorker, which does the specific lambda task.
+ * Whichever it is, it is driven at the byte level: the others are wrapped in an adapter.
+ * The constructors cover the simple cases; use builder() for the optional modes.
+ * Before the first GET for input, loop() runs an init phase: LambdaLifecycle.init() hooks,
+ * then any priming runs of sample events through the worker, then LambdaIOHandler.open();
+ * a failure in any of them is reported with returnInitializationError.
+ * When checkpoint/restore is on (by default, when Lambda says the runtime is initializing for SnapStart),
+ * the init phase ends with a checkpoint instead of open(): beforeCheckpoint hooks, then LambdaIOHandler.restoreNext(),
+ * which returns once the runtime has been restored; the afterRestore hooks follow,
+ * and a failure in those is reported with returnRestoreError instead.
+ * The worker can see the invocation's request id and deadline through InvocationContext.current().
+ * With a time budget, the worker is run on a separate thread; if it is still going a set time before the deadline
+ * it is interrupted and an InvocationTimeoutException is posted as the invocation error, rather than Lambda
+ * stopping the runtime.  A worker which ignores the interrupt is abandoned, along with its thread.
+ * The invocation's X-Ray trace header is also set as the com.amazonaws.xray.traceHeader system property,
+ * where the X-Ray SDK looks for it, and if the runner has an XRaySubsegmentEmitter, sampled invocations get a
+ * subsegment with the time spent in the worker and in posting the response.
+ * Once a GET for input has succeeded, failures to reach the runtime API are no longer treated as initialization
+ * errors: posts which fail on I/O are retried, and so are GETs, with jittered backoff, following the RetryPolicy;
+ * the runner only gives up, by throwing from loop(), when its RuntimeHealth shows the failures have been sustained.
+ * Failures with an HTTP error status still end the runtime straight away, as the runtime API asks.
+ * Once an invocation is over its input is handed back to the LambdaIOHandler with recycle(), so that its buffer can
+ * be reused, unless the worker timed out and might still be reading it.
+ * With a concurrency above 1 (for execution environments which take several invocations at once), the runner has
+ * that many independent GET/handle/POST loops, each on a thread of its own with its own LambdaIOHandler, all
+ * sharing the one worker, which must then be thread-safe.  The init phase is still run just once, before any
+ * loop starts, and the first loop to fail ends loop() for all of them.  The trace header system property,
+ * being global, is not set at all in that case: InvocationContext, which is per thread, has it instead.
+ * Anything logged through LambdaLogger is written out before each GET for input,
+ * as are InvocationMetrics, if the runner has been given some and they are due; the init phase is timed into them too.
  */
 public class LambdaRunner {
 
+    private static final LambdaLogger LOGGER = LambdaLogger.getLogger(LambdaRunner.class);
+
+    private static final String TRACE_HEADER_PROPERTY = "com.amazonaws.xray.traceHeader";
+
     private final LambdaIOHandler lambdaIOHandler;
 
-    private final LambdaWorker lambdaWorker;
+    private final List<InvocationLoop> invocationLoops;
+
+    private final LambdaByteWorker lambdaByteWorker;
+
+    private final boolean responseStreaming;
+
+    private final boolean asyncCompletion;
+
+    private final InvocationMetrics invocationMetrics;
+
+    private final List<LambdaLifecycle> lifecycles;
+
+    private final int primingIterations;
+
+    private final List<String> primingResources;
+
+    private final boolean checkpointRestore;
+
+    private final long timeBudgetReserveMillis;
+
+    private final XRaySubsegmentEmitter xRaySubsegmentEmitter;
+
+    private final RetryPolicy retryPolicy;
+
+    private final RuntimeHealth health;
+
+    public LambdaRunner(LambdaIOHandler lambdaIOHandler, LambdaByteWorker lambdaByteWorker) {
+        this(builder(lambdaByteWorker).lambdaIOHandler(lambdaIOHandler));
+    }
 
     public LambdaRunner(LambdaIOHandler lambdaIOHandler, LambdaWorker lambdaWorker) {
-        this.lambdaIOHandler = lambdaIOHandler;
-        this.lambdaWorker = lambdaWorker;
+        this(builder(lambdaWorker).lambdaIOHandler(lambdaIOHandler));
+    }
+
+    public LambdaRunner(LambdaByteWorker lambdaByteWorker) {
+        this(builder(lambdaByteWorker));
     }
 
     public LambdaRunner(LambdaWorker lambdaWorker) {
-        this(LambdaIOHandlerFactory.simple(), lambdaWorker);
+        this(builder(lambdaWorker));
+    }
+
+    private LambdaRunner(Builder builder) {
+        if (builder.concurrency > 1 && builder.lambdaIOHandler != null) {
+            throw new IllegalArgumentException("With a concurrency of " + builder.concurrency +
+                    " each loop needs a LambdaIOHandler of its own: use lambdaIOHandlerFactory instead");
+        }
+        Supplier<LambdaIOHandler> lambdaIOHandlerFactory = builder.lambdaIOHandlerFactory == null ?
+                LambdaIOHandlerFactory::simple : builder.lambdaIOHandlerFactory;
+        this.lambdaIOHandler = builder.lambdaIOHandler == null ? lambdaIOHandlerFactory.get() :
+                builder.lambdaIOHandler;
+        this.invocationLoops = new ArrayList<>();
+        this.invocationLoops.add(new InvocationLoop(lambdaIOHandler));
+        for (int i = 1; i < builder.concurrency; i++) {
+            this.invocationLoops.add(new InvocationLoop(lambdaIOHandlerFactory.get()));
+        }
+        this.lambdaByteWorker = builder.lambdaByteWorker;
+        this.responseStreaming = builder.responseStreaming;
+        this.asyncCompletion = builder.asyncCompletion;
+        this.invocationMetrics = builder.invocationMetrics;
+        this.lifecycles = new ArrayList<>(builder.lifecycles);
+        this.primingIterations = builder.primingIterations;
+        this.primingResources = builder.primingResources;
+        this.checkpointRestore = builder.checkpointRestore;
+        this.timeBudgetReserveMillis = builder.timeBudgetReserveMillis;
+        this.xRaySubsegmentEmitter = builder.xRaySubsegmentEmitter;
+        this.retryPolicy = builder.retryPolicy;
+        this.health = new RuntimeHealth(retryPolicy);
+        if (timeBudgetReserveMillis >= 0 && responseStreaming) {
+            throw new IllegalArgumentException("A time budget can't be used with response streaming");
+        }
+    }
+
+    public static Builder builder(LambdaByteWorker lambdaByteWorker) {
+        return new Builder(lambdaByteWorker, lambdaByteWorker);
+    }
+
+    public static Builder builder(LambdaWorker lambdaWorker) {
+        return new Builder(new LambdaWorkerAdapter(lambdaWorker), lambdaWorker);
+    }
+
+    public static <I, O> Builder builder(Class<I> inputType, Class<O> outputType,
+                                         TypedLambdaWorker<I, O> typedLambdaWorker) {
+        return new Builder(new TypedLambdaWorkerAdapter<>(inputType, outputType, typedLambdaWorker),
+                typedLambdaWorker);
+    }
+
+    /**
+     * @return how well the runtime API has been responding
+     */
+    public RuntimeHealth getHealth() {
+        return health;
     }
 
     public void loop() throws Exception {
 
-        while (true) {
-            LambdaInputWithId lambdaInputWithId = null;
+        if (invocationMetrics != null) {
+            invocationMetrics.activate();
+        }
+        try {
+            init();
+            if (invocationLoops.size() == 1) {
+                invocationLoops.get(0).run();
+            } else {
+                runConcurrently();
+            }
+        } finally {
+            LambdaLogger.flush();
+            if (invocationMetrics != null) {
+                invocationMetrics.emit();
+            }
+        }
+    }
+
+    /**
+     * Runs every loop on a thread of its own, until one of them fails.
+     */
+    private void runConcurrently() throws Exception {
+        AtomicInteger count = new AtomicInteger();
+        ExecutorService loopExecutor = Executors.newFixedThreadPool(invocationLoops.size(), runnable -> {
+            Thread thread = new Thread(runnable, "lambda-loop-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            CompletionService<Void> completionService = new ExecutorCompletionService<>(loopExecutor);
+            for (InvocationLoop invocationLoop : invocationLoops) {
+                completionService.submit(() -> {
+                    invocationLoop.run();
+                    return null;
+                });
+            }
+            // a loop only ever ends by failing
+            completionService.take().get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof Exception) {
+                throw (Exception) ex.getCause();
+            }
+            throw (Error) ex.getCause();
+        } finally {
+            loopExecutor.shutdownNow();
+        }
+    }
+
+    private void init() throws Exception {
+        long initStartNanos = System.nanoTime();
+        try {
+            for (LambdaLifecycle lifecycle : lifecycles) {
+                lifecycle.init();
+            }
+            prime();
+            if (checkpointRestore) {
+                for (LambdaLifecycle lifecycle : lifecycles) {
+                    lifecycle.beforeCheckpoint();
+                }
+                for (InvocationLoop invocationLoop : invocationLoops) {
+                    invocationLoop.lambdaIOHandler.beforeCheckpoint();
+                }
+                lambdaIOHandler.restoreNext();
+            } else {
+                for (InvocationLoop invocationLoop : invocationLoops) {
+                    invocationLoop.lambdaIOHandler.open();
+                }
+            }
+        } catch (Exception ex) {
+            lambdaIOHandler.returnInitializationError(ex);
+            throw new LambdaException("Initialization failed", ex);
+        }
+        if (checkpointRestore) {
+            afterRestore();
+        }
+        if (invocationMetrics != null) {
+            invocationMetrics.record(Phase.INIT, System.nanoTime() - initStartNanos);
+        }
+    }
+
+    /**
+     * Gets going again once the runtime has been restored from the snapshot.
+     */
+    private void afterRestore() throws Exception {
+        try {
+            for (InvocationLoop invocationLoop : invocationLoops) {
+                invocationLoop.lambdaIOHandler.afterRestore();
+            }
+            for (LambdaLifecycle lifecycle : lifecycles) {
+                lifecycle.afterRestore();
+            }
+        } catch (Exception ex) {
+            lambdaIOHandler.returnRestoreError(ex);
+            throw new LambdaException("Restore failed", ex);
+        }
+    }
+
+    /**
+     * Runs the sample events through the worker, so its code paths are loaded and compiled before the first real one.
+     */
+    private void prime() throws Exception {
+        List<ByteBuffer> events = new ArrayList<>();
+        for (String resource : primingResources) {
+            try (InputStream event = LambdaRunner.class.getClassLoader().getResourceAsStream(resource)) {
+                if (event == null) {
+                    throw new LambdaException("Priming event " + resource + " not found on the classpath");
+                }
+                ByteBufferOutputStream content = new ByteBufferOutputStream();
+                content.writeFrom(event);
+                events.add(content.toByteBuffer());
+            }
+        }
+        ByteBufferOutputStream output = new ByteBufferOutputStream();
+        for (int i = 0; i < primingIterations; i++) {
+            for (ByteBuffer event : events) {
+                output.reset();
+                lambdaByteWorker.handle(new ByteBufferInputStream(event.duplicate()), output);
+            }
+        }
+    }
+
+    /**
+     * Makes a post to the runtime API, trying again after I/O failures, up to the RetryPolicy's limit.
+     * A retry which is refused as a repeat means an earlier attempt got through, so counts as success.
+     */
+    private void retrying(Callable<Void> call) throws Exception {
+        for (int attempt = 1; ; attempt++) {
             try {
-                lambdaInputWithId = lambdaIOHandler.getLambdaInput();
-                String result = lambdaWorker.handleRaw(lambdaInputWithId.getRawInput());
-                lambdaIOHandler.returnLambdaOutput(lambdaInputWithId.getAwsRequestId(), result);
+                call.call();
+                return;
             } catch (Exception ex) {
-                if (lambdaInputWithId == null) {
-                    lambdaIOHandler.returnInitializationError(ex);
+                if (attempt > 1 && retryPolicy.isAlreadyDelivered(ex)) {
+                    LOGGER.warn("Attempt " + attempt + " was refused, so an earlier one got through: " +
+                            ex.getMessage());
+                    return;
+                }
+                if (attempt >= retryPolicy.getMaxAttempts() || !retryPolicy.isRetryable(ex)) {
+                    throw ex;
+                }
+                LOGGER.warn("Attempt " + attempt + " to reach the runtime API failed, retrying: " + ex.getMessage());
+                Thread.sleep(retryPolicy.delayMillis(attempt));
+            }
+        }
+    }
+
+    /**
+     * Records a failure to reach the runtime API and waits before carrying on, unless the failures have gone on
+     * long enough to give up.
+     */
+    private void backOff(String action, Exception ex) throws Exception {
+        if (health.recordFailure() == RuntimeHealth.State.FAILED) {
+            LOGGER.fatal("Giving up after " + health.getConsecutiveFailures() + " failures in a row to reach " +
+                    "the runtime API", ex);
+            throw new LambdaException(action + " failed and the runtime API has been unreachable for too long", ex);
+        }
+        LOGGER.warn(action + " failed (" + health.getConsecutiveFailures() + " in a row), backing off: " +
+                ex.getMessage());
+        Thread.sleep(retryPolicy.delayMillis(health.getConsecutiveFailures()));
+    }
+
+    /**
+     * One GET/handle/POST loop, with the LambdaIOHandler and per-invocation state which are its alone.
+     */
+    private class InvocationLoop {
+
+        private final LambdaIOHandler lambdaIOHandler;
+
+        private ExecutorService workerExecutor;
+
+        private RuntimeSubsegment subsegment;
+
+        private ByteBufferOutputStream output = new ByteBufferOutputStream();
+
+        InvocationLoop(LambdaIOHandler lambdaIOHandler) {
+            this.lambdaIOHandler = lambdaIOHandler;
+        }
+
+        /**
+         * Polls for input, handles it and posts the result, over and over, until something fails for good.
+         */
+        void run() throws Exception {
+            while (true) {
+                LambdaLogger.flush();
+                if (invocationMetrics != null) {
+                    invocationMetrics.emitIfDue();
+                }
+                LambdaInputWithId lambdaInputWithId;
+                long pollStartNanos = startTiming();
+                try {
+                    lambdaInputWithId = lambdaIOHandler.getLambdaInput();
+                    recordTiming(Phase.POLL, pollStartNanos);
+                    health.recordSuccess();
+                } catch (Exception ex) {
+                    reconcileDeferredOutputs();
+                    if (health.getState() == RuntimeHealth.State.STARTING || !retryPolicy.isRetryable(ex)) {
+                        lambdaIOHandler.returnInitializationError(ex);
+                    } else {
+                        backOff("GET for input", ex);
+                    }
+                    continue;
+                }
+                reconcileDeferredOutputs();
+                try {
+                    invoke(lambdaInputWithId);
+                } catch (Exception ex) {
+                    if (!retryPolicy.isRetryable(ex)) {
+                        throw ex;
+                    }
+                    backOff("Posting for awsRequestId " + lambdaInputWithId.getAwsRequestId(), ex);
+                }
+            }
+        }
+
+        private void invoke(LambdaInputWithId lambdaInputWithId) throws Exception {
+            String awsRequestId = lambdaInputWithId.getAwsRequestId();
+            String traceId = lambdaInputWithId.getTraceId();
+            InvocationContext context = new InvocationContext(awsRequestId,
+                    lambdaInputWithId.getDeadlineEpochMillis(), traceId);
+            LambdaResponseStream responseStream = null;
+            LambdaLogger.setRequestId(awsRequestId);
+            InvocationContext.set(context);
+            // the property is global, so with several invocations in flight it would be wrong for all but one
+            if (invocationLoops.size() == 1) {
+                if (traceId == null) {
+                    System.clearProperty(TRACE_HEADER_PROPERTY);
+                } else {
+                    System.setProperty(TRACE_HEADER_PROPERTY, traceId);
+                }
+            }
+            subsegment = xRaySubsegmentEmitter == null ? null : RuntimeSubsegment.start(traceId);
+            boolean recyclable = true;
+            try {
+                InputStream input = new ByteBufferInputStream(lambdaInputWithId.getRawBytes());
+                if (responseStreaming) {
+                    responseStream = lambdaIOHandler.openResponseStream(awsRequestId);
+                    long handleStartNanos = startTiming();
+                    lambdaByteWorker.handle(input, responseStream);
+                    recordTiming(Phase.HANDLE, handleStartNanos);
+                    long postStartNanos = startTiming();
+                    responseStream.complete();
+                    recordTiming(Phase.POST, postStartNanos);
+                } else {
+                    output.reset();
+                    long handleStartNanos = startTiming();
+                    if (timeBudgetReserveMillis >= 0) {
+                        handleWithinBudget(context, input, output);
+                    } else {
+                        lambdaByteWorker.handle(input, output);
+                    }
+                    recordTiming(Phase.HANDLE, handleStartNanos);
+                    if (asyncCompletion) {
+                        // not timed: it only measures handing the output over, not the post being acknowledged
+                        retrying(() -> {
+                            lambdaIOHandler.returnLambdaOutputDeferred(awsRequestId, output.toByteBuffer());
+                            return null;
+                        });
+                    } else {
+                        long postStartNanos = startTiming();
+                        retrying(() -> {
+                            lambdaIOHandler.returnLambdaOutput(awsRequestId, output.toByteBuffer());
+                            return null;
+                        });
+                        recordTiming(Phase.POST, postStartNanos);
+                    }
+                }
+            } catch (Exception ex) {
+                // an abandoned worker may still be reading its input
+                recyclable = !(ex instanceof InvocationTimeoutException);
+                if (responseStream != null) {
+                    responseStream.fail(ex);
+                } else {
+                    retrying(() -> {
+                        lambdaIOHandler.returnInvocationError(awsRequestId, ex);
+                        return null;
+                    });
+                }
+            } finally {
+                if (recyclable) {
+                    lambdaIOHandler.recycle(lambdaInputWithId);
+                }
+                LambdaLogger.setRequestId(null);
+                InvocationContext.set(null);
+                if (subsegment != null) {
+                    xRaySubsegmentEmitter.emit(subsegment);
+                    subsegment = null;
+                }
+            }
+        }
+
+        /**
+         * Runs the worker on the worker thread, waiting no later than timeBudgetReserveMillis before the deadline.
+         */
+        private void handleWithinBudget(InvocationContext context, InputStream input, OutputStream out)
+                throws Exception {
+            if (workerExecutor == null) {
+                workerExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "lambda-worker");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            Future<?> future = workerExecutor.submit(() -> {
+                LambdaLogger.setRequestId(context.getAwsRequestId());
+                InvocationContext.set(context);
+                try {
+                    lambdaByteWorker.handle(input, out);
+                    return null;
+                } finally {
+                    LambdaLogger.setRequestId(null);
+                    InvocationContext.set(null);
+                }
+            });
+            try {
+                if (context.hasDeadline()) {
+                    future.get(Math.max(context.getRemainingTimeMillis() - timeBudgetReserveMillis, 0),
+                            TimeUnit.MILLISECONDS);
                 } else {
-                    lambdaIOHandler.returnInvocationError(lambdaInputWithId.getAwsRequestId(), ex);
+                    future.get();
                 }
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof Exception) {
+                    throw (Exception) ex.getCause();
+                }
+                throw (Error) ex.getCause();
+            } catch (TimeoutException ex) {
+                // the worker may ignore the interrupt, so it keeps its thread and output buffer to itself from now on
+                future.cancel(true);
+                workerExecutor.shutdownNow();
+                workerExecutor = null;
+                output = new ByteBufferOutputStream();
+                throw new InvocationTimeoutException("Invocation " + context.getAwsRequestId() +
+                        " was stopped with " + context.getRemainingTimeMillis() + "ms left before its deadline");
+            }
+        }
+
+        private long startTiming() {
+            return invocationMetrics == null && subsegment == null ? 0 : System.nanoTime();
+        }
+
+        private void recordTiming(Phase phase, long startNanos) {
+            if (invocationMetrics != null || subsegment != null) {
+                long endNanos = System.nanoTime();
+                if (invocationMetrics != null) {
+                    invocationMetrics.record(phase, endNanos - startNanos);
+                }
+                if (subsegment != null) {
+                    subsegment.addPhase(phase == Phase.HANDLE ? "handle" : "post", startNanos, endNanos);
+                }
+            }
+        }
+
+        /**
+         * Reports output which was sent without waiting and then turned out to have been refused,
+         * just as a refused synchronous post is reported: as an invocation error.
+         * The invocation it belongs to is long over, so a failure to report it is only logged, never thrown.
+         */
+        private void reconcileDeferredOutputs() {
+            if (asyncCompletion) {
+                for (DeferredOutputFailure failure : lambdaIOHandler.takeDeferredOutputFailures()) {
+                    try {
+                        retrying(() -> {
+                            lambdaIOHandler.returnInvocationError(failure.getAwsRequestId(), failure.getException());
+                            return null;
+                        });
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    } catch (Exception ex) {
+                        LOGGER.warn("Couldn't report the failed output for awsRequestId " +
+                                failure.getAwsRequestId() + ": " + ex.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects the optional settings for a LambdaRunner.
+     */
+    public static class Builder {
+
+        private final LambdaByteWorker lambdaByteWorker;
+
+        private LambdaIOHandler lambdaIOHandler;
+
+        private Supplier<LambdaIOHandler> lambdaIOHandlerFactory;
+
+        private int concurrency = 1;
+
+        private boolean responseStreaming;
+
+        private boolean asyncCompletion;
+
+        private InvocationMetrics invocationMetrics;
+
+        private final List<LambdaLifecycle> lifecycles = new ArrayList<>();
+
+        private int primingIterations;
+
+        private List<String> primingResources = Collections.emptyList();
+
+        private boolean checkpointRestore = "snap-start".equals(System.getenv("AWS_LAMBDA_INITIALIZATION_TYPE"));
+
+        private long timeBudgetReserveMillis = -1;
+
+        private XRaySubsegmentEmitter xRaySubsegmentEmitter;
+
+        private RetryPolicy retryPolicy = RetryPolicy.standard();
+
+        private Builder(LambdaByteWorker lambdaByteWorker, Object worker) {
+            this.lambdaByteWorker = lambdaByteWorker;
+            if (worker instanceof LambdaLifecycle) {
+                lifecycles.add((LambdaLifecycle) worker);
             }
         }
+
+        /**
+         * @param lambdaIOHandler the handler to talk to the Lambda API with; LambdaIOHandlerFactory.simple() if not set
+         * @return this Builder
+         */
+        public Builder lambdaIOHandler(LambdaIOHandler lambdaIOHandler) {
+            this.lambdaIOHandler = lambdaIOHandler;
+            return this;
+        }
+
+        /**
+         * @param lambdaIOHandlerFactory makes the handlers to talk to the Lambda API with, one per loop;
+         *                               LambdaIOHandlerFactory::simple if not set.  Needed for a concurrency above 1
+         * @return this Builder
+         */
+        public Builder lambdaIOHandlerFactory(Supplier<LambdaIOHandler> lambdaIOHandlerFactory) {
+            this.lambdaIOHandlerFactory = lambdaIOHandlerFactory;
+            return this;
+        }
+
+        /**
+         * @param concurrency how many invocations to handle at once, each in a GET/handle/POST loop of its own;
+         *                    1 if not set.  Above 1 the worker must be thread-safe; in an execution environment
+         *                    which takes several invocations at once, AWS_LAMBDA_MAX_CONCURRENCY says how many
+         * @return this Builder
+         */
+        public Builder concurrency(int concurrency) {
+            if (concurrency < 1) {
+                throw new IllegalArgumentException("Concurrency must be at least 1: " + concurrency);
+            }
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        /**
+         * @param loopsPerCore how many invocations to handle at once for each available processor;
+         *                     more than 1 suits workers which spend most of their time waiting on I/O
+         * @return this Builder
+         */
+        public Builder concurrencyPerCore(int loopsPerCore) {
+            return concurrency(loopsPerCore * Runtime.getRuntime().availableProcessors());
+        }
+
+        /**
+         * @param responseStreaming true to have the worker write straight to a LambdaResponseStream,
+         *                          so output reaches the Lambda API as it is produced
+         * @return this Builder
+         */
+        public Builder responseStreaming(boolean responseStreaming) {
+            this.responseStreaming = responseStreaming;
+            return this;
+        }
+
+        /**
+         * @param asyncCompletion true to send each output without waiting for the Lambda API to acknowledge it,
+         *                        so the next GET for input isn't held up; failures are reconciled afterwards.
+         *                        The post is then left out of PostTime and of X-Ray subsegments.
+         * @return this Builder
+         */
+        public Builder asyncCompletion(boolean asyncCompletion) {
+            this.asyncCompletion = asyncCompletion;
+            return this;
+        }
+
+        /**
+         * @param invocationMetrics metrics to record per-phase timings to, and write out periodically;
+         *                          none are recorded if not set
+         * @return this Builder
+         */
+        public Builder invocationMetrics(InvocationMetrics invocationMetrics) {
+            this.invocationMetrics = invocationMetrics;
+            return this;
+        }
+
+        /**
+         * @param lifecycle something else to notify of the runtime's lifecycle, after the worker if it is notified
+         * @return this Builder
+         */
+        public Builder lifecycle(LambdaLifecycle lifecycle) {
+            this.lifecycles.add(lifecycle);
+            return this;
+        }
+
+        /**
+         * @param iterations how many times to run each sample event through the worker before the first GET for input
+         * @param resources classpath resources holding the sample events, read during initialization;
+         *                  whatever the worker outputs for them is thrown away
+         * @return this Builder
+         */
+        public Builder priming(int iterations, String... resources) {
+            this.primingIterations = iterations;
+            this.primingResources = Arrays.asList(resources);
+            return this;
+        }
+
+        /**
+         * @param checkpointRestore true to finish the init phase by waiting for the runtime to be snapshotted
+         *                          and restored, with the before/after hooks around it;
+         *                          by default true only when AWS_LAMBDA_INITIALIZATION_TYPE is snap-start
+         * @return this Builder
+         */
+        public Builder checkpointRestore(boolean checkpointRestore) {
+            this.checkpointRestore = checkpointRestore;
+            return this;
+        }
+
+        /**
+         * @param reserveMillis how long before each invocation's deadline to give up on the worker:
+         *                      it is interrupted and an InvocationTimeoutException posted as the invocation error,
+         *                      leaving this long for the post; the worker is run as normal if not set.
+         *                      Can't be used with response streaming
+         * @return this Builder
+         */
+        public Builder timeBudget(long reserveMillis) {
+            if (reserveMillis < 0) {
+                throw new IllegalArgumentException("Time budget reserve can't be negative: " + reserveMillis);
+            }
+            this.timeBudgetReserveMillis = reserveMillis;
+            return this;
+        }
+
+        /**
+         * @param xRaySubsegmentEmitter where to send a subsegment with the runtime's phases for each sampled
+         *                              invocation, usually XRaySubsegmentEmitter.fromEnvironment(); none if not set
+         * @return this Builder
+         */
+        public Builder xRaySubsegments(XRaySubsegmentEmitter xRaySubsegmentEmitter) {
+            this.xRaySubsegmentEmitter = xRaySubsegmentEmitter;
+            return this;
+        }
+
+        /**
+         * @param retryPolicy how to retry failed calls to the runtime API once warm; RetryPolicy.standard() if not set
+         * @return this Builder
+         */
+        public Builder retryPolicy(RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        public LambdaRunner build() {
+            return new LambdaRunner(this);
+        }
     }
 
 }
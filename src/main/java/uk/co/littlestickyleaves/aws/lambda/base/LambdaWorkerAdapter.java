@@ -0,0 +1,45 @@
+package uk.co.littlestickyleaves.aws.lambda.base;
+
+import uk.co.littlestickyleaves.aws.lambda.base.api.ByteBufferInputStream;
+import uk.co.littlestickyleaves.aws.lambda.base.api.ByteBufferOutputStream;
+import uk.co.littlestickyleaves.aws.lambda.base.error.LambdaException;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Lets a String-based LambdaWorker be driven as a LambdaByteWorker.
+ * Input is decoded as UTF-8 and the result is written back as UTF-8.
+ * A null result can't be posted as output, so it is reported as an invocation error.
+ */
+public class LambdaWorkerAdapter implements LambdaByteWorker {
+
+    private final LambdaWorker lambdaWorker;
+
+    public LambdaWorkerAdapter(LambdaWorker lambdaWorker) {
+        this.lambdaWorker = lambdaWorker;
+    }
+
+    @Override
+    public void handle(InputStream input, OutputStream output) throws Exception {
+        String rawInput;
+        if (input instanceof ByteBufferInputStream) {
+            rawInput = StandardCharsets.UTF_8.decode(((ByteBufferInputStream) input).getByteBuffer()).toString();
+        } else {
+            ByteBufferOutputStream content = new ByteBufferOutputStream();
+            content.writeFrom(input);
+            rawInput = StandardCharsets.UTF_8.decode(content.toByteBuffer()).toString();
+        }
+
+        String result = lambdaWorker.handleRaw(rawInput);
+        if (result == null) {
+            throw new LambdaException("LambdaWorker returned null, which can't be posted as output");
+        }
+        output.write(result.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public LambdaWorker getLambdaWorker() {
+        return lambdaWorker;
+    }
+}
@@ -0,0 +1,111 @@
+package uk.co.littlestickyleaves.aws.lambda.base;
+
+import uk.co.littlestickyleaves.aws.lambda.base.error.LambdaException;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How LambdaRunner copes with the runtime API misbehaving once the runtime is warm.
+ * -- Posts which fail because of an I/O problem (rather than an HTTP error status) are tried up to maxAttempts times.
+ *    The first post may have arrived, only its answer being lost, in which case the runtime API refuses the retry
+ *    with a 4xx status; that is taken as the post having been delivered.
+ * -- Failed GETs for input are retried until the failures have been sustained: at least giveUpAfterFailures
+ *    in a row, over at least giveUpAfterMillis; only then does the runner give up.
+ * Each retry waits a random time between zero and an exponentially growing cap ("full jitter"),
+ * so a fleet of runtimes doesn't retry in step.
+ */
+public class RetryPolicy {
+
+    private final int maxAttempts;
+
+    private final long baseDelayMillis;
+
+    private final long maxDelayMillis;
+
+    private final int giveUpAfterFailures;
+
+    private final long giveUpAfterMillis;
+
+    /**
+     * @param maxAttempts how many times to try a post, including the first
+     * @param baseDelayMillis the cap on the wait before the first retry, doubled for each one after
+     * @param maxDelayMillis the most the cap can grow to
+     * @param giveUpAfterFailures how many GETs for input in a row must fail before giving up
+     * @param giveUpAfterMillis how long GETs for input must have been failing for before giving up
+     */
+    public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis,
+                       int giveUpAfterFailures, long giveUpAfterMillis) {
+        if (maxAttempts < 1 || giveUpAfterFailures < 1) {
+            throw new IllegalArgumentException("Attempts and failures to give up after must be at least 1");
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.giveUpAfterFailures = giveUpAfterFailures;
+        this.giveUpAfterMillis = giveUpAfterMillis;
+    }
+
+    /**
+     * @return the default: 3 attempts per post, waits capped from 10ms up to 1s, giving up on GETs after 10 failures
+     * over at least 10s
+     */
+    public static RetryPolicy standard() {
+        return new RetryPolicy(3, 10, 1000, 10, 10000);
+    }
+
+    /**
+     * @return a policy which never retries, so the first failure ends the runtime
+     */
+    public static RetryPolicy none() {
+        return new RetryPolicy(1, 0, 0, 1, 0);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public int getGiveUpAfterFailures() {
+        return giveUpAfterFailures;
+    }
+
+    public long getGiveUpAfterMillis() {
+        return giveUpAfterMillis;
+    }
+
+    /**
+     * @param failures how many attempts have failed so far
+     * @return how long to wait before the next attempt
+     */
+    public long delayMillis(int failures) {
+        long cap = baseDelayMillis << Math.min(failures - 1, 30);
+        cap = Math.min(cap < 0 ? Long.MAX_VALUE : cap, maxDelayMillis);
+        return cap <= 0 ? 0 : ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    /**
+     * @param exception the failure
+     * @return true if it came from an I/O problem, which may well be gone on a fresh connection
+     */
+    public boolean isRetryable(Exception exception) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param exception the failure of a post which was a retry
+     * @return true if the runtime API refused it as it refuses a repeat of a post it has already accepted:
+     * with any 4xx status but 413, which refuses the body itself
+     */
+    public boolean isAlreadyDelivered(Exception exception) {
+        if (!(exception instanceof LambdaException)) {
+            return false;
+        }
+        int statusCode = ((LambdaException) exception).getStatusCode();
+        return statusCode >= 400 && statusCode < 500 && statusCode != 413;
+    }
+}
@@ -0,0 +1,57 @@
+package uk.co.littlestickyleaves.aws.lambda.base;
+
+/**
+ * How well the runtime API has been responding to a LambdaRunner, judged against its RetryPolicy.
+ */
+public class RuntimeHealth {
+
+    public enum State {
+        /** Nothing has succeeded yet, so failures are still initialization errors. */
+        STARTING,
+        /** The last call succeeded. */
+        HEALTHY,
+        /** Calls are failing, but not for long enough to give up. */
+        DEGRADED,
+        /** Calls have been failing for long enough that the runner has given up. */
+        FAILED
+    }
+
+    private final RetryPolicy retryPolicy;
+
+    private volatile State state = State.STARTING;
+
+    private int consecutiveFailures;
+
+    private long firstFailureNanos;
+
+    RuntimeHealth(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        state = State.HEALTHY;
+    }
+
+    /**
+     * @return the state after the failure
+     */
+    synchronized State recordFailure() {
+        long now = System.nanoTime();
+        if (consecutiveFailures++ == 0) {
+            firstFailureNanos = now;
+        }
+        boolean sustained = consecutiveFailures >= retryPolicy.getGiveUpAfterFailures() &&
+                (now - firstFailureNanos) / 1000000 >= retryPolicy.getGiveUpAfterMillis();
+        state = sustained ? State.FAILED : State.DEGRADED;
+        return state;
+    }
+}
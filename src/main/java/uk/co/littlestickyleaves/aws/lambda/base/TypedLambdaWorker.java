@@ -0,0 +1,13 @@
+package uk.co.littlestickyleaves.aws.lambda.base;
+
+/**
+ * Interface for a LambdaWorker which deals in objects rather than raw json.
+ * The input is parsed, and the output serialized, by the JsonCodecs for the two types,
+ * via a TypedLambdaWorkerAdapter.  A null output means an empty response.
+ * @param <I> the input (event) type
+ * @param <O> the output type
+ */
+@FunctionalInterface
+public interface TypedLambdaWorker<I, O> {
+    O handle(I input) throws Exception;
+}
@@ -0,0 +1,59 @@
+package uk.co.littlestickyleaves.aws.lambda.base;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import uk.co.littlestickyleaves.aws.lambda.base.json.JsonCodec;
+import uk.co.littlestickyleaves.aws.lambda.base.json.JsonCodecs;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Lets a TypedLambdaWorker be driven as a LambdaByteWorker.
+ * Its codecs are looked up once, when this is created, and then used for every invocation:
+ * input is parsed straight from the request bytes and output generated straight into the response,
+ * with no String in between.
+ */
+public class TypedLambdaWorkerAdapter<I, O> implements LambdaByteWorker {
+
+    private final JsonCodec<I> inputCodec;
+
+    private final JsonCodec<O> outputCodec;
+
+    private final TypedLambdaWorker<I, O> typedLambdaWorker;
+
+    private final JsonFactory jsonFactory = JsonCodecs.getJsonFactory();
+
+    public TypedLambdaWorkerAdapter(Class<I> inputType, Class<O> outputType,
+                                    TypedLambdaWorker<I, O> typedLambdaWorker) {
+        this(JsonCodecs.forType(inputType), JsonCodecs.forType(outputType), typedLambdaWorker);
+    }
+
+    public TypedLambdaWorkerAdapter(JsonCodec<I> inputCodec, JsonCodec<O> outputCodec,
+                                    TypedLambdaWorker<I, O> typedLambdaWorker) {
+        this.inputCodec = inputCodec;
+        this.outputCodec = outputCodec;
+        this.typedLambdaWorker = typedLambdaWorker;
+    }
+
+    @Override
+    public void handle(InputStream input, OutputStream output) throws Exception {
+        I typedInput;
+        try (JsonParser parser = jsonFactory.createParser(input)) {
+            typedInput = parser.nextToken() == null ? null : inputCodec.read(parser);
+        }
+
+        O result = typedLambdaWorker.handle(typedInput);
+        if (result != null) {
+            try (JsonGenerator generator = jsonFactory.createGenerator(output, JsonEncoding.UTF8)) {
+                outputCodec.write(result, generator);
+            }
+        }
+    }
+
+    public TypedLambdaWorker<I, O> getTypedLambdaWorker() {
+        return typedLambdaWorker;
+    }
+}
@@ -0,0 +1,89 @@
+package uk.co.littlestickyleaves.aws.lambda.base.api;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A small pool of reusable byte arrays for the runtime's I/O path, so that a warm runtime reads each input into a
+ * buffer it has used before rather than a new one.
+ * New buffers are sized from the payloads actually seen: the larger of what is asked for and a running typical size,
+ * which follows big payloads straight away and decays slowly after them, rounded up to a power of two.
+ * Buffers far bigger than the typical size are not kept, so one huge payload doesn't hold on to memory for ever.
+ * Heap arrays are used rather than direct buffers, since they also suit HttpURLConnection's streams,
+ * and the JDK keeps its own per-thread direct buffers for channel writes.
+ * It is not thread-safe: each LambdaIOHandler has its own.
+ */
+final class BufferPool {
+
+    private static final int MIN_CAPACITY = 4096;
+    private static final int MAX_POOLED = 4;
+    private static final int OVERSIZED_FACTOR = 4;
+
+    private final byte[][] pooled = new byte[MAX_POOLED][];
+    private int count;
+    private int typicalSize = MIN_CAPACITY;
+
+    /**
+     * @param minCapacity the least the buffer must hold
+     * @return a pooled buffer of at least that size if there is one, otherwise a new one
+     */
+    byte[] acquire(int minCapacity) {
+        int best = -1;
+        for (int i = 0; i < count; i++) {
+            if (pooled[i].length >= minCapacity && (best < 0 || pooled[i].length < pooled[best].length)) {
+                best = i;
+            }
+        }
+        if (best >= 0) {
+            byte[] buffer = pooled[best];
+            pooled[best] = pooled[--count];
+            pooled[count] = null;
+            return buffer;
+        }
+        return new byte[sizeFor(minCapacity)];
+    }
+
+    /**
+     * Hands a buffer back for reuse; nothing else may use it afterwards.
+     */
+    void release(byte[] buffer) {
+        if (buffer == null || buffer.length == 0 || count == MAX_POOLED ||
+                buffer.length > Math.max(typicalSize, MIN_CAPACITY) * OVERSIZED_FACTOR) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            if (pooled[i] == buffer) {
+                return;
+            }
+        }
+        pooled[count++] = buffer;
+    }
+
+    /**
+     * Hands back the array behind a buffer, if it has a writable one.
+     */
+    void release(ByteBuffer buffer) {
+        if (buffer != null && buffer.hasArray() && !buffer.isReadOnly()) {
+            release(buffer.array());
+        }
+    }
+
+    /**
+     * Takes note of a payload's size, for sizing new buffers.
+     */
+    void observe(int size) {
+        typicalSize = Math.max(size, typicalSize - (typicalSize >> 4));
+    }
+
+    int getTypicalSize() {
+        return typicalSize;
+    }
+
+    private int sizeFor(int minCapacity) {
+        int target = Math.max(Math.max(minCapacity, typicalSize), MIN_CAPACITY);
+        int size = Integer.highestOneBit(target);
+        if (size < target) {
+            size = size << 1;
+        }
+        return size < 0 ? target : size;
+    }
+}
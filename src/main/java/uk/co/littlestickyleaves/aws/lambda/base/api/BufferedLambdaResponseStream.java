@@ -0,0 +1,37 @@
+package uk.co.littlestickyleaves.aws.lambda.base.api;
+
+/**
+ * The fallback LambdaResponseStream for LambdaIOHandlers which can't stream:
+ * it collects the whole output in memory and posts it in one go when complete.
+ */
+class BufferedLambdaResponseStream extends LambdaResponseStream {
+
+    private final LambdaIOHandler lambdaIOHandler;
+    private final String awsRequestId;
+    private final ByteBufferOutputStream content = new ByteBufferOutputStream();
+
+    BufferedLambdaResponseStream(LambdaIOHandler lambdaIOHandler, String awsRequestId) {
+        this.lambdaIOHandler = lambdaIOHandler;
+        this.awsRequestId = awsRequestId;
+    }
+
+    @Override
+    public void write(int b) {
+        content.write(b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        content.write(bytes, offset, length);
+    }
+
+    @Override
+    public void complete() throws Exception {
+        lambdaIOHandler.returnLambdaOutput(awsRequestId, content.toByteBuffer());
+    }
+
+    @Override
+    public void fail(Exception exception) throws Exception {
+        lambdaIOHandler.returnInvocationError(awsRequestId, exception);
+    }
+}
@@ -0,0 +1,54 @@
+package uk.co.littlestickyleaves.aws.lambda.base.api;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An InputStream which reads from a ByteBuffer without copying it.
+ * The buffer itself is available too, for code which can use it directly.
+ */
+public class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer byteBuffer;
+
+    public ByteBufferInputStream(ByteBuffer byteBuffer) {
+        this.byteBuffer = byteBuffer;
+    }
+
+    /**
+     * @return the unread part of the underlying buffer; reading from the returned buffer does not affect this stream
+     */
+    public ByteBuffer getByteBuffer() {
+        return byteBuffer.slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public int read() {
+        return byteBuffer.hasRemaining() ? byteBuffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+        if (length == 0) {
+            return 0;
+        }
+        if (!byteBuffer.hasRemaining()) {
+            return -1;
+        }
+        int count = Math.min(length, byteBuffer.remaining());
+        byteBuffer.get(bytes, offset, count);
+        return count;
+    }
+
+    @Override
+    public long skip(long n) {
+        int count = (int) Math.max(0, Math.min(n, byteBuffer.remaining()));
+        byteBuffer.position(byteBuffer.position() + count);
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return byteBuffer.remaining();
+    }
+}
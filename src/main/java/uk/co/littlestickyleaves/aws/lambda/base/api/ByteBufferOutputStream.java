@@ -0,0 +1,87 @@
+package uk.co.littlestickyleaves.aws.lambda.base.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A growable in-memory OutputStream, like ByteArrayOutputStream but unsynchronized,
+ * and able to hand over its content as a ByteBuffer without copying it.
+ * It can be reset and reused, keeping the array it has grown.
+ */
+public class ByteBufferOutputStream extends OutputStream {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private byte[] bytes;
+    private int count;
+
+    public ByteBufferOutputStream() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ByteBufferOutputStream(int initialCapacity) {
+        this.bytes = new byte[initialCapacity];
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(count + 1);
+        bytes[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] source, int offset, int length) {
+        ensureCapacity(count + length);
+        System.arraycopy(source, offset, bytes, count, length);
+        count += length;
+    }
+
+    public void write(ByteBuffer source) {
+        int length = source.remaining();
+        ensureCapacity(count + length);
+        source.get(bytes, count, length);
+        count += length;
+    }
+
+    /**
+     * Copies everything remaining in the given InputStream into this one.
+     * @param inputStream the stream to read to its end
+     * @throws IOException if the stream cannot be read
+     */
+    public void writeFrom(InputStream inputStream) throws IOException {
+        while (true) {
+            if (count == bytes.length) {
+                ensureCapacity(count + 1);
+            }
+            int read = inputStream.read(bytes, count, bytes.length - count);
+            if (read < 0) {
+                return;
+            }
+            count += read;
+        }
+    }
+
+    /**
+     * @return a buffer over the bytes written so far; it shares this stream's array, so is only valid until the next reset
+     */
+    public ByteBuffer toByteBuffer() {
+        return ByteBuffer.wrap(bytes, 0, count);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public void reset() {
+        count = 0;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(required, bytes.length * 2));
+        }
+    }
+}
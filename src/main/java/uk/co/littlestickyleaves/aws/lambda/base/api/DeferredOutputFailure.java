@@ -0,0 +1,25 @@
+package uk.co.littlestickyleaves.aws.lambda.base.api;
+
+/**
+ * A POJO to link an AWS Request Id with the exception describing why posting its output failed,
+ * for output which was sent without waiting for the Lambda API to acknowledge it.
+ */
+public class DeferredOutputFailure {
+
+    private final String awsRequestId;
+
+    private final Exception exception;
+
+    public DeferredOutputFailure(String awsRequestId, Exception exception) {
+        this.awsRequestId = awsRequestId;
+        this.exception = exception;
+    }
+
+    public String getAwsRequestId() {
+        return awsRequestId;
+    }
+
+    public Exception getException() {
+        return exception;
+    }
+}
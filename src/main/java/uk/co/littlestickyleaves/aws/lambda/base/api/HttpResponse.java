@@ -0,0 +1,52 @@
+package uk.co.littlestickyleaves.aws.lambda.base.api;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The parts of an HTTP response from the runtime API that the runtime cares about.
+ * Header values are held in the same order as the header names given to the HttpResponseReader.
+ */
+final class HttpResponse {
+
+    private final int status;
+    private final String[] headerValues;
+    private final ByteBuffer body;
+    private final boolean keepAlive;
+    private final long bodyStartNanos;
+
+    HttpResponse(int status, String[] headerValues, ByteBuffer body, boolean keepAlive, long bodyStartNanos) {
+        this.status = status;
+        this.headerValues = headerValues;
+        this.body = body;
+        this.keepAlive = keepAlive;
+        this.bodyStartNanos = bodyStartNanos;
+    }
+
+    int getStatus() {
+        return status;
+    }
+
+    String getHeaderValue(int index) {
+        return headerValues[index];
+    }
+
+    ByteBuffer getBody() {
+        return body;
+    }
+
+    String getBodyAsString() {
+        return StandardCharsets.UTF_8.decode(body.duplicate()).toString();
+    }
+
+    boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * @return when reading the body began, from InvocationMetrics.startActive(), so 0 if no metrics are active
+     */
+    long getBodyStartNanos() {
+        return bodyStartNanos;
+    }
+}
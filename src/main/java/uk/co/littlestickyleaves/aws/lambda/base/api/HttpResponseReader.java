@@ -0,0 +1,340 @@
+package uk.co.littlestickyleaves.aws.lambda.base.api;
+
+import uk.co.littlestickyleaves.aws.lambda.base.metrics.InvocationMetrics;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A deliberately small HTTP/1.1 response parser, just big enough for the responses the Lambda runtime API sends.
+ * It keeps the status code, the body, and the values of a fixed set of headers chosen up front;
+ * every other header is skipped without being turned into a String.
+ * Bytes read past the end of one response stay buffered for the next one, so it can be used on a kept-alive connection.
+ * Bodies are read into buffers from a BufferPool, which the caller can hand back once it has finished with them.
+ */
+final class HttpResponseReader {
+
+    private static final int INITIAL_CAPACITY = 8192;
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+    private static final byte[] EMPTY = new byte[0];
+
+    private static final byte[] CONTENT_LENGTH = lowerCaseAscii("Content-Length");
+    private static final byte[] TRANSFER_ENCODING = lowerCaseAscii("Transfer-Encoding");
+    private static final byte[] CONNECTION = lowerCaseAscii("Connection");
+
+    private final byte[][] capturedHeaderNames;
+
+    private final BufferPool bufferPool;
+
+    // always kept in "read" mode: the unread bytes are between position and limit
+    private ByteBuffer buffer;
+
+    private boolean responseStarted;
+
+    HttpResponseReader(String... capturedHeaderNames) {
+        this(new BufferPool(), capturedHeaderNames);
+    }
+
+    HttpResponseReader(BufferPool bufferPool, String... capturedHeaderNames) {
+        this.bufferPool = bufferPool;
+        this.capturedHeaderNames = new byte[capturedHeaderNames.length][];
+        for (int i = 0; i < capturedHeaderNames.length; i++) {
+            this.capturedHeaderNames[i] = lowerCaseAscii(capturedHeaderNames[i]);
+        }
+        this.buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+        this.buffer.flip();
+    }
+
+    /**
+     * Throws away anything buffered, for use when the underlying connection is replaced.
+     */
+    void reset() {
+        buffer.clear();
+        buffer.flip();
+        responseStarted = false;
+    }
+
+    /**
+     * @return true if any bytes of the response currently being read have arrived
+     */
+    boolean responseStarted() {
+        return responseStarted || buffer.hasRemaining();
+    }
+
+    HttpResponse read(ReadableByteChannel channel) throws IOException {
+        responseStarted = false;
+
+        int lineEnd = nextLine(channel);
+        int status = parseStatus(lineEnd);
+        boolean keepAlive = isHttp11(buffer.position(), lineEnd);
+        skipLine(lineEnd);
+
+        String[] headerValues = new String[capturedHeaderNames.length];
+        long contentLength = -1;
+        boolean chunked = false;
+
+        while ((lineEnd = nextLine(channel)) != buffer.position()) {
+            byte[] array = buffer.array();
+            int start = buffer.position();
+            int colon = indexOf(array, start, lineEnd, (byte) ':');
+            if (colon > 0) {
+                int valueStart = skipWhitespace(array, colon + 1, lineEnd);
+                int valueEnd = trimWhitespace(array, valueStart, lineEnd);
+                if (nameEquals(array, start, colon, CONTENT_LENGTH)) {
+                    contentLength = parseLong(array, valueStart, valueEnd);
+                } else if (nameEquals(array, start, colon, TRANSFER_ENCODING)) {
+                    chunked = containsIgnoreCase(array, valueStart, valueEnd, "chunked");
+                } else if (nameEquals(array, start, colon, CONNECTION)) {
+                    if (containsIgnoreCase(array, valueStart, valueEnd, "close")) {
+                        keepAlive = false;
+                    } else if (containsIgnoreCase(array, valueStart, valueEnd, "keep-alive")) {
+                        keepAlive = true;
+                    }
+                } else {
+                    for (int i = 0; i < capturedHeaderNames.length; i++) {
+                        if (nameEquals(array, start, colon, capturedHeaderNames[i])) {
+                            headerValues[i] = new String(array, valueStart, valueEnd - valueStart,
+                                    StandardCharsets.ISO_8859_1);
+                            break;
+                        }
+                    }
+                }
+            }
+            skipLine(lineEnd);
+        }
+        skipLine(lineEnd);
+
+        long bodyStartNanos = InvocationMetrics.startActive();
+        ByteBuffer body;
+        if (status < 200 || status == 204 || status == 304 || contentLength == 0) {
+            body = ByteBuffer.wrap(EMPTY);
+        } else if (chunked) {
+            body = readChunked(channel);
+        } else if (contentLength > 0) {
+            body = readFixed(channel, (int) contentLength);
+        } else {
+            body = ByteBuffer.wrap(readUntilClosed(channel));
+            keepAlive = false;
+        }
+        bufferPool.observe(body.remaining());
+        return new HttpResponse(status, headerValues, body, keepAlive, bodyStartNanos);
+    }
+
+    private ByteBuffer readFixed(ReadableByteChannel channel, int length) throws IOException {
+        byte[] body = bufferPool.acquire(length);
+        readInto(channel, body, 0, length);
+        return ByteBuffer.wrap(body, 0, length);
+    }
+
+    private void readInto(ReadableByteChannel channel, byte[] target, int offset, int length) throws IOException {
+        int copied = Math.min(buffer.remaining(), length);
+        buffer.get(target, offset, copied);
+        ByteBuffer remainder = ByteBuffer.wrap(target, offset + copied, length - copied);
+        while (remainder.hasRemaining()) {
+            if (channel.read(remainder) < 0) {
+                throw new EOFException("Connection closed by runtime API part way through a response body");
+            }
+        }
+    }
+
+    private ByteBuffer readChunked(ReadableByteChannel channel) throws IOException {
+        byte[] body = bufferPool.acquire(0);
+        int size = 0;
+        while (true) {
+            int lineEnd = nextLine(channel);
+            byte[] array = buffer.array();
+            int sizeEnd = indexOf(array, buffer.position(), lineEnd, (byte) ';');
+            int chunkSize = parseHex(array, buffer.position(), sizeEnd < 0 ? lineEnd : sizeEnd);
+            skipLine(lineEnd);
+            if (chunkSize == 0) {
+                // trailers are not used by the runtime API, so skip them
+                while ((lineEnd = nextLine(channel)) != buffer.position()) {
+                    skipLine(lineEnd);
+                }
+                skipLine(lineEnd);
+                return ByteBuffer.wrap(body, 0, size);
+            }
+            if (body.length - size < chunkSize) {
+                byte[] bigger = bufferPool.acquire(Math.max(body.length * 2, size + chunkSize));
+                System.arraycopy(body, 0, bigger, 0, size);
+                bufferPool.release(body);
+                body = bigger;
+            }
+            readInto(channel, body, size, chunkSize);
+            size += chunkSize;
+            skipLine(nextLine(channel));
+        }
+    }
+
+    private byte[] readUntilClosed(ReadableByteChannel channel) throws IOException {
+        while (true) {
+            buffer.compact();
+            if (!buffer.hasRemaining()) {
+                grow();
+            }
+            int read = channel.read(buffer);
+            buffer.flip();
+            if (read < 0) {
+                byte[] body = new byte[buffer.remaining()];
+                buffer.get(body);
+                return body;
+            }
+        }
+    }
+
+    /**
+     * Makes sure a whole line is buffered.
+     * @return the absolute index in the buffer's array of the CR which ends the line starting at the buffer's position
+     */
+    private int nextLine(ReadableByteChannel channel) throws IOException {
+        int scanned = 0;
+        while (true) {
+            byte[] array = buffer.array();
+            int start = buffer.position();
+            for (int i = start + scanned; i < buffer.limit() - 1; i++) {
+                if (array[i] == CR && array[i + 1] == LF) {
+                    return i;
+                }
+            }
+            scanned = Math.max(buffer.remaining() - 1, 0);
+            fill(channel);
+        }
+    }
+
+    private void skipLine(int lineEnd) {
+        buffer.position(lineEnd + 2);
+    }
+
+    private void fill(ReadableByteChannel channel) throws IOException {
+        buffer.compact();
+        if (!buffer.hasRemaining()) {
+            grow();
+        }
+        int read = channel.read(buffer);
+        buffer.flip();
+        if (read < 0) {
+            throw new EOFException("Connection closed by runtime API");
+        }
+        if (read > 0) {
+            responseStarted = true;
+        }
+    }
+
+    // expects the buffer in "write" mode, as left by compact()
+    private void grow() {
+        ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+        buffer.flip();
+        bigger.put(buffer);
+        buffer = bigger;
+    }
+
+    private int parseStatus(int lineEnd) throws IOException {
+        byte[] array = buffer.array();
+        int space = indexOf(array, buffer.position(), lineEnd, (byte) ' ');
+        if (space < 0 || space + 4 > lineEnd) {
+            throw new IOException("Malformed HTTP status line from runtime API");
+        }
+        return (int) parseLong(array, space + 1, space + 4);
+    }
+
+    private boolean isHttp11(int start, int lineEnd) {
+        byte[] array = buffer.array();
+        return lineEnd - start >= 8 && array[start + 5] == '1' && array[start + 7] == '1';
+    }
+
+    private static int indexOf(byte[] array, int from, int to, byte target) {
+        for (int i = from; i < to; i++) {
+            if (array[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(byte[] array, int from, int to) {
+        while (from < to && (array[from] == ' ' || array[from] == '\t')) {
+            from++;
+        }
+        return from;
+    }
+
+    private static int trimWhitespace(byte[] array, int from, int to) {
+        while (to > from && (array[to - 1] == ' ' || array[to - 1] == '\t')) {
+            to--;
+        }
+        return to;
+    }
+
+    private static boolean nameEquals(byte[] array, int from, int to, byte[] lowerCaseName) {
+        if (to - from != lowerCaseName.length) {
+            return false;
+        }
+        for (int i = 0; i < lowerCaseName.length; i++) {
+            if (toLowerCase(array[from + i]) != lowerCaseName[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean containsIgnoreCase(byte[] array, int from, int to, String target) {
+        int length = target.length();
+        for (int i = from; i <= to - length; i++) {
+            int j = 0;
+            while (j < length && toLowerCase(array[i + j]) == target.charAt(j)) {
+                j++;
+            }
+            if (j == length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long parseLong(byte[] array, int from, int to) throws IOException {
+        if (from == to) {
+            throw new IOException("Missing numeric value in HTTP response from runtime API");
+        }
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = array[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IOException("Malformed numeric value in HTTP response from runtime API");
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static int parseHex(byte[] array, int from, int to) throws IOException {
+        to = trimWhitespace(array, from, to);
+        if (from == to) {
+            throw new IOException("Missing chunk size in HTTP response from runtime API");
+        }
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = Character.digit(array[i], 16);
+            if (digit < 0) {
+                throw new IOException("Malformed chunk size in HTTP response from runtime API");
+            }
+            value = value * 16 + digit;
+        }
+        return value;
+    }
+
+    private static byte toLowerCase(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + 32) : b;
+    }
+
+    private static byte[] lowerCaseAscii(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = toLowerCase(bytes[i]);
+        }
+        return bytes;
+    }
+}
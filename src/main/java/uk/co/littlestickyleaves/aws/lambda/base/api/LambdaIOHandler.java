@@ -1,17 +1,58 @@
 package uk.co.littlestickyleaves.aws.lambda.base.api;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Interface definition of the Lambda API for input and output.
  * See https://docs.aws.amazon.com/lambda/latest/dg/runtimes-api.html.
- * It deals with String payloads and does not care about their meaning.
- * It has four options:
+ * It deals with String or byte payloads and does not care about their meaning.
+ * It has four main options:
  * -- GET input
- * -- POST successful output for a specific input
+ * -- POST successful output for a specific input (optionally streamed)
  * -- POST an error for a specific input
  * -- POST a general initialization error
+ * plus the restore calls used when the runtime is snapshotted and restored (as with Lambda SnapStart).
  */
 public interface LambdaIOHandler {
 
+    /**
+     * Gets ready to talk to the Lambda API, for instance by opening a connection,
+     * so that the first GET for input doesn't have to.  LambdaRunner calls it once, before the first GET.
+     * By default it does nothing.
+     * @throws Exception if the Lambda API cannot be reached
+     */
+    default void open() throws Exception {
+    }
+
+    /**
+     * Called before a snapshot of the runtime is taken, to let go of anything, such as an open connection,
+     * which would not survive being restored somewhere else.  By default it does nothing.
+     * @throws Exception if a problem occurs
+     */
+    default void beforeCheckpoint() throws Exception {
+    }
+
+    /**
+     * The call made to say the runtime is ready to be snapshotted; it returns once the runtime has been restored.
+     * https://docs.aws.amazon.com/lambda/latest/dg/runtimes-api.html#runtimes-api-restore-next
+     * By default it returns straight away, as if the restore had already happened.
+     * @throws Exception if there's an error in communicating with the lambda API
+     */
+    default void restoreNext() throws Exception {
+    }
+
+    /**
+     * Called after the runtime has been restored from a snapshot, before the first GET for input,
+     * to put back whatever beforeCheckpoint let go of.  By default it calls open().
+     * @throws Exception if the Lambda API cannot be reached
+     */
+    default void afterRestore() throws Exception {
+        open();
+    }
+
     /**
      * The call made to get the next input available for this lambda
      * https://docs.aws.amazon.com/lambda/latest/dg/runtimes-api.html#runtimes-api-next
@@ -20,6 +61,14 @@ public interface LambdaIOHandler {
      */
     LambdaInputWithId getLambdaInput() throws Exception;
 
+    /**
+     * Called once an invocation is over, so that the buffer its input was read into can be reused for a later one.
+     * The input's bytes must not be used after this.  By default it does nothing.
+     * @param lambdaInputWithId an input returned by getLambdaInput()
+     */
+    default void recycle(LambdaInputWithId lambdaInputWithId) {
+    }
+
     /**
      * The call made to return the output on successful completion of the lambda.
      * @param awsRequestId the unique id for this lambda input
@@ -28,6 +77,50 @@ public interface LambdaIOHandler {
      */
     void returnLambdaOutput(String awsRequestId, String result) throws Exception;
 
+    /**
+     * The call made to return the output on successful completion of the lambda, as bytes.
+     * By default the bytes are decoded as UTF-8 and passed to the String version;
+     * implementations which can send the bytes as they are should override this.
+     * @param awsRequestId the unique id for this lambda input
+     * @param result the lambda's output, from the buffer's position to its limit
+     * @throws Exception if there's an error in communicating with the lambda API
+     */
+    default void returnLambdaOutput(String awsRequestId, ByteBuffer result) throws Exception {
+        returnLambdaOutput(awsRequestId, StandardCharsets.UTF_8.decode(result).toString());
+    }
+
+    /**
+     * Sends the output on successful completion of the lambda without waiting for the Lambda API to acknowledge it,
+     * so that the next GET for input can go out straight away.
+     * The acknowledgement is checked later; any failure is handed back by takeDeferredOutputFailures().
+     * By default this just calls returnLambdaOutput, which waits.
+     * @param awsRequestId the unique id for this lambda input
+     * @param result the lambda's output, from the buffer's position to its limit; it is fully sent before this returns
+     * @throws Exception if there's an error in communicating with the lambda API
+     */
+    default void returnLambdaOutputDeferred(String awsRequestId, ByteBuffer result) throws Exception {
+        returnLambdaOutput(awsRequestId, result);
+    }
+
+    /**
+     * @return failures of output sent with returnLambdaOutputDeferred which have come to light since the last call
+     */
+    default List<DeferredOutputFailure> takeDeferredOutputFailures() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Opens a stream for returning the output as it is produced, using Lambda's response streaming mode.
+     * By default the output is buffered and posted with returnLambdaOutput when the stream completes;
+     * implementations which can stream should override this.
+     * @param awsRequestId the unique id for this lambda input
+     * @return a LambdaResponseStream to write the output to
+     * @throws Exception if there's an error in communicating with the lambda API
+     */
+    default LambdaResponseStream openResponseStream(String awsRequestId) throws Exception {
+        return new BufferedLambdaResponseStream(this, awsRequestId);
+    }
+
     /**
      * The call made to tell the Lambda API that the Lambda invocation has failed.
      * https://docs.aws.amazon.com/lambda/latest/dg/runtimes-api.html#runtimes-api-invokeerror
@@ -44,4 +137,15 @@ public interface LambdaIOHandler {
      * @throws Exception if a problem occurs
      */
     void returnInitializationError(Exception exception) throws Exception;
+
+    /**
+     * The call made to tell the Lambda API that getting going again after a restore from a snapshot has failed.
+     * https://docs.aws.amazon.com/lambda/latest/dg/runtimes-api.html#runtimes-api-restore-error
+     * By default it is reported as an initialization error.
+     * @param exception an exception holding information which should be sent to the Lambda API
+     * @throws Exception if a problem occurs
+     */
+    default void returnRestoreError(Exception exception) throws Exception {
+        returnInitializationError(exception);
+    }
 }
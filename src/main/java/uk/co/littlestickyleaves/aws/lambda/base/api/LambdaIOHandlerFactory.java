@@ -4,6 +4,7 @@ import uk.co.littlestickyleaves.aws.lambda.base.error.ErrorJsonProvider;
 
 /**
  * A simple factory to provide a LambdaIOHandler.
+ * simple() uses HttpURLConnection; keepAlive() keeps one persistent connection to the runtime API.
  */
 public class LambdaIOHandlerFactory {
 
@@ -11,4 +12,9 @@ public class LambdaIOHandlerFactory {
         String runtimeApiEndpoint = System.getenv("AWS_LAMBDA_RUNTIME_API");
         return new LambdaIOHandlerSimple(runtimeApiEndpoint, new ErrorJsonProvider());
     }
+
+    public static LambdaIOHandler keepAlive() {
+        String runtimeApiEndpoint = System.getenv("AWS_LAMBDA_RUNTIME_API");
+        return new LambdaIOHandlerKeepAlive(runtimeApiEndpoint, new ErrorJsonProvider());
+    }
 }
@@ -0,0 +1,560 @@
+package uk.co.littlestickyleaves.aws.lambda.base.api;
+
+import uk.co.littlestickyleaves.aws.lambda.base.error.ErrorJsonProvider;
+import uk.co.littlestickyleaves.aws.lambda.base.error.LambdaException;
+import uk.co.littlestickyleaves.aws.lambda.base.log.LambdaLogger;
+import uk.co.littlestickyleaves.aws.lambda.base.log.LogLevel;
+import uk.co.littlestickyleaves.aws.lambda.base.metrics.InvocationMetrics;
+import uk.co.littlestickyleaves.aws.lambda.base.metrics.Phase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * An implementation of the LambdaIOHandler interface which keeps one HTTP/1.1 connection to the runtime API open
+ * for the life of the runtime, instead of leaving connection reuse up to HttpURLConnection.
+ * The fixed parts of every request are turned into bytes once, when the handler is created,
+ * and responses are read by a small purpose-built parser.
+ * Responses can also be streamed, with chunked transfer encoding, as Lambda's response streaming mode allows.
+ * Output sent with returnLambdaOutputDeferred is pipelined: the next GET for input is written straight after it,
+ * and the acknowledgement of the output is read from the connection before the GET's response.
+ * Response bodies are read into pooled buffers, and the fixed request parts are reused,
+ * so a warm runtime makes very little garbage on its side of each invocation.
+ * Like LambdaIOHandlerSimple it only uses JDK classes, so it doesn't upset GraalVM.
+ * It is not thread-safe: it expects to be used for one invocation at a time.
+ */
+public class LambdaIOHandlerKeepAlive implements LambdaIOHandler {
+
+    private static final LambdaLogger LOGGER = LambdaLogger.getLogger(LambdaIOHandlerKeepAlive.class);
+
+    private static final String LAMBDA_RUNTIME_AWS_REQUEST_ID = "Lambda-Runtime-Aws-Request-Id";
+    private static final String LAMBDA_RUNTIME_DEADLINE_MS = "Lambda-Runtime-Deadline-Ms";
+    private static final String LAMBDA_RUNTIME_TRACE_ID = "Lambda-Runtime-Trace-Id";
+
+    private static final String RUNTIME = "/2018-06-01/runtime/";
+    private static final String INVOCATION = "invocation/";
+    private static final String NEXT = "next";
+    private static final String RESPONSE = "/response";
+    private static final String INIT = "init";
+    private static final String RESTORE = "restore";
+    private static final String ERROR = "/error";
+
+    private static final String HTTP_VERSION = " HTTP/1.1\r\n";
+    private static final String CONTENT_TYPE = "Content-Type: application/json; utf-8\r\n";
+    private static final String ERROR_TYPE = "Lambda-Runtime-Function-Error-Type: Unhandled\r\n";
+    private static final String CONTENT_LENGTH = "Content-Length: ";
+    private static final String STREAMING = "Lambda-Runtime-Function-Response-Mode: streaming\r\n" +
+            "Transfer-Encoding: chunked\r\n" +
+            "Trailer: Lambda-Runtime-Function-Error-Type, Lambda-Runtime-Function-Error-Body\r\n";
+    private static final String ERROR_TRAILERS = "0\r\nLambda-Runtime-Function-Error-Type: Unhandled\r\n" +
+            "Lambda-Runtime-Function-Error-Body: ";
+
+    private static final int STREAM_CHUNK_SIZE = 32 * 1024;
+
+    private static final int AWS_REQUEST_ID_HEADER = 0;
+    private static final int DEADLINE_MS_HEADER = 1;
+    private static final int TRACE_ID_HEADER = 2;
+
+    private final BufferPool bufferPool = new BufferPool();
+    private final RuntimeApiConnection connection;
+    private final ErrorJsonProvider errorJsonProvider;
+
+    private final ByteBuffer nextRequest;
+    private final ByteBuffer invocationPostStart;
+    private final ByteBuffer responsePostHeaders;
+    private final ByteBuffer errorPostHeaders;
+    private final ByteBuffer initErrorPostHeaders;
+    private final ByteBuffer restoreNextRequest;
+    private final ByteBuffer restoreErrorPostHeaders;
+    private final ByteBuffer headersEnd;
+    private final ByteBuffer streamingPostHeaders;
+    private final ByteBuffer lastChunk;
+    private final ByteBuffer errorTrailers;
+    private final ByteBuffer lineEnd;
+    private final ByteBuffer contentLengthDigits = ByteBuffer.allocate(20);
+    private ByteBuffer requestIdBytes = ByteBuffer.allocate(64);
+
+    private final Deque<String> unacknowledgedOutputs = new ArrayDeque<>();
+    private List<DeferredOutputFailure> deferredOutputFailures = new ArrayList<>();
+
+    public LambdaIOHandlerKeepAlive(String runtimeApiEndpoint, ErrorJsonProvider errorJsonProvider) {
+        this.connection = new RuntimeApiConnection(runtimeApiEndpoint,
+                new HttpResponseReader(bufferPool, LAMBDA_RUNTIME_AWS_REQUEST_ID, LAMBDA_RUNTIME_DEADLINE_MS,
+                        LAMBDA_RUNTIME_TRACE_ID));
+        this.errorJsonProvider = errorJsonProvider;
+
+        String host = "Host: " + runtimeApiEndpoint + "\r\n";
+        this.nextRequest = template("GET " + RUNTIME + INVOCATION + NEXT + HTTP_VERSION + host + "\r\n");
+        this.invocationPostStart = template("POST " + RUNTIME + INVOCATION);
+        this.responsePostHeaders = template(RESPONSE + HTTP_VERSION + host + CONTENT_TYPE + CONTENT_LENGTH);
+        this.errorPostHeaders = template(ERROR + HTTP_VERSION + host + CONTENT_TYPE + ERROR_TYPE + CONTENT_LENGTH);
+        this.initErrorPostHeaders = template("POST " + RUNTIME + INIT + ERROR + HTTP_VERSION + host +
+                CONTENT_TYPE + ERROR_TYPE + CONTENT_LENGTH);
+        // the restore GET asks for its connection to be closed, as it is the one the snapshot is taken during
+        this.restoreNextRequest = template("GET " + RUNTIME + RESTORE + "/" + NEXT + HTTP_VERSION + host +
+                "Connection: close\r\n\r\n");
+        this.restoreErrorPostHeaders = template("POST " + RUNTIME + RESTORE + ERROR + HTTP_VERSION + host +
+                CONTENT_TYPE + ERROR_TYPE + CONTENT_LENGTH);
+        this.headersEnd = template("\r\n\r\n");
+        this.streamingPostHeaders = template(RESPONSE + HTTP_VERSION + host + CONTENT_TYPE + STREAMING + "\r\n");
+        this.lastChunk = template("0\r\n\r\n");
+        this.errorTrailers = template(ERROR_TRAILERS);
+        this.lineEnd = template("\r\n");
+    }
+
+    @Override
+    public void open() throws Exception {
+        try {
+            connection.open();
+        } catch (IOException exception) {
+            throw new LambdaException("Opening connection to runtime API resulted in " +
+                    exception.getClass().getSimpleName() + " with message " + exception.getMessage());
+        }
+    }
+
+    @Override
+    public void recycle(LambdaInputWithId lambdaInputWithId) {
+        bufferPool.release(lambdaInputWithId.takeRawBytes());
+    }
+
+    /**
+     * Closes the kept-alive connection, after reading any outstanding acknowledgements,
+     * since it would be dead after a restore.
+     */
+    @Override
+    public void beforeCheckpoint() {
+        acknowledgeDeferredOutputs();
+        connection.close();
+    }
+
+    @Override
+    public void restoreNext() throws Exception {
+        LOGGER.debug("Doing GET for restore");
+        try {
+            HttpResponse response = connection.exchange(rewound(restoreNextRequest));
+            if (response.getStatus() > 299) {
+                handleHttpProblem("GET for restore", response);
+            }
+            recycle(response);
+        } catch (IOException exception) {
+            throw new LambdaException("GET for restore resulted in " + exception.getClass().getSimpleName() +
+                    " with message " + exception.getMessage(), exception);
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Override
+    public void afterRestore() throws Exception {
+        connection.close();
+        open();
+    }
+
+    @Override
+    public LambdaInputWithId getLambdaInput() throws Exception {
+        LOGGER.debug("Doing GET for next input");
+        try {
+            HttpResponse response = unacknowledgedOutputs.isEmpty() ?
+                    connection.exchange(rewound(nextRequest)) : pipelinedNext();
+            InvocationMetrics.recordActive(Phase.BODY_READ, response.getBodyStartNanos());
+
+            if (response.getStatus() > 299) {
+                handleHttpProblem("GET for input", response);
+            }
+
+            String awsRequestId = response.getHeaderValue(AWS_REQUEST_ID_HEADER);
+            if (awsRequestId == null) {
+                throwException("GET for input returned no header value for " + LAMBDA_RUNTIME_AWS_REQUEST_ID);
+            }
+
+            LambdaInputWithId lambdaInputWithId = new LambdaInputWithId(awsRequestId, response.getBody(),
+                    LambdaInputWithId.parseDeadline(response.getHeaderValue(DEADLINE_MS_HEADER)));
+            lambdaInputWithId.setTraceId(response.getHeaderValue(TRACE_ID_HEADER));
+            return lambdaInputWithId;
+
+        } catch (IOException exception) {
+            throw new LambdaException("GET for input resulted in " + exception.getClass().getSimpleName() +
+                    " with message " + exception.getMessage(), exception);
+        }
+    }
+
+    @Override
+    public void returnLambdaOutput(String awsRequestId, String result) throws Exception {
+        returnLambdaOutput(awsRequestId, utf8(result));
+    }
+
+    @Override
+    public void returnLambdaOutput(String awsRequestId, ByteBuffer result) throws Exception {
+        if (LOGGER.isEnabled(LogLevel.DEBUG)) {
+            LOGGER.debug("POSTing result for awsRequestId " + awsRequestId + " (" + result.remaining() + " bytes)");
+        }
+        acknowledgeDeferredOutputs();
+
+        HttpResponse response = post("POSTing processed output for awsRequestId " + awsRequestId,
+                rewound(invocationPostStart), requestIdBytes(awsRequestId), rewound(responsePostHeaders),
+                result);
+
+        if (response.getStatus() > 299 && !refusedAsRepeat(response)) {
+            handleHttpProblem("POSTing processed output for awsRequestId " + awsRequestId, response);
+        }
+        recycle(response);
+    }
+
+    @Override
+    public void returnLambdaOutputDeferred(String awsRequestId, ByteBuffer result) throws Exception {
+        if (LOGGER.isEnabled(LogLevel.DEBUG)) {
+            LOGGER.debug("POSTing result for awsRequestId " + awsRequestId + " (" + result.remaining() +
+                    " bytes) without waiting");
+        }
+        acknowledgeDeferredOutputs();
+
+        try {
+            connection.write(rewound(invocationPostStart), requestIdBytes(awsRequestId),
+                    rewound(responsePostHeaders), contentLength(result.remaining()), rewound(headersEnd), result);
+        } catch (IOException exception) {
+            throw new LambdaException("POSTing processed output for awsRequestId " + awsRequestId + " resulted in " +
+                    exception.getClass().getSimpleName() + " with message " + exception.getMessage(), exception);
+        }
+        unacknowledgedOutputs.add(awsRequestId);
+    }
+
+    @Override
+    public List<DeferredOutputFailure> takeDeferredOutputFailures() {
+        if (deferredOutputFailures.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<DeferredOutputFailure> failures = deferredOutputFailures;
+        deferredOutputFailures = new ArrayList<>();
+        return failures;
+    }
+
+    @Override
+    public LambdaResponseStream openResponseStream(String awsRequestId) {
+        acknowledgeDeferredOutputs();
+        return new ChunkedResponseStream(awsRequestId);
+    }
+
+    @Override
+    public void returnInvocationError(String awsRequestId, Exception exception) throws Exception {
+        LOGGER.info("POSTing invocation error for awsRequestId " + awsRequestId +
+                " with message '" + exception.getMessage() + "'");
+
+        acknowledgeDeferredOutputs();
+        String payload = errorJsonProvider.transform(exception);
+        HttpResponse response = post("POSTing invocation error for awsRequestId " + awsRequestId,
+                rewound(invocationPostStart), requestIdBytes(awsRequestId), rewound(errorPostHeaders),
+                utf8(payload));
+
+        if (response.getStatus() > 299 && !refusedAsRepeat(response)) {
+            handleHttpProblem("POSTing invocation error for awsRequestId " + awsRequestId, response);
+        }
+        recycle(response);
+
+        LOGGER.info("Posted processing error for " + awsRequestId + ", receiving: " + response.getStatus());
+    }
+
+    @Override
+    public void returnInitializationError(Exception exception) throws Exception {
+        LOGGER.error("POSTing initialization error with message '" + exception.getMessage() + "'");
+
+        acknowledgeDeferredOutputs();
+        String payload = errorJsonProvider.transform(exception);
+        HttpResponse response = post("POSTing initialization error",
+                rewound(initErrorPostHeaders), utf8(payload));
+
+        throwException("Runtime unable to continue.  POSTed initialization error, receiving status: " +
+                response.getStatus());
+    }
+
+    @Override
+    public void returnRestoreError(Exception exception) throws Exception {
+        LOGGER.error("POSTing restore error with message '" + exception.getMessage() + "'");
+
+        String payload = errorJsonProvider.transform(exception);
+        HttpResponse response = post("POSTing restore error",
+                rewound(restoreErrorPostHeaders), utf8(payload));
+
+        throwException("Runtime unable to continue.  POSTed restore error, receiving status: " +
+                response.getStatus());
+    }
+
+    /**
+     * Sends a POST whose last buffer is the body, filling in the Content-Length header between the other parts
+     * and the body.
+     */
+    private HttpResponse post(String action, ByteBuffer... partsThenBody) throws LambdaException {
+        ByteBuffer body = partsThenBody[partsThenBody.length - 1];
+        ByteBuffer[] request = new ByteBuffer[partsThenBody.length + 2];
+        System.arraycopy(partsThenBody, 0, request, 0, partsThenBody.length - 1);
+        request[partsThenBody.length - 1] = contentLength(body.remaining());
+        request[partsThenBody.length] = rewound(headersEnd);
+        request[partsThenBody.length + 1] = body;
+        try {
+            return connection.exchange(request);
+        } catch (IOException exception) {
+            throw new LambdaException(action + " resulted in " + exception.getClass().getSimpleName() +
+                    " with message " + exception.getMessage(), exception);
+        }
+    }
+
+    /**
+     * Writes the GET for input straight after any unacknowledged output, then reads the output acknowledgements
+     * followed by the GET's response.
+     * If the connection fails part way, the outcome of the remaining outputs is unknown, so they are logged,
+     * and the GET is sent again on a fresh connection.
+     */
+    private HttpResponse pipelinedNext() throws IOException {
+        try {
+            connection.write(rewound(nextRequest));
+        } catch (IOException exception) {
+            abandonUnacknowledgedOutputs(exception);
+            return connection.exchange(rewound(nextRequest));
+        }
+        if (!readAcknowledgements() || !connection.isOpen()) {
+            return connection.exchange(rewound(nextRequest));
+        }
+        return connection.readResponse();
+    }
+
+    private void acknowledgeDeferredOutputs() {
+        if (!unacknowledgedOutputs.isEmpty()) {
+            readAcknowledgements();
+        }
+    }
+
+    /**
+     * @return true if every acknowledgement was read, false if the connection failed
+     */
+    private boolean readAcknowledgements() {
+        while (!unacknowledgedOutputs.isEmpty()) {
+            String awsRequestId = unacknowledgedOutputs.peek();
+            HttpResponse response;
+            try {
+                response = connection.readResponse();
+            } catch (IOException exception) {
+                abandonUnacknowledgedOutputs(exception);
+                return false;
+            }
+            unacknowledgedOutputs.remove();
+            if (response.getStatus() > 299) {
+                String errorMessage = "POSTing processed output for awsRequestId " + awsRequestId +
+                        " resulted in status code " + response.getStatus() + " with message: '" +
+                        response.getBodyAsString() + "'. Exiting with exception";
+                LOGGER.error(errorMessage);
+                deferredOutputFailures.add(new DeferredOutputFailure(awsRequestId,
+                        new LambdaException(errorMessage, response.getStatus())));
+            }
+            recycle(response);
+        }
+        return true;
+    }
+
+    /**
+     * The outputs were written in full, so have probably been delivered, and only their acknowledgements lost;
+     * reporting them as failures would only have the runtime API refuse the error posts, so they are just logged.
+     */
+    private void abandonUnacknowledgedOutputs(IOException exception) {
+        while (!unacknowledgedOutputs.isEmpty()) {
+            LOGGER.warn("Acknowledgement of output for awsRequestId " + unacknowledgedOutputs.remove() +
+                    " was lost to " + exception.getClass().getSimpleName() + " with message " +
+                    exception.getMessage() + ", so whether it was delivered is unknown");
+        }
+    }
+
+    private void handleHttpProblem(String action, HttpResponse response) throws LambdaException {
+        String errorMessage = action + " resulted in status code " + response.getStatus() +
+                " with message: '" + response.getBodyAsString() + "'. Exiting with exception";
+        recycle(response);
+        LOGGER.error(errorMessage);
+        throw new LambdaException(errorMessage, response.getStatus());
+    }
+
+    /**
+     * @return true if the post had to be sent again on a fresh connection and the runtime API refused it as a repeat
+     * (with a 4xx status other than 413), so the first got through and only its answer was lost
+     */
+    private boolean refusedAsRepeat(HttpResponse response) {
+        int status = response.getStatus();
+        if (connection.wasResent() && status >= 400 && status < 500 && status != 413) {
+            LOGGER.warn("Post sent again was refused with status code " + status + ", so the first got through");
+            return true;
+        }
+        return false;
+    }
+
+    private void throwException(String errorMessage) throws LambdaException {
+        LOGGER.error(errorMessage);
+        throw new LambdaException(errorMessage);
+    }
+
+    private void recycle(HttpResponse response) {
+        bufferPool.release(response.getBody());
+    }
+
+    private ByteBuffer contentLength(int length) {
+        return digits(length, 10, contentLengthDigits);
+    }
+
+    private static ByteBuffer digits(int value, int radix, ByteBuffer target) {
+        target.clear();
+        int start = target.capacity();
+        do {
+            target.put(--start, (byte) Character.forDigit(value % radix, radix));
+            value /= radix;
+        } while (value > 0);
+        target.position(start);
+        return target;
+    }
+
+    /**
+     * @return the request id as ASCII, in a buffer which is reused by the next call
+     */
+    private ByteBuffer requestIdBytes(String awsRequestId) {
+        int length = awsRequestId.length();
+        if (requestIdBytes.capacity() < length) {
+            requestIdBytes = ByteBuffer.allocate(length * 2);
+        }
+        requestIdBytes.clear();
+        for (int i = 0; i < length; i++) {
+            requestIdBytes.put((byte) awsRequestId.charAt(i));
+        }
+        requestIdBytes.flip();
+        return requestIdBytes;
+    }
+
+    private static ByteBuffer utf8(String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static ByteBuffer rewound(ByteBuffer template) {
+        template.rewind();
+        return template;
+    }
+
+    private static ByteBuffer template(String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.US_ASCII)).asReadOnlyBuffer();
+    }
+
+    /**
+     * Streams a response as chunks of at most STREAM_CHUNK_SIZE bytes.
+     * The request headers only go out with the first chunk, so if the worker fails before anything has been
+     * flushed the error can still be posted normally rather than as a trailer.
+     */
+    private class ChunkedResponseStream extends LambdaResponseStream {
+
+        private final String awsRequestId;
+        private final String action;
+        private final byte[] buffer = new byte[STREAM_CHUNK_SIZE];
+        private final ByteBuffer chunkSizeDigits = ByteBuffer.allocate(10);
+        private int count;
+        private boolean started;
+        private boolean finished;
+
+        ChunkedResponseStream(String awsRequestId) {
+            this.awsRequestId = awsRequestId;
+            this.action = "Streaming processed output for awsRequestId " + awsRequestId;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                sendBuffered();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (length > buffer.length - count) {
+                sendBuffered();
+                if (length >= buffer.length) {
+                    sendChunk(ByteBuffer.wrap(bytes, offset, length));
+                    return;
+                }
+            }
+            System.arraycopy(bytes, offset, buffer, count, length);
+            count += length;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            sendBuffered();
+        }
+
+        @Override
+        public void complete() throws Exception {
+            if (!started) {
+                finished = true;
+                returnLambdaOutput(awsRequestId, ByteBuffer.wrap(buffer, 0, count));
+                return;
+            }
+            sendBuffered();
+            finish(rewound(lastChunk));
+        }
+
+        @Override
+        public void fail(Exception exception) throws Exception {
+            if (!started || finished) {
+                finished = true;
+                returnInvocationError(awsRequestId, exception);
+                return;
+            }
+            LOGGER.info("Sending invocation error trailers for awsRequestId " + awsRequestId +
+                    " with message '" + exception.getMessage() + "'");
+            String errorBody = Base64.getEncoder().encodeToString(
+                    errorJsonProvider.transform(exception).getBytes(StandardCharsets.UTF_8));
+            finish(rewound(errorTrailers), utf8(errorBody), rewound(headersEnd));
+        }
+
+        private void finish(ByteBuffer... ending) throws Exception {
+            finished = true;
+            HttpResponse response;
+            try {
+                connection.write(ending);
+                response = connection.readResponse();
+            } catch (IOException exception) {
+                throw new LambdaException(action + " resulted in " + exception.getClass().getSimpleName() +
+                        " with message " + exception.getMessage(), exception);
+            }
+            if (response.getStatus() > 299) {
+                handleHttpProblem(action, response);
+            }
+            recycle(response);
+        }
+
+        private void sendBuffered() throws IOException {
+            if (count > 0) {
+                sendChunk(ByteBuffer.wrap(buffer, 0, count));
+                count = 0;
+            }
+        }
+
+        private void sendChunk(ByteBuffer chunk) throws IOException {
+            if (finished) {
+                throw new IOException(action + " has already finished");
+            }
+            ByteBuffer size = digits(chunk.remaining(), 16, chunkSizeDigits);
+            try {
+                if (!started) {
+                    LOGGER.debug("Starting streamed response for awsRequestId " + awsRequestId);
+                    started = true;
+                    connection.write(rewound(invocationPostStart), requestIdBytes(awsRequestId),
+                            rewound(streamingPostHeaders), size, rewound(lineEnd), chunk, lineEnd.duplicate());
+                } else {
+                    connection.write(size, rewound(lineEnd), chunk, lineEnd.duplicate());
+                }
+            } catch (IOException exception) {
+                // the connection has gone, so there is no response left to add trailers to
+                finished = true;
+                throw exception;
+            }
+        }
+    }
+}
@@ -3,22 +3,29 @@ package uk.co.littlestickyleaves.aws.lambda.base.api;
 
 import uk.co.littlestickyleaves.aws.lambda.base.error.ErrorJsonProvider;
 import uk.co.littlestickyleaves.aws.lambda.base.error.LambdaException;
+import uk.co.littlestickyleaves.aws.lambda.base.log.LambdaLogger;
+import uk.co.littlestickyleaves.aws.lambda.base.log.LogLevel;
+import uk.co.littlestickyleaves.aws.lambda.base.metrics.InvocationMetrics;
+import uk.co.littlestickyleaves.aws.lambda.base.metrics.Phase;
 
 import java.io.*;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 /**
  * An implementation of the LambdaIOHandler interface using Java 1.1's HttpUrlConnection.
  * (I got fed up with trying various libraries which caused GraalVM to complain, so I did this old-school implementation.)
- * Q. proper logging sensible or not?
  */
 public class LambdaIOHandlerSimple implements LambdaIOHandler {
 
+    private static final LambdaLogger LOGGER = LambdaLogger.getLogger(LambdaIOHandlerSimple.class);
+
     private static final String LAMBDA_RUNTIME_AWS_REQUEST_ID = "Lambda-Runtime-Aws-Request-Id";
+    private static final String LAMBDA_RUNTIME_DEADLINE_MS = "Lambda-Runtime-Deadline-Ms";
+    private static final String LAMBDA_RUNTIME_TRACE_ID = "Lambda-Runtime-Trace-Id";
 
     private static final String HTTP = "http://";
     private static final String RUNTIME = "/2018-06-01/runtime/";
@@ -26,10 +33,12 @@ public class LambdaIOHandlerSimple implements LambdaIOHandler {
     private static final String NEXT = "next";
     private static final String RESPONSE = "/response";
     private static final String INIT = "init";
+    private static final String RESTORE = "restore";
     private static final String ERROR = "/error";
 
     private final String runtimeApiRoot;
     private final ErrorJsonProvider errorJsonProvider;
+    private final BufferPool bufferPool = new BufferPool();
 
     public LambdaIOHandlerSimple(String runtimeApiEndpoint, ErrorJsonProvider errorJsonProvider) {
         this.runtimeApiRoot = HTTP + runtimeApiEndpoint + RUNTIME;
@@ -41,7 +50,9 @@ public class LambdaIOHandlerSimple implements LambdaIOHandler {
         try {
             URL inputUrl = new URL(runtimeApiRoot + INVOCATION + NEXT);
 
-            System.out.println("Doing GET for next input at " + inputUrl.toString());
+            if (LOGGER.isEnabled(LogLevel.DEBUG)) {
+                LOGGER.debug("Doing GET for next input at " + inputUrl);
+            }
 
             HttpURLConnection httpURLConnection = (HttpURLConnection) inputUrl.openConnection();
             httpURLConnection.setRequestMethod("GET");
@@ -58,21 +69,45 @@ public class LambdaIOHandlerSimple implements LambdaIOHandler {
                 throwException("GET for input returned no header value for " + LAMBDA_RUNTIME_AWS_REQUEST_ID);
             }
 
-            String content = contentFromHttpUrlConnection(httpURLConnection, uncheckedInputStreamFetcher());
-            return new LambdaInputWithId(awsRequestId, content);
+            long deadlineEpochMillis = LambdaInputWithId.parseDeadline(httpURLConnection.getHeaderField(LAMBDA_RUNTIME_DEADLINE_MS));
+
+            long bodyStartNanos = InvocationMetrics.startActive();
+            ByteBuffer content = readInput(httpURLConnection);
+            InvocationMetrics.recordActive(Phase.BODY_READ, bodyStartNanos);
+            LambdaInputWithId lambdaInputWithId = new LambdaInputWithId(awsRequestId, content, deadlineEpochMillis);
+            lambdaInputWithId.setTraceId(httpURLConnection.getHeaderField(LAMBDA_RUNTIME_TRACE_ID));
+            return lambdaInputWithId;
 
         } catch (IOException exception) {
             throw new LambdaException("GET for input resulted in " + exception.getClass().getSimpleName() +
-                    " with message " + exception.getMessage());
+                    " with message " + exception.getMessage(), exception);
         }
     }
 
     @Override
     public void returnLambdaOutput(String awsRequestId, String result) throws Exception {
         URL outputUrl = new URL(runtimeApiRoot + INVOCATION + awsRequestId + RESPONSE);
-        System.out.println("POSTing result for awsRequestId " + awsRequestId + " to " + outputUrl.toString() +
-                "\n" + result);
+        if (LOGGER.isEnabled(LogLevel.TRACE)) {
+            LOGGER.trace("POSTing result for awsRequestId " + awsRequestId + " to " + outputUrl + "\n" + result);
+        } else if (LOGGER.isEnabled(LogLevel.DEBUG)) {
+            LOGGER.debug("POSTing result for awsRequestId " + awsRequestId + " to " + outputUrl);
+        }
+
+        postLambdaOutput(awsRequestId, outputUrl, ByteBuffer.wrap(result.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public void returnLambdaOutput(String awsRequestId, ByteBuffer result) throws Exception {
+        URL outputUrl = new URL(runtimeApiRoot + INVOCATION + awsRequestId + RESPONSE);
+        if (LOGGER.isEnabled(LogLevel.DEBUG)) {
+            LOGGER.debug("POSTing result for awsRequestId " + awsRequestId + " to " + outputUrl +
+                    " (" + result.remaining() + " bytes)");
+        }
+
+        postLambdaOutput(awsRequestId, outputUrl, result);
+    }
 
+    private void postLambdaOutput(String awsRequestId, URL outputUrl, ByteBuffer result) throws Exception {
         HttpURLConnection httpURLConnection = setUpPost(outputUrl, result, false);
 
         int status = httpURLConnection.getResponseCode();
@@ -85,62 +120,135 @@ public class LambdaIOHandlerSimple implements LambdaIOHandler {
     @Override
     public void returnInvocationError(String awsRequestId, Exception exception) throws Exception {
         URL outputUrl = new URL(runtimeApiRoot + INVOCATION + awsRequestId + ERROR);
-        System.out.println("POSTing invocation error for awsRequestId " + awsRequestId + " to " + outputUrl.toString() +
+        LOGGER.info("POSTing invocation error for awsRequestId " + awsRequestId + " to " + outputUrl +
                 " with message '" + exception.getMessage() + "'");
 
         String payload = errorJsonProvider.transform(exception);
-        HttpURLConnection httpURLConnection = setUpPost(outputUrl, payload, true);
+        HttpURLConnection httpURLConnection = setUpPost(outputUrl, utf8(payload), true);
 
         int status = httpURLConnection.getResponseCode();
         if (status > 299) {
             handleHttpProblem("POSTing invocation error for awsRequestId " + awsRequestId, status, httpURLConnection);
         }
 
-        System.out.println("Posted processing error for " + awsRequestId + ", receiving: " + status); // proper logging
+        LOGGER.info("Posted processing error for " + awsRequestId + ", receiving: " + status);
     }
 
     @Override
     public void returnInitializationError(Exception exception) throws Exception {
         URL outputUrl = new URL(runtimeApiRoot + INIT + ERROR);
-        System.out.println("POSTing initialization error to " + outputUrl.toString() +
+        LOGGER.error("POSTing initialization error to " + outputUrl +
                 " with message '" + exception.getMessage() + "'");
 
         String payload = errorJsonProvider.transform(exception);
 
-        HttpURLConnection httpURLConnection = setUpPost(outputUrl, payload, true);
+        HttpURLConnection httpURLConnection = setUpPost(outputUrl, utf8(payload), true);
         int status = httpURLConnection.getResponseCode();
 
         throwException("Runtime unable to continue.  POSTed initialization error, receiving status: " + status);
     }
 
-    private String contentFromHttpUrlConnection(HttpURLConnection connection,
-                                                Function<HttpURLConnection, InputStream> streamFetcher) throws IOException {
-        try (BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(streamFetcher.apply(connection)))) {
-            return bufferedReader.lines()
-                    .collect(Collectors.joining(System.lineSeparator()));
+    /**
+     * The connection is disconnected rather than handed back to HttpURLConnection's keep-alive cache,
+     * because a socket opened before the snapshot is no use after it.
+     */
+    @Override
+    public void restoreNext() throws Exception {
+        try {
+            URL restoreUrl = new URL(runtimeApiRoot + RESTORE + "/" + NEXT);
+            LOGGER.debug("Doing GET for restore at " + restoreUrl);
+
+            HttpURLConnection httpURLConnection = (HttpURLConnection) restoreUrl.openConnection();
+            httpURLConnection.setRequestMethod("GET");
+
+            int status = httpURLConnection.getResponseCode();
+            if (status > 299) {
+                handleHttpProblem("GET for restore", status, httpURLConnection);
+            }
+            httpURLConnection.disconnect();
+
+        } catch (IOException exception) {
+            throw new LambdaException("GET for restore resulted in " + exception.getClass().getSimpleName() +
+                    " with message " + exception.getMessage(), exception);
         }
     }
 
+    @Override
+    public void returnRestoreError(Exception exception) throws Exception {
+        URL outputUrl = new URL(runtimeApiRoot + RESTORE + ERROR);
+        LOGGER.error("POSTing restore error to " + outputUrl + " with message '" + exception.getMessage() + "'");
+
+        String payload = errorJsonProvider.transform(exception);
+
+        HttpURLConnection httpURLConnection = setUpPost(outputUrl, utf8(payload), true);
+        int status = httpURLConnection.getResponseCode();
+
+        throwException("Runtime unable to continue.  POSTed restore error, receiving status: " + status);
+    }
+
+    @Override
+    public void recycle(LambdaInputWithId lambdaInputWithId) {
+        bufferPool.release(lambdaInputWithId.takeRawBytes());
+    }
+
+    /**
+     * Reads the input body into a pooled buffer, sized from the Content-Length if there is one;
+     * the extra byte saves growing the buffer just to find the end of the stream.
+     */
+    private ByteBuffer readInput(HttpURLConnection connection) throws IOException {
+        byte[] body = bufferPool.acquire(Math.max(connection.getContentLength(), 0) + 1);
+        int count = 0;
+        try (InputStream inputStream = connection.getInputStream()) {
+            while (true) {
+                if (count == body.length) {
+                    byte[] bigger = bufferPool.acquire(body.length * 2);
+                    System.arraycopy(body, 0, bigger, 0, count);
+                    bufferPool.release(body);
+                    body = bigger;
+                }
+                int read = inputStream.read(body, count, body.length - count);
+                if (read < 0) {
+                    break;
+                }
+                count += read;
+            }
+        }
+        bufferPool.observe(count);
+        return ByteBuffer.wrap(body, 0, count);
+    }
+
+    private ByteBuffer contentFromHttpUrlConnection(HttpURLConnection connection,
+                                                    Function<HttpURLConnection, InputStream> streamFetcher) throws IOException {
+        ByteBufferOutputStream content = new ByteBufferOutputStream(Math.max(connection.getContentLength(), 0) + 1);
+        try (InputStream inputStream = streamFetcher.apply(connection)) {
+            if (inputStream != null) {
+                content.writeFrom(inputStream);
+            }
+        }
+        return content.toByteBuffer();
+    }
+
     private void handleHttpProblem(String action, int statusCode, HttpURLConnection httpURLConnection) throws LambdaException {
         String errorMessage = action + " resulted in status code " + statusCode;
         try {
-            String errorContent = contentFromHttpUrlConnection(httpURLConnection, HttpURLConnection::getErrorStream);
+            String errorContent = StandardCharsets.UTF_8.decode(
+                    contentFromHttpUrlConnection(httpURLConnection, HttpURLConnection::getErrorStream)).toString();
             errorMessage += " with message: '" + errorContent;
         } catch (IOException e) {
             errorMessage += ": unable to read message because of " + e.getClass().getSimpleName() + " with message '" +
                     e.getMessage();
         }
         errorMessage += "'. Exiting with exception";
-        throwException(errorMessage);
+        LOGGER.error(errorMessage);
+        throw new LambdaException(errorMessage, statusCode);
     }
 
     private void throwException(String errorMessage) throws LambdaException {
-        System.out.println(errorMessage); // todo proper logging?
+        LOGGER.error(errorMessage);
         throw new LambdaException(errorMessage);
     }
 
-    private HttpURLConnection setUpPost(URL url, String payloadString, boolean error) throws IOException {
-        byte[] payloadBytes = payloadString.getBytes(StandardCharsets.UTF_8);
+    private HttpURLConnection setUpPost(URL url, ByteBuffer payload, boolean error) throws IOException {
         HttpURLConnection httpURLConnection = (HttpURLConnection) url.openConnection();
         httpURLConnection.setRequestMethod("POST");
         httpURLConnection.setRequestProperty("Content-Type", "application/json; utf-8");
@@ -150,19 +258,19 @@ public class LambdaIOHandlerSimple implements LambdaIOHandler {
         httpURLConnection.setDoOutput(true);
 
         try (OutputStream outputStream = httpURLConnection.getOutputStream()) {
-            outputStream.write(payloadBytes, 0, payloadBytes.length);
+            if (payload.hasArray()) {
+                outputStream.write(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+            } else {
+                byte[] payloadBytes = new byte[payload.remaining()];
+                payload.duplicate().get(payloadBytes);
+                outputStream.write(payloadBytes);
+            }
         }
         return httpURLConnection;
     }
 
-    private Function<HttpURLConnection, InputStream> uncheckedInputStreamFetcher() {
-        return httpUrlConnection -> {
-            try {
-                return httpUrlConnection.getInputStream();
-            } catch (IOException e) {
-                throw new UncheckedIOException(e);
-            }
-        };
+    private static ByteBuffer utf8(String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
     }
 
 }
@@ -1,7 +1,14 @@
 package uk.co.littlestickyleaves.aws.lambda.base.api;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 /**
- * A POJO to link an AWS Request Id with its corresponding input String.
+ * A POJO to link an AWS Request Id with its corresponding input.
+ * The input may be held as a String or as the raw bytes from the Lambda API;
+ * either form is converted to the other (as UTF-8) only when it is asked for.
+ * It also carries the invocation's deadline, from the Lambda-Runtime-Deadline-Ms header, or 0 if there wasn't one,
+ * and its X-Ray trace header, from Lambda-Runtime-Trace-Id, or null.
  */
 public class LambdaInputWithId {
 
@@ -9,6 +16,12 @@ public class LambdaInputWithId {
 
     private String rawInput;
 
+    private ByteBuffer rawBytes;
+
+    private long deadlineEpochMillis;
+
+    private String traceId;
+
     public LambdaInputWithId() {
     }
 
@@ -17,12 +30,37 @@ public class LambdaInputWithId {
         this.rawInput = rawInput;
     }
 
+    public LambdaInputWithId(String awsRequestId, ByteBuffer rawBytes) {
+        this.awsRequestId = awsRequestId;
+        this.rawBytes = rawBytes;
+    }
+
+    public LambdaInputWithId(String awsRequestId, ByteBuffer rawBytes, long deadlineEpochMillis) {
+        this.awsRequestId = awsRequestId;
+        this.rawBytes = rawBytes;
+        this.deadlineEpochMillis = deadlineEpochMillis;
+    }
+
     public void setAwsRequestId(String awsRequestId) {
         this.awsRequestId = awsRequestId;
     }
 
     public void setRawInput(String rawInput) {
         this.rawInput = rawInput;
+        this.rawBytes = null;
+    }
+
+    public void setRawBytes(ByteBuffer rawBytes) {
+        this.rawBytes = rawBytes;
+        this.rawInput = null;
+    }
+
+    public void setDeadlineEpochMillis(long deadlineEpochMillis) {
+        this.deadlineEpochMillis = deadlineEpochMillis;
+    }
+
+    public void setTraceId(String traceId) {
+        this.traceId = traceId;
     }
 
     public String getAwsRequestId() {
@@ -30,7 +68,59 @@ public class LambdaInputWithId {
     }
 
     public String getRawInput() {
+        if (rawInput == null && rawBytes != null) {
+            rawInput = StandardCharsets.UTF_8.decode(rawBytes.duplicate()).toString();
+        }
         return rawInput;
     }
 
+    /**
+     * @return a read-only view of the input bytes, with its own position and limit
+     */
+    public ByteBuffer getRawBytes() {
+        if (rawBytes == null) {
+            rawBytes = ByteBuffer.wrap(rawInput == null ? new byte[0] : rawInput.getBytes(StandardCharsets.UTF_8));
+        }
+        return rawBytes.asReadOnlyBuffer();
+    }
+
+    /**
+     * @return when Lambda will stop the invocation, in milliseconds since the epoch, or 0 if not known
+     */
+    public long getDeadlineEpochMillis() {
+        return deadlineEpochMillis;
+    }
+
+    /**
+     * @return the X-Ray trace header for the invocation (Root=...;Parent=...;Sampled=...), or null if there wasn't one
+     */
+    public String getTraceId() {
+        return traceId;
+    }
+
+    /**
+     * Lets go of the input bytes, for recycling.
+     * @return the buffer the input bytes were held in, or null
+     */
+    ByteBuffer takeRawBytes() {
+        ByteBuffer taken = rawBytes;
+        rawBytes = null;
+        rawInput = null;
+        return taken;
+    }
+
+    /**
+     * @param deadlineMs the value of the Lambda-Runtime-Deadline-Ms header, possibly null
+     * @return the deadline, or 0 if there isn't a usable one
+     */
+    static long parseDeadline(String deadlineMs) {
+        if (deadlineMs != null) {
+            try {
+                return Long.parseLong(deadlineMs.trim());
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        return 0;
+    }
 }
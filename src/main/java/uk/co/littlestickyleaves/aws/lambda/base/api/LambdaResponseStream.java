@@ -0,0 +1,33 @@
+package uk.co.littlestickyleaves.aws.lambda.base.api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An OutputStream which carries a lambda's output to the Lambda API as it is written,
+ * as in Lambda's response streaming mode.
+ * Once the worker has finished writing, the runner calls complete(), or fail() if the worker threw.
+ * close() only flushes, so a worker (or a library it uses) closing the stream does not end the response early.
+ */
+public abstract class LambdaResponseStream extends OutputStream {
+
+    /**
+     * Finishes the response successfully, sending anything still buffered.
+     * @throws Exception if there's an error in communicating with the lambda API
+     */
+    public abstract void complete() throws Exception;
+
+    /**
+     * Finishes the response as a failure.
+     * If none of the response has been sent yet, the error is posted in the usual way;
+     * otherwise it is sent as a trailer on the streamed response.
+     * @param exception an exception holding information which should be sent to the Lambda API
+     * @throws Exception if there's an error in communicating with the lambda API
+     */
+    public abstract void fail(Exception exception) throws Exception;
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+}
@@ -0,0 +1,167 @@
+package uk.co.littlestickyleaves.aws.lambda.base.api;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A single persistent HTTP/1.1 connection to the runtime API, over a blocking NIO SocketChannel.
+ * Requests are handed over as ready-made byte buffers and written with one gathering write.
+ * If a kept-alive connection turns out to have been closed by the other end before any of the response arrived,
+ * it reconnects and sends the request once more.
+ */
+final class RuntimeApiConnection implements Closeable {
+
+    private final String host;
+    private final int port;
+    private final HttpResponseReader responseReader;
+
+    private SocketChannel channel;
+
+    private boolean resent;
+
+    RuntimeApiConnection(String runtimeApiEndpoint, HttpResponseReader responseReader) {
+        int colon = runtimeApiEndpoint.lastIndexOf(':');
+        this.host = colon < 0 ? runtimeApiEndpoint : runtimeApiEndpoint.substring(0, colon);
+        this.port = colon < 0 ? 80 : Integer.parseInt(runtimeApiEndpoint.substring(colon + 1));
+        this.responseReader = responseReader;
+    }
+
+    /**
+     * Opens the connection now rather than on first use.
+     * @throws IOException if the runtime API cannot be reached
+     */
+    void open() throws IOException {
+        if (!isOpen()) {
+            SocketChannel socketChannel = SocketChannel.open();
+            try {
+                socketChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                socketChannel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+                socketChannel.connect(new InetSocketAddress(host, port));
+            } catch (IOException e) {
+                socketChannel.close();
+                throw e;
+            }
+            responseReader.reset();
+            channel = socketChannel;
+        }
+    }
+
+    boolean isOpen() {
+        return channel != null && channel.isOpen();
+    }
+
+    /**
+     * Sends a request and reads its response.
+     * @param request the request bytes, from each buffer's position to its limit
+     * @return the response
+     * @throws IOException if the request cannot be sent or the response cannot be read
+     */
+    HttpResponse exchange(ByteBuffer... request) throws IOException {
+        resent = false;
+        boolean reused = isOpen();
+        open();
+        int[] positions = new int[request.length];
+        for (int i = 0; i < request.length; i++) {
+            positions[i] = request[i].position();
+        }
+        try {
+            return send(request);
+        } catch (IOException e) {
+            boolean retry = reused && !responseReader.responseStarted();
+            close();
+            if (!retry) {
+                throw e;
+            }
+        }
+        for (int i = 0; i < request.length; i++) {
+            request[i].position(positions[i]);
+        }
+        resent = true;
+        open();
+        try {
+            return send(request);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return true if the last exchange() sent its request a second time, so the first may have arrived too
+     */
+    boolean wasResent() {
+        return resent;
+    }
+
+    /**
+     * Writes part of a request, for requests whose body is sent a piece at a time.
+     * There is no retry: if the write fails the connection is closed and the exception thrown.
+     * @param parts the bytes to write, from each buffer's position to its limit
+     * @throws IOException if the bytes cannot be written
+     */
+    void write(ByteBuffer... parts) throws IOException {
+        open();
+        try {
+            writeFully(parts);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the response to a request sent with write().
+     * @return the response
+     * @throws IOException if the response cannot be read
+     */
+    HttpResponse readResponse() throws IOException {
+        if (channel == null) {
+            throw new IOException("No open connection to the runtime API to read a response from");
+        }
+        try {
+            return readResponseFromChannel();
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private HttpResponse send(ByteBuffer[] request) throws IOException {
+        writeFully(request);
+        return readResponseFromChannel();
+    }
+
+    private void writeFully(ByteBuffer[] parts) throws IOException {
+        long remaining = 0;
+        for (ByteBuffer buffer : parts) {
+            remaining += buffer.remaining();
+        }
+        while (remaining > 0) {
+            remaining -= channel.write(parts);
+        }
+    }
+
+    private HttpResponse readResponseFromChannel() throws IOException {
+        HttpResponse response = responseReader.read(channel);
+        if (!response.isKeepAlive()) {
+            close();
+        }
+        return response;
+    }
+
+    @Override
+    public void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // nothing useful can be done, and the channel is unusable either way
+            }
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package uk.co.littlestickyleaves.aws.lambda.base.batch;
+
+/**
+ * Interface for a worker which handles the records of an SQS, Kinesis or DynamoDB stream batch one at a time.
+ * It is driven by a BatchLambdaWorkerAdapter, which may call it from several threads at once,
+ * though never for two records with the same ordering key.
+ * A record it throws an exception for is reported as a batch item failure, so only that record is retried.
+ */
+@FunctionalInterface
+public interface BatchLambdaWorker {
+    void handleRecord(BatchRecord record) throws Exception;
+}
@@ -0,0 +1,157 @@
+package uk.co.littlestickyleaves.aws.lambda.base.batch;
+
+import com.fasterxml.jackson.jr.ob.JSON;
+import uk.co.littlestickyleaves.aws.lambda.base.LambdaWorker;
+import uk.co.littlestickyleaves.aws.lambda.base.error.LambdaException;
+import uk.co.littlestickyleaves.aws.lambda.base.log.LambdaLogger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets a BatchLambdaWorker be driven as a LambdaWorker, for functions fed by SQS, Kinesis or DynamoDB streams.
+ * The batch event is split into its records, which are handed to the worker in parallel on a fixed pool of threads.
+ * Records sharing an ordering key (FIFO message group, partition key, item keys) are handled one after another,
+ * in the order they came in; once one of them fails the rest are not attempted, but reported as failed too,
+ * so they are retried in order.
+ * The output is a batchItemFailures response listing only the failed records, which Lambda then retries,
+ * as long as the event source mapping has ReportBatchItemFailures turned on.
+ * An event which can't be split into records fails the invocation, so the whole batch is retried.
+ */
+public class BatchLambdaWorkerAdapter implements LambdaWorker {
+
+    private static final LambdaLogger LOGGER = LambdaLogger.getLogger(BatchLambdaWorkerAdapter.class);
+
+    private static final AtomicLong POOL_COUNT = new AtomicLong();
+
+    private final BatchLambdaWorker batchLambdaWorker;
+
+    private final ExecutorService executorService;
+
+    public BatchLambdaWorkerAdapter(BatchLambdaWorker batchLambdaWorker) {
+        this(batchLambdaWorker, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param batchLambdaWorker the worker to hand each record to
+     * @param parallelism how many records may be handled at once
+     */
+    public BatchLambdaWorkerAdapter(BatchLambdaWorker batchLambdaWorker, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1, not " + parallelism);
+        }
+        this.batchLambdaWorker = batchLambdaWorker;
+        String poolName = "batch-" + POOL_COUNT.incrementAndGet() + "-";
+        AtomicLong threadCount = new AtomicLong();
+        this.executorService = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, poolName + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public String handleRaw(String rawInput) throws Exception {
+        List<BatchRecord> batch = split(rawInput);
+        boolean[] failed = new boolean[batch.size()];
+
+        List<List<Integer>> groups = group(batch);
+        if (groups.size() == 1) {
+            handleGroup(batch, groups.get(0), failed);
+        } else {
+            List<Future<?>> futures = new ArrayList<>(groups.size());
+            for (List<Integer> group : groups) {
+                futures.add(executorService.submit(() -> handleGroup(batch, group, failed)));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    throw new LambdaException("Handling batch records resulted in " +
+                            e.getCause().getClass().getSimpleName() + " with message " + e.getCause().getMessage(),
+                            e.getCause());
+                }
+            }
+        }
+
+        List<Map<String, String>> batchItemFailures = new ArrayList<>();
+        for (int i = 0; i < failed.length; i++) {
+            if (failed[i]) {
+                batchItemFailures.add(Collections.singletonMap("itemIdentifier", batch.get(i).getItemIdentifier()));
+            }
+        }
+        return JSON.std.asString(Collections.singletonMap("batchItemFailures", batchItemFailures));
+    }
+
+    public BatchLambdaWorker getBatchLambdaWorker() {
+        return batchLambdaWorker;
+    }
+
+    private void handleGroup(List<BatchRecord> batch, List<Integer> group, boolean[] failed) {
+        boolean skipping = false;
+        for (int index : group) {
+            BatchRecord record = batch.get(index);
+            if (skipping) {
+                failed[index] = true;
+                continue;
+            }
+            try {
+                batchLambdaWorker.handleRecord(record);
+            } catch (Exception e) {
+                LOGGER.warn("Record " + record.getItemIdentifier() + " failed with " +
+                        e.getClass().getSimpleName() + ": " + e.getMessage());
+                failed[index] = true;
+                skipping = record.getOrderingKey() != null;
+            }
+        }
+    }
+
+    private static List<BatchRecord> split(String rawInput) throws Exception {
+        Object records = JSON.std.mapFrom(rawInput).get("Records");
+        if (!(records instanceof List)) {
+            throw new LambdaException("Batch event has no Records list");
+        }
+        List<?> recordList = (List<?>) records;
+        List<BatchRecord> batch = new ArrayList<>(recordList.size());
+        for (Object entry : recordList) {
+            @SuppressWarnings("unchecked")
+            BatchRecord record = entry instanceof Map ? BatchRecord.of((Map<String, Object>) entry) : null;
+            if (record == null || record.getItemIdentifier() == null) {
+                throw new LambdaException("Record " + batch.size() +
+                        " of the batch is not an SQS, Kinesis or DynamoDB stream record");
+            }
+            batch.add(record);
+        }
+        return batch;
+    }
+
+    /**
+     * @return the indexes of the records, grouped by ordering key in order of first appearance;
+     * records with no ordering key are each in a group of their own
+     */
+    private static List<List<Integer>> group(List<BatchRecord> batch) {
+        List<List<Integer>> groups = new ArrayList<>();
+        Map<String, List<Integer>> keyedGroups = new LinkedHashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            String orderingKey = batch.get(i).getOrderingKey();
+            List<Integer> group = orderingKey == null ? null : keyedGroups.get(orderingKey);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.add(group);
+                if (orderingKey != null) {
+                    keyedGroups.put(orderingKey, group);
+                }
+            }
+            group.add(i);
+        }
+        return groups;
+    }
+}
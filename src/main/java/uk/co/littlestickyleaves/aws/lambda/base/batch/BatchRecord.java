@@ -0,0 +1,96 @@
+package uk.co.littlestickyleaves.aws.lambda.base.batch;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+
+/**
+ * One record of a batch event, with the parts a BatchLambdaWorker usually needs picked out:
+ * -- the item identifier which batchItemFailures reports it by
+ *    (SQS messageId, or the Kinesis/DynamoDB sequence number)
+ * -- the ordering key, which records must be handled in order within
+ *    (SQS FIFO message group, Kinesis partition key, DynamoDB item keys), or null for standard SQS
+ * -- the payload: the SQS body or the decoded Kinesis data; null for DynamoDB, whose images are in getRecord()
+ */
+public class BatchRecord {
+
+    private static final String SQS = "aws:sqs";
+    private static final String KINESIS = "aws:kinesis";
+    private static final String DYNAMODB = "aws:dynamodb";
+
+    private final Map<String, Object> record;
+    private final String eventSource;
+    private final String itemIdentifier;
+    private final String orderingKey;
+
+    private BatchRecord(Map<String, Object> record, String eventSource, String itemIdentifier, String orderingKey) {
+        this.record = record;
+        this.eventSource = eventSource;
+        this.itemIdentifier = itemIdentifier;
+        this.orderingKey = orderingKey;
+    }
+
+    /**
+     * @param record one entry of the event's Records list
+     * @return the BatchRecord, or null if the record is not from a source this understands
+     */
+    static BatchRecord of(Map<String, Object> record) {
+        String eventSource = string(record.get("eventSource"));
+        if (eventSource == null) {
+            // SQS spells it differently
+            eventSource = string(record.get("EventSource"));
+        }
+        if (SQS.equals(eventSource)) {
+            Map<String, Object> attributes = map(record.get("attributes"));
+            return new BatchRecord(record, eventSource, string(record.get("messageId")),
+                    attributes == null ? null : string(attributes.get("MessageGroupId")));
+        } else if (KINESIS.equals(eventSource)) {
+            Map<String, Object> kinesis = map(record.get("kinesis"));
+            return kinesis == null ? null : new BatchRecord(record, eventSource,
+                    string(kinesis.get("sequenceNumber")), string(kinesis.get("partitionKey")));
+        } else if (DYNAMODB.equals(eventSource)) {
+            Map<String, Object> dynamodb = map(record.get("dynamodb"));
+            return dynamodb == null ? null : new BatchRecord(record, eventSource,
+                    string(dynamodb.get("SequenceNumber")), String.valueOf(dynamodb.get("Keys")));
+        }
+        return null;
+    }
+
+    /**
+     * @return the record as parsed from the event
+     */
+    public Map<String, Object> getRecord() {
+        return record;
+    }
+
+    public String getEventSource() {
+        return eventSource;
+    }
+
+    public String getItemIdentifier() {
+        return itemIdentifier;
+    }
+
+    public String getOrderingKey() {
+        return orderingKey;
+    }
+
+    public String getPayload() {
+        if (SQS.equals(eventSource)) {
+            return string(record.get("body"));
+        } else if (KINESIS.equals(eventSource)) {
+            String data = string(map(record.get("kinesis")).get("data"));
+            return data == null ? null : new String(Base64.getDecoder().decode(data), StandardCharsets.UTF_8);
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> map(Object value) {
+        return value instanceof Map ? (Map<String, Object>) value : null;
+    }
+
+    private static String string(Object value) {
+        return value == null ? null : value.toString();
+    }
+}
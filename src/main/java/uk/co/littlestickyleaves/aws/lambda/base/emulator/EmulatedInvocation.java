@@ -0,0 +1,112 @@
+package uk.co.littlestickyleaves.aws.lambda.base.emulator;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * One invocation queued on a RuntimeApiEmulator, with its timings and, once finished, its outcome and result.
+ * Times are System.nanoTime() values.
+ */
+public class EmulatedInvocation {
+
+    private final String awsRequestId;
+    private final byte[] payload;
+    private final long timeoutMillis;
+    private final long enqueuedNanos;
+    private final CompletableFuture<EmulatedInvocation> completion = new CompletableFuture<>();
+
+    private volatile long dispatchedNanos;
+    private volatile long deadlineEpochMillis;
+    private volatile long completedNanos;
+    private volatile InvocationOutcome outcome;
+    private volatile byte[] result;
+
+    EmulatedInvocation(String awsRequestId, byte[] payload, long timeoutMillis) {
+        this.awsRequestId = awsRequestId;
+        this.payload = payload;
+        this.timeoutMillis = timeoutMillis;
+        this.enqueuedNanos = System.nanoTime();
+    }
+
+    void dispatched() {
+        dispatchedNanos = System.nanoTime();
+        deadlineEpochMillis = System.currentTimeMillis() + timeoutMillis;
+    }
+
+    /**
+     * @return true if this call finished the invocation, false if it had already finished
+     */
+    synchronized boolean finish(InvocationOutcome invocationOutcome, byte[] resultBytes) {
+        if (outcome != null) {
+            return false;
+        }
+        completedNanos = System.nanoTime();
+        result = resultBytes;
+        outcome = invocationOutcome;
+        completion.complete(this);
+        return true;
+    }
+
+    public String getAwsRequestId() {
+        return awsRequestId;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public long getDeadlineEpochMillis() {
+        return deadlineEpochMillis;
+    }
+
+    /**
+     * @return a future completed with this invocation when it finishes, however it finishes
+     */
+    public CompletableFuture<EmulatedInvocation> getCompletion() {
+        return completion;
+    }
+
+    public InvocationOutcome getOutcome() {
+        return outcome;
+    }
+
+    public byte[] getResult() {
+        return result;
+    }
+
+    public String getResultAsString() {
+        return result == null ? null : new String(result, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the System.nanoTime() at which the runtime's GET for input received this invocation
+     */
+    public long getDispatchedNanos() {
+        return dispatchedNanos;
+    }
+
+    /**
+     * @return the System.nanoTime() at which this invocation finished
+     */
+    public long getCompletedNanos() {
+        return completedNanos;
+    }
+
+    /**
+     * @return nanoseconds from being queued to finishing
+     */
+    public long getEndToEndNanos() {
+        return completedNanos - enqueuedNanos;
+    }
+
+    /**
+     * @return nanoseconds from being handed to the runtime to finishing
+     */
+    public long getServiceNanos() {
+        return completedNanos - dispatchedNanos;
+    }
+}
@@ -0,0 +1,90 @@
+package uk.co.littlestickyleaves.aws.lambda.base.emulator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays recorded events into a RuntimeApiEmulator at a steady rate and reports on how the runtime coped.
+ * Events are read one per line, the format RuntimeApiEmulator.recordTo writes; blank lines are skipped.
+ * Arrivals are scheduled against a fixed timeline rather than after each other,
+ * so a slow runtime builds up a queue instead of quietly lowering the offered load.
+ */
+public class EventReplayer {
+
+    private final RuntimeApiEmulator emulator;
+    private final List<String> events;
+
+    public EventReplayer(RuntimeApiEmulator emulator, List<String> events) {
+        if (events.isEmpty()) {
+            throw new IllegalArgumentException("No events to replay");
+        }
+        this.emulator = emulator;
+        this.events = Collections.unmodifiableList(new ArrayList<>(events));
+    }
+
+    public static EventReplayer fromFile(RuntimeApiEmulator emulator, Path recording) throws IOException {
+        try (Reader reader = Files.newBufferedReader(recording, StandardCharsets.UTF_8)) {
+            return fromReader(emulator, reader);
+        }
+    }
+
+    public static EventReplayer fromReader(RuntimeApiEmulator emulator, Reader recording) throws IOException {
+        List<String> events = new ArrayList<>();
+        BufferedReader lines = new BufferedReader(recording);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            if (!line.trim().isEmpty()) {
+                events.add(line);
+            }
+        }
+        return new EventReplayer(emulator, events);
+    }
+
+    /**
+     * Submits invocationCount events, cycling through the recording, then waits for them all to finish.
+     * @param invocationCount how many invocations to make
+     * @param perSecond the arrival rate; 0 or less submits them all at once
+     * @param maxWaitMillis how long to wait for the last invocations after the final one is submitted
+     * @return the report on the invocations
+     * @throws TimeoutException if some invocations had still not finished, not even by timing out, after maxWaitMillis
+     */
+    public LoadReport replay(int invocationCount, double perSecond, long maxWaitMillis)
+            throws InterruptedException, TimeoutException {
+        List<EmulatedInvocation> invocations = new ArrayList<>(invocationCount);
+        long intervalNanos = perSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / perSecond) : 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < invocationCount; i++) {
+            long due = start + i * intervalNanos;
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+            invocations.add(emulator.submit(events.get(i % events.size())));
+        }
+
+        long waitUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        for (EmulatedInvocation invocation : invocations) {
+            long remaining = waitUntil - System.nanoTime();
+            try {
+                invocation.getCompletion().get(Math.max(remaining, 0), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Emulated invocations always complete normally", e);
+            }
+        }
+        return LoadReport.of(invocations, System.nanoTime() - start);
+    }
+}
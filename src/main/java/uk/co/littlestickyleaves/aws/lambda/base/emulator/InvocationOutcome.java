@@ -0,0 +1,13 @@
+package uk.co.littlestickyleaves.aws.lambda.base.emulator;
+
+/**
+ * How an emulated invocation ended.
+ */
+public enum InvocationOutcome {
+    /** The runtime posted a response in time. */
+    SUCCESS,
+    /** The runtime posted an invocation error in time. */
+    ERROR,
+    /** Nothing was posted before the deadline. */
+    TIMED_OUT
+}
@@ -0,0 +1,91 @@
+package uk.co.littlestickyleaves.aws.lambda.base.emulator;
+
+import uk.co.littlestickyleaves.aws.lambda.base.metrics.PhaseHistogram;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency figures for a batch of emulated invocations.
+ * Latencies are held in the same fixed-bucket histograms InvocationMetrics uses, in microseconds.
+ */
+public class LoadReport {
+
+    private final long invocationCount;
+    private final long elapsedNanos;
+    private final Map<InvocationOutcome, Long> outcomeCounts;
+    private final PhaseHistogram.Snapshot endToEnd;
+    private final PhaseHistogram.Snapshot service;
+
+    private LoadReport(long invocationCount, long elapsedNanos, Map<InvocationOutcome, Long> outcomeCounts,
+                       PhaseHistogram.Snapshot endToEnd, PhaseHistogram.Snapshot service) {
+        this.invocationCount = invocationCount;
+        this.elapsedNanos = elapsedNanos;
+        this.outcomeCounts = outcomeCounts;
+        this.endToEnd = endToEnd;
+        this.service = service;
+    }
+
+    /**
+     * @param invocations finished invocations
+     * @param elapsedNanos how long the batch took overall
+     */
+    public static LoadReport of(Iterable<EmulatedInvocation> invocations, long elapsedNanos) {
+        PhaseHistogram endToEnd = new PhaseHistogram();
+        PhaseHistogram service = new PhaseHistogram();
+        Map<InvocationOutcome, Long> outcomeCounts = new EnumMap<>(InvocationOutcome.class);
+        for (InvocationOutcome outcome : InvocationOutcome.values()) {
+            outcomeCounts.put(outcome, 0L);
+        }
+        long count = 0;
+        for (EmulatedInvocation invocation : invocations) {
+            count++;
+            outcomeCounts.merge(invocation.getOutcome(), 1L, Long::sum);
+            endToEnd.recordNanos(invocation.getEndToEndNanos());
+            service.recordNanos(invocation.getServiceNanos());
+        }
+        return new LoadReport(count, elapsedNanos, outcomeCounts, endToEnd.snapshotAndReset(),
+                service.snapshotAndReset());
+    }
+
+    public long getInvocationCount() {
+        return invocationCount;
+    }
+
+    public long getCount(InvocationOutcome outcome) {
+        return outcomeCounts.get(outcome);
+    }
+
+    public double getThroughputPerSecond() {
+        return elapsedNanos == 0 ? 0 : invocationCount * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    /**
+     * @return microseconds from being queued to finishing, including time waiting for the runtime to ask for work
+     */
+    public PhaseHistogram.Snapshot getEndToEndLatency() {
+        return endToEnd;
+    }
+
+    /**
+     * @return microseconds from being handed to the runtime to finishing
+     */
+    public PhaseHistogram.Snapshot getServiceLatency() {
+        return service;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d invocations in %.3fs (%.1f/s): %s%n" +
+                        "  end-to-end us: %s%n" +
+                        "  service us:    %s",
+                invocationCount, elapsedNanos / 1e9, getThroughputPerSecond(), outcomeCounts,
+                describe(endToEnd), describe(service));
+    }
+
+    private static String describe(PhaseHistogram.Snapshot snapshot) {
+        return String.format("p50=%.0f p90=%.0f p99=%.0f max=%d",
+                snapshot.getPercentile(50), snapshot.getPercentile(90), snapshot.getPercentile(99), snapshot.getMax());
+    }
+}
@@ -0,0 +1,273 @@
+package uk.co.littlestickyleaves.aws.lambda.base.emulator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import uk.co.littlestickyleaves.aws.lambda.base.api.ByteBufferOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process emulator of the Lambda runtime API (the /2018-06-01/runtime endpoints) on a loopback port,
+ * for driving LambdaRunner.loop() under sustained load without AWS.
+ * Invocations are queued with submit() and handed out to GET next requests in order.
+ * Each has a deadline from when it is handed out; if nothing is posted for it by then it is marked as timed out
+ * (a late post is still accepted with a 202, so the runtime carries on, but doesn't change the outcome).
+ * A GET restore/next is answered straight away, as if the snapshot had been taken and restored at once,
+ * so a runner doing checkpoint/restore can be run through the whole cycle.
+ * Submitted events can also be recorded to a Writer, one per line, for EventReplayer to replay later.
+ * A post which repeats one already accepted is refused with a 400, as Lambda does, and loseAcknowledgements() has
+ * posts accepted but their answers lost, to see how a runtime copes.
+ * Uses only the JDK's built-in HTTP server.
+ */
+public class RuntimeApiEmulator implements AutoCloseable {
+
+    private static final String RUNTIME = "/2018-06-01/runtime/";
+    private static final String INVOCATION = RUNTIME + "invocation/";
+    private static final String INIT_ERROR = RUNTIME + "init/error";
+    private static final String RESTORE_NEXT = RUNTIME + "restore/next";
+    private static final String RESTORE_ERROR = RUNTIME + "restore/error";
+    private static final String FUNCTION_ARN = "arn:aws:lambda:eu-west-2:000000000000:function:emulated";
+
+    private final HttpServer httpServer;
+    private final ExecutorService serverExecutor = Executors.newCachedThreadPool(daemonThreads("emulator-http"));
+    private final ScheduledExecutorService deadlineScheduler =
+            Executors.newSingleThreadScheduledExecutor(daemonThreads("emulator-deadlines"));
+    private final BlockingQueue<EmulatedInvocation> queue = new LinkedBlockingQueue<>();
+    private final Map<String, EmulatedInvocation> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, ScheduledFuture<?>> deadlines = new ConcurrentHashMap<>();
+    private final Set<String> timedOut = ConcurrentHashMap.newKeySet();
+    private final AtomicLong initErrors = new AtomicLong();
+    private final AtomicLong restores = new AtomicLong();
+    private final AtomicLong restoreErrors = new AtomicLong();
+    private final AtomicInteger acknowledgementsToLose = new AtomicInteger();
+    private final long timeoutMillis;
+
+    private volatile Writer recorder;
+
+    private boolean closed;
+
+    /**
+     * @param timeoutMillis the function timeout to apply to each invocation
+     * @throws IOException if the emulator's port cannot be opened
+     */
+    public RuntimeApiEmulator(long timeoutMillis) throws IOException {
+        // the JDK server writes headers and body separately, which meets delayed ACKs unless Nagle is off
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        this.timeoutMillis = timeoutMillis;
+        this.httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.httpServer.createContext(RUNTIME, this::handle);
+        this.httpServer.setExecutor(serverExecutor);
+        this.httpServer.start();
+    }
+
+    /**
+     * @return the host:port to use as AWS_LAMBDA_RUNTIME_API
+     */
+    public String getEndpoint() {
+        return "127.0.0.1:" + httpServer.getAddress().getPort();
+    }
+
+    /**
+     * Queues an invocation.
+     * @param payload the event
+     * @return the queued invocation, whose completion can be waited for
+     */
+    public EmulatedInvocation submit(byte[] payload) {
+        EmulatedInvocation invocation = new EmulatedInvocation(UUID.randomUUID().toString(), payload, timeoutMillis);
+        record(payload);
+        queue.add(invocation);
+        return invocation;
+    }
+
+    public EmulatedInvocation submit(String payload) {
+        return submit(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param writer where to record each submitted event, one per line; null to stop recording
+     */
+    public void recordTo(Writer writer) {
+        this.recorder = writer;
+    }
+
+    /**
+     * @param count how many of the next posted responses or errors to accept, then close the connection on
+     *              instead of answering, as if the answer had been lost on the way
+     */
+    public void loseAcknowledgements(int count) {
+        acknowledgementsToLose.set(count);
+    }
+
+    public long getInitErrorCount() {
+        return initErrors.get();
+    }
+
+    /**
+     * @return how many times a runtime has asked for the snapshot to be taken, and been "restored"
+     */
+    public long getRestoreCount() {
+        return restores.get();
+    }
+
+    public long getRestoreErrorCount() {
+        return restoreErrors.get();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        httpServer.stop(0);
+        serverExecutor.shutdownNow();
+        deadlineScheduler.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            byte[] body = readBody(exchange);
+            if ("GET".equals(exchange.getRequestMethod()) && path.equals(INVOCATION + "next")) {
+                next(exchange);
+            } else if ("GET".equals(exchange.getRequestMethod()) && path.equals(RESTORE_NEXT)) {
+                restores.incrementAndGet();
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+            } else if ("POST".equals(exchange.getRequestMethod()) && path.equals(INIT_ERROR)) {
+                initErrors.incrementAndGet();
+                respond(exchange, 202, "{\"status\":\"OK\"}");
+            } else if ("POST".equals(exchange.getRequestMethod()) && path.equals(RESTORE_ERROR)) {
+                restoreErrors.incrementAndGet();
+                respond(exchange, 202, "{\"status\":\"OK\"}");
+            } else if ("POST".equals(exchange.getRequestMethod()) && path.startsWith(INVOCATION)) {
+                String rest = path.substring(INVOCATION.length());
+                int slash = rest.indexOf('/');
+                String awsRequestId = slash < 0 ? rest : rest.substring(0, slash);
+                String action = slash < 0 ? "" : rest.substring(slash + 1);
+                if (!(action.equals("response") || action.equals("error"))) {
+                    respond(exchange, 400, "{\"errorMessage\":\"Unknown action\"}");
+                    return;
+                }
+                EmulatedInvocation invocation = inFlight.remove(awsRequestId);
+                if (invocation != null) {
+                    ScheduledFuture<?> deadline = deadlines.remove(awsRequestId);
+                    if (deadline != null) {
+                        deadline.cancel(false);
+                    }
+                    invocation.finish(action.equals("response") ? InvocationOutcome.SUCCESS : InvocationOutcome.ERROR,
+                            body);
+                } else if (!timedOut.remove(awsRequestId)) {
+                    respond(exchange, 400, "{\"errorMessage\":\"Unknown invocation\"}");
+                    return;
+                }
+                if (acknowledgementsToLose.getAndUpdate(count -> Math.max(count - 1, 0)) > 0) {
+                    // closing without a response closes the connection
+                    exchange.close();
+                    return;
+                }
+                respond(exchange, 202, "{\"status\":\"OK\"}");
+            } else {
+                respond(exchange, 404, "{\"errorMessage\":\"Not found\"}");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.close();
+        }
+    }
+
+    private void next(HttpExchange exchange) throws InterruptedException, IOException {
+        EmulatedInvocation invocation = queue.take();
+        invocation.dispatched();
+        String awsRequestId = invocation.getAwsRequestId();
+        inFlight.put(awsRequestId, invocation);
+        deadlines.put(awsRequestId, deadlineScheduler.schedule(() -> {
+            deadlines.remove(awsRequestId);
+            // marked before it leaves inFlight, so a post racing the deadline always finds it in one or the other
+            timedOut.add(awsRequestId);
+            if (inFlight.remove(awsRequestId) != null) {
+                invocation.finish(InvocationOutcome.TIMED_OUT, null);
+            } else {
+                timedOut.remove(awsRequestId);
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS));
+
+        exchange.getResponseHeaders().add("Lambda-Runtime-Aws-Request-Id", invocation.getAwsRequestId());
+        exchange.getResponseHeaders().add("Lambda-Runtime-Deadline-Ms",
+                Long.toString(invocation.getDeadlineEpochMillis()));
+        exchange.getResponseHeaders().add("Lambda-Runtime-Invoked-Function-Arn", FUNCTION_ARN);
+        exchange.getResponseHeaders().add("Lambda-Runtime-Trace-Id",
+                "Root=1-" + Long.toHexString(System.currentTimeMillis() / 1000) + "-" +
+                        invocation.getAwsRequestId().replace("-", "").substring(0, 24) + ";Sampled=0");
+        byte[] payload = invocation.getPayload();
+        exchange.sendResponseHeaders(200, payload.length == 0 ? -1 : payload.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(payload);
+        }
+    }
+
+    private void record(byte[] payload) {
+        Writer writer = recorder;
+        if (writer != null) {
+            // raw line breaks can only be whitespace between json tokens, so flattening them keeps the event intact
+            String line = new String(payload, StandardCharsets.UTF_8).replace('\r', ' ').replace('\n', ' ');
+            synchronized (this) {
+                try {
+                    writer.write(line);
+                    writer.write('\n');
+                    writer.flush();
+                } catch (IOException e) {
+                    throw new IllegalStateException("Unable to record event", e);
+                }
+            }
+        }
+    }
+
+    private static byte[] readBody(HttpExchange exchange) throws IOException {
+        try (InputStream requestBody = exchange.getRequestBody()) {
+            ByteBufferOutputStream content = new ByteBufferOutputStream();
+            content.writeFrom(requestBody);
+            ByteBuffer bytes = content.toByteBuffer();
+            return Arrays.copyOf(bytes.array(), bytes.remaining());
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(bytes);
+        }
+    }
+
+    static ThreadFactory daemonThreads(String name) {
+        AtomicLong count = new AtomicLong();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -1,34 +1,174 @@
 package uk.co.littlestickyleaves.aws.lambda.base.error;
 
-import com.fasterxml.jackson.jr.ob.JSON;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import uk.co.littlestickyleaves.aws.lambda.base.metrics.InvocationMetrics;
+import uk.co.littlestickyleaves.aws.lambda.base.metrics.Phase;
 
 import java.io.IOException;
-import java.util.Arrays;
+import java.io.UncheckedIOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
 
 /**
- * Class which can turn an Exception into the sort of json String required by the AWS Lambda API.
- * Uses the ErrorJsonShape POJO
+ * Class which can turn an Exception into the sort of json String required by the AWS Lambda API:
+ * errorType, errorMessage, stackTrace and, for an exception with a cause, the cause in the same shape.
+ * The json is written straight into a StringBuilder rather than via a bean and jackson-jr,
+ * and it is bounded: at most maxFrames frames per exception (then a "... n more" line, as printStackTrace does)
+ * and at most maxCauses causes.
+ * Each frame is escaped once and cached, as is the errorType prefix of the json for each exception class,
+ * with the common runtime failures cached up front; only the messages are escaped afresh for each failure.
  */
 public class ErrorJsonProvider {
 
+    public static final int DEFAULT_MAX_FRAMES = 50;
+    public static final int DEFAULT_MAX_CAUSES = 5;
+
     private static final String DEFAULT_JSON = "{\"errorType\":\"JsonSerializationError\", " +
             "\"errorMessage\":\"Failure in serializing exception to Json\"}";
 
-    public String transform(Exception exception) {
-        List<String> stackTraceAsStrings = Arrays.stream(exception.getStackTrace())
-                .map(Object::toString)
-                .collect(Collectors.toList());
+    // the caches stop growing at these sizes, so a flood of distinct frames can't use up the heap
+    private static final int MAX_CACHED_FRAMES = 4096;
+    private static final int MAX_CACHED_TYPES = 512;
+
+    private static final Map<StackTraceElement, String> FRAMES = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, String> TYPE_PREFIXES = new ConcurrentHashMap<>();
 
-        ErrorJsonShape errorJsonShape = new ErrorJsonShape(exception.getClass().getName(),
-                exception.getMessage(), stackTraceAsStrings);
+    // an encoder keeps its working buffers, so each thread has its own
+    private static final ThreadLocal<JsonStringEncoder> ENCODER = ThreadLocal.withInitial(JsonStringEncoder::new);
+
+    static {
+        Class<?>[] common = {LambdaException.class, RuntimeException.class, Exception.class,
+                NullPointerException.class, IllegalArgumentException.class, IllegalStateException.class,
+                UnsupportedOperationException.class, IndexOutOfBoundsException.class,
+                ArrayIndexOutOfBoundsException.class, ClassCastException.class, ArithmeticException.class,
+                NumberFormatException.class, NoSuchElementException.class, ConcurrentModificationException.class,
+                IOException.class, UncheckedIOException.class, SocketTimeoutException.class, TimeoutException.class,
+                InterruptedException.class};
+        for (Class<?> type : common) {
+            typePrefix(type);
+        }
+    }
+
+    private final int maxFrames;
+    private final int maxCauses;
+
+    public ErrorJsonProvider() {
+        this(DEFAULT_MAX_FRAMES, DEFAULT_MAX_CAUSES);
+    }
 
+    /**
+     * @param maxFrames the most stack frames to include for each exception
+     * @param maxCauses the most causes to include below the top-level exception
+     */
+    public ErrorJsonProvider(int maxFrames, int maxCauses) {
+        if (maxFrames < 0 || maxCauses < 0) {
+            throw new IllegalArgumentException("Max frames and causes can't be negative, not " + maxFrames +
+                    " and " + maxCauses);
+        }
+        this.maxFrames = maxFrames;
+        this.maxCauses = maxCauses;
+    }
+
+    public String transform(Exception exception) {
+        long startNanos = InvocationMetrics.startActive();
         try {
-            return JSON.std.asString(errorJsonShape);
-        } catch (IOException e) {
+            return toJson(exception);
+        } catch (RuntimeException e) {
             return DEFAULT_JSON;
+        } finally {
+            InvocationMetrics.recordActive(Phase.ERROR_SERIALIZATION, startNanos);
+        }
+    }
+
+    private String toJson(Exception exception) {
+        StringBuilder json = new StringBuilder(512);
+        List<Throwable> written = new ArrayList<>();
+        Throwable current = exception;
+        int depth = 0;
+        while (true) {
+            appendThrowable(json, current);
+            written.add(current);
+            current = current.getCause();
+            if (current == null || depth == maxCauses || containsIdentical(written, current)) {
+                break;
+            }
+            json.append(",\"cause\":");
+            depth++;
+        }
+        for (int i = 0; i <= depth; i++) {
+            json.append('}');
         }
+        return json.toString();
+    }
+
+    // leaves the object open, for a cause to be added
+    private void appendThrowable(StringBuilder json, Throwable throwable) {
+        json.append(typePrefix(throwable.getClass()));
+        String message = throwable.getMessage();
+        if (message != null) {
+            json.append("\"errorMessage\":\"");
+            ENCODER.get().quoteAsString(message, json);
+            json.append("\",");
+        }
+        json.append("\"stackTrace\":[");
+        StackTraceElement[] frames = throwable.getStackTrace();
+        int count = Math.min(frames.length, maxFrames);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(frame(frames[i]));
+        }
+        if (frames.length > count) {
+            if (count > 0) {
+                json.append(',');
+            }
+            json.append("\"... ").append(frames.length - count).append(" more\"");
+        }
+        json.append(']');
+    }
+
+    private static boolean containsIdentical(List<Throwable> written, Throwable throwable) {
+        for (Throwable seen : written) {
+            if (seen == throwable) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String frame(StackTraceElement element) {
+        String quoted = FRAMES.get(element);
+        if (quoted == null) {
+            quoted = quote(element.toString());
+            if (FRAMES.size() < MAX_CACHED_FRAMES) {
+                FRAMES.put(element, quoted);
+            }
+        }
+        return quoted;
+    }
+
+    private static String typePrefix(Class<?> type) {
+        String prefix = TYPE_PREFIXES.get(type);
+        if (prefix == null) {
+            prefix = "{\"errorType\":" + quote(type.getName()) + ",";
+            if (TYPE_PREFIXES.size() < MAX_CACHED_TYPES) {
+                TYPE_PREFIXES.put(type, prefix);
+            }
+        }
+        return prefix;
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        ENCODER.get().quoteAsString(value, quoted);
+        return quoted.append('"').toString();
     }
 
 }
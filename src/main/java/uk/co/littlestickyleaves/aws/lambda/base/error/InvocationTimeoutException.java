@@ -0,0 +1,14 @@
+package uk.co.littlestickyleaves.aws.lambda.base.error;
+
+/**
+ * Posted as the invocation error when the runner gives up on a worker which has used up its time budget,
+ * so the caller gets a proper error instead of Lambda stopping the whole runtime at the deadline.
+ */
+public class InvocationTimeoutException extends LambdaException {
+
+    private static final long serialVersionUID = 1L;
+
+    public InvocationTimeoutException(String message) {
+        super(message);
+    }
+}
@@ -5,11 +5,33 @@ package uk.co.littlestickyleaves.aws.lambda.base.error;
  */
 public class LambdaException extends Exception {
 
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
     public LambdaException(String message) {
         super(message);
+        this.statusCode = 0;
     }
 
     public LambdaException(String message, Throwable cause) {
         super(message, cause);
+        this.statusCode = 0;
+    }
+
+    /**
+     * @param message the message
+     * @param statusCode the HTTP status code the runtime API answered with
+     */
+    public LambdaException(String message, int statusCode) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * @return the HTTP status code the runtime API answered with, or 0 if it wasn't an HTTP error
+     */
+    public int getStatusCode() {
+        return statusCode;
     }
 }
@@ -0,0 +1,306 @@
+package uk.co.littlestickyleaves.aws.lambda.base.http;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import uk.co.littlestickyleaves.aws.lambda.base.api.ByteBufferInputStream;
+import uk.co.littlestickyleaves.aws.lambda.base.json.JsonCodecs;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A view of an API Gateway (REST or HTTP API, either payload format) or Application Load Balancer event,
+ * over the raw input bytes, which only parses what is asked for.
+ * Each getter runs jackson's streaming parser over the input, skipping everything but the field it wants
+ * without building any objects for it, and the scalar fields are kept once found.
+ * Header names are matched case-insensitively; where the event only has multi-value headers or query parameters
+ * (as an ALB with multi-value headers turned on sends), the first value is used.
+ * It reads the input buffer directly, so must not be used once the invocation is over.
+ */
+public class HttpEvent {
+
+    private static final JsonFactory JSON_FACTORY = JsonCodecs.getJsonFactory();
+
+    private final ByteBuffer raw;
+
+    private HttpEventFormat format;
+
+    private String httpMethod;
+
+    private String path;
+
+    private boolean bodyRead;
+
+    private byte[] body;
+
+    private Map<String, String> headers;
+
+    private Map<String, String> routeParameters;
+
+    public HttpEvent(ByteBuffer raw) {
+        this.raw = raw;
+    }
+
+    public HttpEventFormat getFormat() throws IOException {
+        if (format == null) {
+            if ("2.0".equals(stringAt("version"))) {
+                format = HttpEventFormat.API_GATEWAY_V2;
+            } else if (isPresent("requestContext", "elb")) {
+                format = HttpEventFormat.ALB;
+            } else {
+                format = HttpEventFormat.API_GATEWAY_V1;
+            }
+        }
+        return format;
+    }
+
+    public String getHttpMethod() throws IOException {
+        if (httpMethod == null) {
+            httpMethod = getFormat() == HttpEventFormat.API_GATEWAY_V2 ?
+                    stringAt("requestContext", "http", "method") : stringAt("httpMethod");
+        }
+        return httpMethod;
+    }
+
+    /**
+     * @return the request path, as the client sent it (for API Gateway, including any stage)
+     */
+    public String getPath() throws IOException {
+        if (path == null) {
+            path = getFormat() == HttpEventFormat.API_GATEWAY_V2 ? stringAt("rawPath") : stringAt("path");
+        }
+        return path;
+    }
+
+    /**
+     * @param name a header name, in any case
+     * @return the header's value, or null if the request didn't have it
+     */
+    public String getHeader(String name) throws IOException {
+        if (headers != null) {
+            return headers.get(name.toLowerCase());
+        }
+        String value = entryIn("headers", name, true);
+        return value != null ? value : entryIn("multiValueHeaders", name, true);
+    }
+
+    /**
+     * @return every header, keyed by lower-case name; this does build a map, so getHeader() is cheaper for a few
+     */
+    public Map<String, String> getHeaders() throws IOException {
+        if (headers == null) {
+            Map<String, String> all = new LinkedHashMap<>();
+            collectEntries("multiValueHeaders", all);
+            collectEntries("headers", all);
+            headers = all;
+        }
+        return headers;
+    }
+
+    /**
+     * @param name a query string parameter name
+     * @return its value, decoded, or null if the request didn't have it
+     */
+    public String getQueryParameter(String name) throws IOException {
+        String value = entryIn("queryStringParameters", name, false);
+        if (value == null) {
+            value = entryIn("multiValueQueryStringParameters", name, false);
+        }
+        // ALB passes query parameters on as they arrived, still URL-encoded
+        if (value != null && getFormat() == HttpEventFormat.ALB) {
+            value = URLDecoder.decode(value, "UTF-8");
+        }
+        return value;
+    }
+
+    /**
+     * @param name the name of a path parameter in the API Gateway route, or in the LambdaRouter route which matched
+     * @return its value, or null if there isn't one
+     */
+    public String getPathParameter(String name) throws IOException {
+        if (routeParameters != null && routeParameters.containsKey(name)) {
+            return routeParameters.get(name);
+        }
+        return entryIn("pathParameters", name, false);
+    }
+
+    /**
+     * @return the body, decoded from base64 if it was sent that way, or null if there isn't one
+     */
+    public byte[] getBodyBytes() throws IOException {
+        if (!bodyRead) {
+            String text = stringAt("body");
+            if (text != null) {
+                body = "true".equals(stringAt("isBase64Encoded")) ? Base64.getDecoder().decode(text) :
+                        text.getBytes(StandardCharsets.UTF_8);
+            }
+            bodyRead = true;
+        }
+        return body;
+    }
+
+    /**
+     * @return the body as UTF-8 text, decoded from base64 if it was sent that way, or null if there isn't one
+     */
+    public String getBody() throws IOException {
+        byte[] bytes = getBodyBytes();
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the eventSource of the first of the event's Records, or for EventBridge its source,
+     * or null if it has neither, as with HTTP events
+     */
+    String getEventSource() throws IOException {
+        try (JsonParser parser = find("Records")) {
+            if (parser != null && parser.currentToken() == JsonToken.START_ARRAY &&
+                    parser.nextToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String fieldName = parser.getCurrentName();
+                    parser.nextToken();
+                    // SNS spells it differently
+                    if (fieldName.equals("eventSource") || fieldName.equals("EventSource")) {
+                        return scalar(parser);
+                    }
+                    parser.skipChildren();
+                }
+                return null;
+            }
+        }
+        return stringAt("source");
+    }
+
+    /**
+     * @return the path to route on: the request path without the stage, which for payload format 2.0 starts
+     * the raw path unless the stage is $default (format 1.0's path has no stage in it already)
+     */
+    String getRoutePath() throws IOException {
+        String requestPath = getPath();
+        if (requestPath == null || getFormat() != HttpEventFormat.API_GATEWAY_V2) {
+            return requestPath;
+        }
+        String stage = stringAt("requestContext", "stage");
+        if (stage == null || stage.equals("$default") || !requestPath.startsWith(stage, 1) ||
+                requestPath.length() > stage.length() + 1 && requestPath.charAt(stage.length() + 1) != '/') {
+            return requestPath;
+        }
+        return requestPath.length() == stage.length() + 1 ? "/" : requestPath.substring(stage.length() + 1);
+    }
+
+    void setRouteParameters(Map<String, String> routeParameters) {
+        this.routeParameters = routeParameters;
+    }
+
+    /**
+     * @return true if the event has only multi-value headers, so the response must use them too
+     */
+    boolean usesMultiValueHeaders() throws IOException {
+        return !isPresent("headers") && isPresent("multiValueHeaders");
+    }
+
+    private boolean isPresent(String... fieldPath) throws IOException {
+        try (JsonParser parser = find(fieldPath)) {
+            return parser != null && parser.currentToken() != JsonToken.VALUE_NULL;
+        }
+    }
+
+    private String stringAt(String... fieldPath) throws IOException {
+        try (JsonParser parser = find(fieldPath)) {
+            return parser == null ? null : scalar(parser);
+        }
+    }
+
+    /**
+     * Looks through one object for a single entry, building nothing for the others.
+     */
+    private String entryIn(String objectName, String name, boolean ignoreCase) throws IOException {
+        try (JsonParser parser = find(objectName)) {
+            if (parser == null || parser.currentToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                parser.nextToken();
+                if (ignoreCase ? fieldName.equalsIgnoreCase(name) : fieldName.equals(name)) {
+                    return scalar(parser);
+                }
+                parser.skipChildren();
+            }
+            return null;
+        }
+    }
+
+    private void collectEntries(String objectName, Map<String, String> entries) throws IOException {
+        try (JsonParser parser = find(objectName)) {
+            if (parser == null || parser.currentToken() != JsonToken.START_OBJECT) {
+                return;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName().toLowerCase();
+                parser.nextToken();
+                entries.put(fieldName, scalar(parser));
+            }
+        }
+    }
+
+    /**
+     * @return a parser positioned on the value at the path of field names, or null if there is nothing there
+     */
+    private JsonParser find(String... fieldPath) throws IOException {
+        JsonParser parser = JSON_FACTORY.createParser(new ByteBufferInputStream(raw.duplicate()));
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            parser.close();
+            return null;
+        }
+        int depth = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (!fieldName.equals(fieldPath[depth])) {
+                parser.skipChildren();
+            } else if (depth == fieldPath.length - 1) {
+                return parser;
+            } else if (value == JsonToken.START_OBJECT) {
+                depth++;
+            } else {
+                break;
+            }
+        }
+        parser.close();
+        return null;
+    }
+
+    /**
+     * @return the text of the value the parser is on, or of the first element if it is an array
+     */
+    private static String scalar(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_ARRAY) {
+            String first = null;
+            boolean seenFirst = false;
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (seenFirst) {
+                    parser.skipChildren();
+                } else {
+                    first = scalar(parser);
+                    seenFirst = true;
+                }
+            }
+            return first;
+        }
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token == JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        return parser.getText();
+    }
+}
@@ -0,0 +1,16 @@
+package uk.co.littlestickyleaves.aws.lambda.base.http;
+
+/**
+ * The HTTP event payloads Lambda is sent by its HTTP front doors.
+ */
+public enum HttpEventFormat {
+
+    /** API Gateway REST APIs, and HTTP APIs using payload format 1.0. */
+    API_GATEWAY_V1,
+
+    /** API Gateway HTTP APIs using payload format 2.0 (and function URLs, which use the same format). */
+    API_GATEWAY_V2,
+
+    /** Application Load Balancer target groups. */
+    ALB
+}
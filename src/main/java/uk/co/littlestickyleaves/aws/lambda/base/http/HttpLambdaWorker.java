@@ -0,0 +1,18 @@
+package uk.co.littlestickyleaves.aws.lambda.base.http;
+
+/**
+ * Interface for a worker behind API Gateway, a function URL or an Application Load Balancer.
+ * It reads the request through an HttpEvent, which only parses what is asked for,
+ * and answers through an HttpResponseBuilder, which writes straight into the response.
+ * Run one with new LambdaRunner(new HttpLambdaWorkerAdapter(worker)).
+ */
+@FunctionalInterface
+public interface HttpLambdaWorker {
+
+    /**
+     * @param event the request; it reads the input's bytes, so it must not be kept after this returns
+     * @param response where to set the status, headers and body
+     * @throws Exception if the request can't be handled, which is reported as an invocation error
+     */
+    void handle(HttpEvent event, HttpResponseBuilder response) throws Exception;
+}
@@ -0,0 +1,47 @@
+package uk.co.littlestickyleaves.aws.lambda.base.http;
+
+import uk.co.littlestickyleaves.aws.lambda.base.LambdaByteWorker;
+import uk.co.littlestickyleaves.aws.lambda.base.api.ByteBufferInputStream;
+import uk.co.littlestickyleaves.aws.lambda.base.api.ByteBufferOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Lets an HttpLambdaWorker be driven as a LambdaByteWorker.
+ * The worker gets an HttpEvent over the request bytes as they are, and its response is written straight to the output.
+ */
+public class HttpLambdaWorkerAdapter implements LambdaByteWorker {
+
+    private final HttpLambdaWorker httpLambdaWorker;
+
+    public HttpLambdaWorkerAdapter(HttpLambdaWorker httpLambdaWorker) {
+        this.httpLambdaWorker = httpLambdaWorker;
+    }
+
+    @Override
+    public void handle(InputStream input, OutputStream output) throws Exception {
+        HttpEvent event = new HttpEvent(readRaw(input));
+        HttpResponseBuilder response = new HttpResponseBuilder(event);
+        httpLambdaWorker.handle(event, response);
+        response.writeTo(output);
+    }
+
+    /**
+     * @return the input's bytes, without copying them if it is a ByteBufferInputStream
+     */
+    static ByteBuffer readRaw(InputStream input) throws IOException {
+        if (input instanceof ByteBufferInputStream) {
+            return ((ByteBufferInputStream) input).getByteBuffer();
+        }
+        ByteBufferOutputStream content = new ByteBufferOutputStream();
+        content.writeFrom(input);
+        return content.toByteBuffer();
+    }
+
+    public HttpLambdaWorker getHttpLambdaWorker() {
+        return httpLambdaWorker;
+    }
+}
@@ -0,0 +1,198 @@
+package uk.co.littlestickyleaves.aws.lambda.base.http;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import uk.co.littlestickyleaves.aws.lambda.base.json.JsonCodecs;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Builds the response to an HttpEvent, and writes it straight to the output as the json
+ * API Gateway or the Application Load Balancer expects, with no intermediate objects.
+ * A binary body is base64 encoded as it is written.
+ * The status code is 200 unless set.
+ * A header set more than once (its name compared ignoring case) keeps all its values: as multiValueHeaders where
+ * the format has them, as cookies for Set-Cookie in API Gateway's payload format 2.0, and otherwise joined with commas.
+ * Set-Cookie can't be joined, so can only be set once for an ALB without multi-value headers turned on.
+ */
+public class HttpResponseBuilder {
+
+    private final HttpEvent event;
+
+    private int statusCode = 200;
+
+    private static final String SET_COOKIE = "Set-Cookie";
+
+    private final Map<String, List<String>> headers = new LinkedHashMap<>();
+
+    private String body;
+
+    private byte[] binaryBody;
+
+    /**
+     * @param event the event being answered, which decides the exact form of the response; null for API Gateway's
+     */
+    public HttpResponseBuilder(HttpEvent event) {
+        this.event = event;
+    }
+
+    public HttpResponseBuilder statusCode(int statusCode) {
+        this.statusCode = statusCode;
+        return this;
+    }
+
+    /**
+     * @param name the header name; setting the same one again adds another value
+     * @param value the header value
+     * @return this HttpResponseBuilder
+     */
+    public HttpResponseBuilder header(String name, String value) {
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (header.getKey().equalsIgnoreCase(name)) {
+                header.getValue().add(value);
+                return this;
+            }
+        }
+        List<String> values = new ArrayList<>(1);
+        values.add(value);
+        headers.put(name, values);
+        return this;
+    }
+
+    /**
+     * @param body the body, as text
+     * @return this HttpResponseBuilder
+     */
+    public HttpResponseBuilder body(String body) {
+        this.body = body;
+        this.binaryBody = null;
+        return this;
+    }
+
+    /**
+     * @param binaryBody the body, as bytes, which is sent base64 encoded
+     * @return this HttpResponseBuilder
+     */
+    public HttpResponseBuilder body(byte[] binaryBody) {
+        this.binaryBody = binaryBody;
+        this.body = null;
+        return this;
+    }
+
+    public void writeTo(OutputStream output) throws IOException {
+        HttpEventFormat format = event == null ? HttpEventFormat.API_GATEWAY_V1 : event.getFormat();
+        boolean alb = format == HttpEventFormat.ALB;
+        boolean multiValueHeaders = alb && event.usesMultiValueHeaders();
+        if (alb && !multiValueHeaders) {
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                if (isSetCookie(header.getKey()) && header.getValue().size() > 1) {
+                    throw new IllegalStateException("Set-Cookie can only be set more than once for an ALB " +
+                            "with multi-value headers turned on");
+                }
+            }
+        }
+        try (JsonGenerator generator = JsonCodecs.getJsonFactory().createGenerator(output, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeNumberField("statusCode", statusCode);
+            if (alb) {
+                generator.writeStringField("statusDescription", statusDescription(statusCode));
+            }
+            if (multiValueHeaders) {
+                writeHeaders(generator, "multiValueHeaders", true, header -> true);
+            } else if (format == HttpEventFormat.API_GATEWAY_V2) {
+                writeHeaders(generator, "headers", false, header -> !isSetCookie(header.getKey()));
+                writeCookies(generator);
+            } else if (format == HttpEventFormat.API_GATEWAY_V1) {
+                // API Gateway merges the two, so only a repeated header needs the multi-value form
+                writeHeaders(generator, "headers", false, header -> header.getValue().size() == 1);
+                writeHeaders(generator, "multiValueHeaders", true, header -> header.getValue().size() > 1);
+            } else {
+                writeHeaders(generator, "headers", false, header -> true);
+            }
+            if (binaryBody != null) {
+                generator.writeFieldName("body");
+                generator.writeBinary(binaryBody);
+            } else if (body != null) {
+                generator.writeStringField("body", body);
+            }
+            generator.writeBooleanField("isBase64Encoded", binaryBody != null);
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Writes the headers which match as an object, each one's values as an array if asArrays,
+     * or else joined with commas; writes nothing if none match.
+     */
+    private void writeHeaders(JsonGenerator generator, String fieldName, boolean asArrays,
+                              Predicate<Map.Entry<String, List<String>>> which) throws IOException {
+        boolean started = false;
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (!which.test(header)) {
+                continue;
+            }
+            if (!started) {
+                generator.writeObjectFieldStart(fieldName);
+                started = true;
+            }
+            if (asArrays) {
+                generator.writeArrayFieldStart(header.getKey());
+                for (String value : header.getValue()) {
+                    generator.writeString(value);
+                }
+                generator.writeEndArray();
+            } else {
+                generator.writeStringField(header.getKey(), String.join(", ", header.getValue()));
+            }
+        }
+        if (started) {
+            generator.writeEndObject();
+        }
+    }
+
+    private void writeCookies(JsonGenerator generator) throws IOException {
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (isSetCookie(header.getKey())) {
+                generator.writeArrayFieldStart("cookies");
+                for (String cookie : header.getValue()) {
+                    generator.writeString(cookie);
+                }
+                generator.writeEndArray();
+                return;
+            }
+        }
+    }
+
+    private static boolean isSetCookie(String name) {
+        return SET_COOKIE.equalsIgnoreCase(name);
+    }
+
+    private static String statusDescription(int statusCode) {
+        switch (statusCode) {
+            case 200: return "200 OK";
+            case 201: return "201 Created";
+            case 202: return "202 Accepted";
+            case 204: return "204 No Content";
+            case 301: return "301 Moved Permanently";
+            case 302: return "302 Found";
+            case 304: return "304 Not Modified";
+            case 400: return "400 Bad Request";
+            case 401: return "401 Unauthorized";
+            case 403: return "403 Forbidden";
+            case 404: return "404 Not Found";
+            case 405: return "405 Method Not Allowed";
+            case 409: return "409 Conflict";
+            case 429: return "429 Too Many Requests";
+            case 500: return "500 Internal Server Error";
+            case 502: return "502 Bad Gateway";
+            case 503: return "503 Service Unavailable";
+            default: return String.valueOf(statusCode);
+        }
+    }
+}
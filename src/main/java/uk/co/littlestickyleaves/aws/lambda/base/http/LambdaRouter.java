@@ -0,0 +1,294 @@
+package uk.co.littlestickyleaves.aws.lambda.base.http;
+
+import uk.co.littlestickyleaves.aws.lambda.base.LambdaByteWorker;
+import uk.co.littlestickyleaves.aws.lambda.base.LambdaWorker;
+import uk.co.littlestickyleaves.aws.lambda.base.LambdaWorkerAdapter;
+import uk.co.littlestickyleaves.aws.lambda.base.api.ByteBufferInputStream;
+import uk.co.littlestickyleaves.aws.lambda.base.error.LambdaException;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A LambdaByteWorker which hands each invocation on to one of several workers, so one function can serve
+ * several endpoints (and event sources) without a chain of ifs over the path.
+ * Routes are registered in code with builder(), and built once into an immutable trie of path segments:
+ * literal segments, {name} parameters and a final {name+} which takes the rest of the path.
+ * An HTTP event's path, without any API Gateway stage, is matched a segment at a time, with no regular expressions,
+ * literals being tried before parameters; the matched parameters are available from HttpEvent.getPathParameter().
+ * A path with no route gets a 404 response, and one with routes but none for the method a 405.
+ * Events from other sources (SQS, SNS, Kinesis, DynamoDB, EventBridge and so on) go to the worker registered for
+ * their event source; anything else goes to the fallback worker, if there is one.
+ */
+public final class LambdaRouter implements LambdaByteWorker {
+
+    private static final String ANY_METHOD = "ANY";
+
+    private final Node root;
+
+    private final Map<String, LambdaByteWorker> eventSourceWorkers;
+
+    private final LambdaByteWorker fallback;
+
+    private LambdaRouter(Builder builder) {
+        this.root = builder.root.freeze();
+        this.eventSourceWorkers = Collections.unmodifiableMap(new HashMap<>(builder.eventSourceWorkers));
+        this.fallback = builder.fallback;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public void handle(InputStream input, OutputStream output) throws Exception {
+        ByteBuffer raw = HttpLambdaWorkerAdapter.readRaw(input);
+        HttpEvent event = new HttpEvent(raw);
+
+        // only an event which isn't HTTP needs looking through for an event source
+        String method = event.getHttpMethod();
+        String path = method == null ? null : event.getRoutePath();
+        if (method == null || path == null) {
+            String eventSource = eventSourceWorkers.isEmpty() ? null : event.getEventSource();
+            LambdaByteWorker worker = eventSource == null ? null : eventSourceWorkers.get(eventSource);
+            if (worker == null) {
+                worker = fallbackFor(eventSource == null ?
+                        "an event which is neither HTTP nor from a registered event source" :
+                        "event source " + eventSource);
+            }
+            worker.handle(new ByteBufferInputStream(raw), output);
+            return;
+        }
+
+        HttpResponseBuilder response = new HttpResponseBuilder(event);
+        List<String> parameters = new ArrayList<>(4);
+        Node node = match(root, path, 0, parameters);
+        if (node == null) {
+            response.statusCode(404).writeTo(output);
+            return;
+        }
+        HttpLambdaWorker worker = node.workers.get(method.toUpperCase(Locale.ROOT));
+        if (worker == null) {
+            worker = node.workers.get(ANY_METHOD);
+        }
+        if (worker == null) {
+            response.statusCode(405).header("Allow", String.join(", ", node.workers.keySet())).writeTo(output);
+            return;
+        }
+        if (!parameters.isEmpty()) {
+            Map<String, String> routeParameters = new HashMap<>();
+            for (int i = 0; i < parameters.size(); i += 2) {
+                routeParameters.put(parameters.get(i), parameters.get(i + 1));
+            }
+            event.setRouteParameters(routeParameters);
+        }
+        worker.handle(event, response);
+        response.writeTo(output);
+    }
+
+    private LambdaByteWorker fallbackFor(String what) throws LambdaException {
+        if (fallback == null) {
+            throw new LambdaException("No worker is registered for " + what);
+        }
+        return fallback;
+    }
+
+    /**
+     * Finds the node with routes for the path from index from onwards, adding name, value pairs to parameters.
+     * @return the node, or null if no route matches
+     */
+    private static Node match(Node node, String path, int from, List<String> parameters) {
+        while (from < path.length() && path.charAt(from) == '/') {
+            from++;
+        }
+        if (from == path.length()) {
+            return node.workers.isEmpty() ? null : node;
+        }
+        int end = path.indexOf('/', from);
+        if (end < 0) {
+            end = path.length();
+        }
+        String segment = path.substring(from, end);
+
+        Node literal = node.literals.get(segment);
+        if (literal != null) {
+            Node found = match(literal, path, end, parameters);
+            if (found != null) {
+                return found;
+            }
+        }
+        if (node.parameter != null) {
+            parameters.add(node.parameter.name);
+            parameters.add(segment);
+            Node found = match(node.parameter, path, end, parameters);
+            if (found != null) {
+                return found;
+            }
+            parameters.remove(parameters.size() - 1);
+            parameters.remove(parameters.size() - 1);
+        }
+        if (node.greedy != null) {
+            parameters.add(node.greedy.name);
+            parameters.add(path.substring(from));
+            return node.greedy;
+        }
+        return null;
+    }
+
+    /**
+     * One segment of the trie; immutable once built.
+     */
+    private static final class Node {
+
+        private final String name;
+
+        private final Map<String, Node> literals;
+
+        private final Node parameter;
+
+        private final Node greedy;
+
+        private final Map<String, HttpLambdaWorker> workers;
+
+        private Node(String name, Map<String, Node> literals, Node parameter, Node greedy,
+                     Map<String, HttpLambdaWorker> workers) {
+            this.name = name;
+            this.literals = literals;
+            this.parameter = parameter;
+            this.greedy = greedy;
+            this.workers = workers;
+        }
+    }
+
+    /**
+     * One segment of the trie while routes are being added.
+     */
+    private static final class RouteNode {
+
+        private String name;
+
+        private final Map<String, RouteNode> literals = new HashMap<>();
+
+        private RouteNode parameter;
+
+        private RouteNode greedy;
+
+        // sorted, so a 405's Allow header lists them in a fixed order
+        private final Map<String, HttpLambdaWorker> workers = new TreeMap<>();
+
+        private Node freeze() {
+            Map<String, Node> frozenLiterals = new HashMap<>();
+            for (Map.Entry<String, RouteNode> entry : literals.entrySet()) {
+                frozenLiterals.put(entry.getKey(), entry.getValue().freeze());
+            }
+            return new Node(name, Collections.unmodifiableMap(frozenLiterals),
+                    parameter == null ? null : parameter.freeze(), greedy == null ? null : greedy.freeze(),
+                    Collections.unmodifiableMap(new LinkedHashMap<>(workers)));
+        }
+    }
+
+    /**
+     * Collects the routes for a LambdaRouter.
+     */
+    public static class Builder {
+
+        private final RouteNode root = new RouteNode();
+
+        private final Map<String, LambdaByteWorker> eventSourceWorkers = new HashMap<>();
+
+        private LambdaByteWorker fallback;
+
+        private Builder() {
+        }
+
+        /**
+         * @param method the HTTP method, or ANY for all of them
+         * @param pathTemplate the path, starting with /, in which a segment can be a {name} parameter,
+         *                     and the last can be a {name+} parameter which takes the rest of the path
+         * @param worker the worker for requests which match
+         * @return this Builder
+         */
+        public Builder route(String method, String pathTemplate, HttpLambdaWorker worker) {
+            if (!pathTemplate.startsWith("/")) {
+                throw new IllegalArgumentException("Path template must start with /: " + pathTemplate);
+            }
+            RouteNode node = root;
+            String[] segments = pathTemplate.substring(1).split("/");
+            for (int i = 0; i < segments.length; i++) {
+                String segment = segments[i];
+                if (segment.isEmpty()) {
+                    continue;
+                }
+                if (segment.startsWith("{") && segment.endsWith("+}")) {
+                    if (i != segments.length - 1) {
+                        throw new IllegalArgumentException("Only the last segment can be a {name+} parameter: " +
+                                pathTemplate);
+                    }
+                    if (node.greedy == null) {
+                        node.greedy = new RouteNode();
+                    }
+                    node = named(node.greedy, segment.substring(1, segment.length() - 2), pathTemplate);
+                } else if (segment.startsWith("{") && segment.endsWith("}")) {
+                    if (node.parameter == null) {
+                        node.parameter = new RouteNode();
+                    }
+                    node = named(node.parameter, segment.substring(1, segment.length() - 1), pathTemplate);
+                } else {
+                    node = node.literals.computeIfAbsent(segment, key -> new RouteNode());
+                }
+            }
+            if (node.workers.putIfAbsent(method.toUpperCase(Locale.ROOT), worker) != null) {
+                throw new IllegalArgumentException("Route already registered: " + method + " " + pathTemplate);
+            }
+            return this;
+        }
+
+        /**
+         * @param eventSource the event source, as given in the events' Records (aws:sqs, aws:sns, aws:kinesis,
+         *                    aws:dynamodb, aws:s3...) or, for EventBridge, their source field
+         * @param worker the worker for events from that source
+         * @return this Builder
+         */
+        public Builder eventSource(String eventSource, LambdaByteWorker worker) {
+            if (eventSourceWorkers.putIfAbsent(eventSource, worker) != null) {
+                throw new IllegalArgumentException("Event source already registered: " + eventSource);
+            }
+            return this;
+        }
+
+        public Builder eventSource(String eventSource, LambdaWorker worker) {
+            return eventSource(eventSource, new LambdaWorkerAdapter(worker));
+        }
+
+        /**
+         * @param fallback the worker for events which match nothing else; without one, they fail
+         * @return this Builder
+         */
+        public Builder fallback(LambdaByteWorker fallback) {
+            this.fallback = fallback;
+            return this;
+        }
+
+        public LambdaRouter build() {
+            return new LambdaRouter(this);
+        }
+
+        private static RouteNode named(RouteNode node, String name, String pathTemplate) {
+            if (node.name != null && !node.name.equals(name)) {
+                throw new IllegalArgumentException("Parameter {" + name + "} in " + pathTemplate +
+                        " clashes with {" + node.name + "} registered at the same place");
+            }
+            node.name = name;
+            return node;
+        }
+    }
+}
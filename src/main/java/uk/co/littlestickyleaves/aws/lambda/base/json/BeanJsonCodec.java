@@ -0,0 +1,32 @@
+package uk.co.littlestickyleaves.aws.lambda.base.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.jr.ob.JSON;
+
+import java.io.IOException;
+
+/**
+ * The fallback JsonCodec for types nobody has registered a codec for: reads and writes them as beans with jackson-jr.
+ * That works by reflection, so under native-image the type has to be listed in reflect-config.json.
+ * jackson-jr introspects each type once and caches the result, so only the first use of a type pays for it.
+ * @param <T> the bean type
+ */
+public class BeanJsonCodec<T> implements JsonCodec<T> {
+
+    private final Class<T> type;
+
+    public BeanJsonCodec(Class<T> type) {
+        this.type = type;
+    }
+
+    @Override
+    public T read(JsonParser parser) throws IOException {
+        return JSON.std.beanFrom(type, parser);
+    }
+
+    @Override
+    public void write(T value, JsonGenerator generator) throws IOException {
+        JSON.std.write(value, generator);
+    }
+}
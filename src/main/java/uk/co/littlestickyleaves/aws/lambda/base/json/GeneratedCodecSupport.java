@@ -0,0 +1,213 @@
+package uk.co.littlestickyleaves.aws.lambda.base.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Codecs and helpers used by the code LambdaJsonProcessor generates, kept here so the generated classes stay small.
+ * All the codecs read json null as Java null, and fail on a json value of the wrong kind rather than coerce it.
+ */
+public final class GeneratedCodecSupport {
+
+    public static final JsonCodec<String> STRING = new SimpleCodec<String>() {
+        @Override
+        String readValue(JsonParser parser) throws IOException {
+            expect(parser, "a string", JsonToken.VALUE_STRING);
+            return parser.getText();
+        }
+
+        @Override
+        public void write(String value, JsonGenerator generator) throws IOException {
+            generator.writeString(value);
+        }
+    };
+
+    public static final JsonCodec<Boolean> BOOLEAN = new SimpleCodec<Boolean>() {
+        @Override
+        Boolean readValue(JsonParser parser) throws IOException {
+            expect(parser, "a boolean", JsonToken.VALUE_TRUE, JsonToken.VALUE_FALSE);
+            return parser.getBooleanValue();
+        }
+
+        @Override
+        public void write(Boolean value, JsonGenerator generator) throws IOException {
+            generator.writeBoolean(value);
+        }
+    };
+
+    public static final JsonCodec<Integer> INTEGER = new SimpleCodec<Integer>() {
+        @Override
+        Integer readValue(JsonParser parser) throws IOException {
+            expect(parser, "an integer", JsonToken.VALUE_NUMBER_INT);
+            return parser.getIntValue();
+        }
+
+        @Override
+        public void write(Integer value, JsonGenerator generator) throws IOException {
+            generator.writeNumber(value);
+        }
+    };
+
+    public static final JsonCodec<Long> LONG = new SimpleCodec<Long>() {
+        @Override
+        Long readValue(JsonParser parser) throws IOException {
+            expect(parser, "an integer", JsonToken.VALUE_NUMBER_INT);
+            return parser.getLongValue();
+        }
+
+        @Override
+        public void write(Long value, JsonGenerator generator) throws IOException {
+            generator.writeNumber(value);
+        }
+    };
+
+    public static final JsonCodec<Short> SHORT = new SimpleCodec<Short>() {
+        @Override
+        Short readValue(JsonParser parser) throws IOException {
+            expect(parser, "an integer", JsonToken.VALUE_NUMBER_INT);
+            return parser.getShortValue();
+        }
+
+        @Override
+        public void write(Short value, JsonGenerator generator) throws IOException {
+            generator.writeNumber(value);
+        }
+    };
+
+    public static final JsonCodec<Byte> BYTE = new SimpleCodec<Byte>() {
+        @Override
+        Byte readValue(JsonParser parser) throws IOException {
+            expect(parser, "an integer", JsonToken.VALUE_NUMBER_INT);
+            return parser.getByteValue();
+        }
+
+        @Override
+        public void write(Byte value, JsonGenerator generator) throws IOException {
+            generator.writeNumber(value);
+        }
+    };
+
+    public static final JsonCodec<Double> DOUBLE = new SimpleCodec<Double>() {
+        @Override
+        Double readValue(JsonParser parser) throws IOException {
+            expect(parser, "a number", JsonToken.VALUE_NUMBER_INT, JsonToken.VALUE_NUMBER_FLOAT);
+            return parser.getDoubleValue();
+        }
+
+        @Override
+        public void write(Double value, JsonGenerator generator) throws IOException {
+            generator.writeNumber(value);
+        }
+    };
+
+    public static final JsonCodec<Float> FLOAT = new SimpleCodec<Float>() {
+        @Override
+        Float readValue(JsonParser parser) throws IOException {
+            expect(parser, "a number", JsonToken.VALUE_NUMBER_INT, JsonToken.VALUE_NUMBER_FLOAT);
+            return parser.getFloatValue();
+        }
+
+        @Override
+        public void write(Float value, JsonGenerator generator) throws IOException {
+            generator.writeNumber(value);
+        }
+    };
+
+    private GeneratedCodecSupport() {
+    }
+
+    /**
+     * @param values the enum's values(), so the codec can look constants up by name without reflection
+     */
+    public static <E extends Enum<E>> JsonCodec<E> enumCodec(E[] values) {
+        Map<String, E> byName = new HashMap<>();
+        for (E value : values) {
+            byName.put(value.name(), value);
+        }
+        return new SimpleCodec<E>() {
+            @Override
+            E readValue(JsonParser parser) throws IOException {
+                expect(parser, "a string", JsonToken.VALUE_STRING);
+                E value = byName.get(parser.getText());
+                if (value == null) {
+                    throw new JsonParseException(parser, "Unknown enum value '" + parser.getText() + "'");
+                }
+                return value;
+            }
+
+            @Override
+            public void write(E value, JsonGenerator generator) throws IOException {
+                generator.writeString(value.name());
+            }
+        };
+    }
+
+    /**
+     * @return true if the parser is on the start of an object; false if it is on a null
+     */
+    public static boolean startObject(JsonParser parser, String typeName) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return false;
+        }
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected an object for " + typeName +
+                    " but found " + parser.currentToken());
+        }
+        return true;
+    }
+
+    public static <E> List<E> readList(JsonParser parser, JsonCodec<E> elementCodec) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            throw new JsonParseException(parser, "Expected an array but found " + parser.currentToken());
+        }
+        List<E> list = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            list.add(elementCodec.read(parser));
+        }
+        return list;
+    }
+
+    public static <E> void writeList(Collection<E> list, JsonCodec<E> elementCodec, JsonGenerator generator)
+            throws IOException {
+        generator.writeStartArray();
+        for (E element : list) {
+            if (element == null) {
+                generator.writeNull();
+            } else {
+                elementCodec.write(element, generator);
+            }
+        }
+        generator.writeEndArray();
+    }
+
+    private static void expect(JsonParser parser, String kind, JsonToken... tokens) throws IOException {
+        for (JsonToken token : tokens) {
+            if (parser.currentToken() == token) {
+                return;
+            }
+        }
+        throw new JsonParseException(parser, "Expected " + kind + " but found " + parser.currentToken());
+    }
+
+    private abstract static class SimpleCodec<T> implements JsonCodec<T> {
+
+        @Override
+        public T read(JsonParser parser) throws IOException {
+            return parser.currentToken() == JsonToken.VALUE_NULL ? null : readValue(parser);
+        }
+
+        abstract T readValue(JsonParser parser) throws IOException;
+    }
+}
@@ -0,0 +1,27 @@
+package uk.co.littlestickyleaves.aws.lambda.base.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+
+import java.io.IOException;
+
+/**
+ * Reads and writes one type as json through jackson's streaming parser and generator.
+ * A codec written against these directly needs no reflection at all, so nothing about the type has to be
+ * listed in native-image configuration; register one with JsonCodecs to have it used for that type.
+ * @param <T> the type handled
+ */
+public interface JsonCodec<T> {
+
+    /**
+     * @param parser a parser whose current token is the first token of the value to read
+     * @return the value read; the parser is left on the value's last token
+     */
+    T read(JsonParser parser) throws IOException;
+
+    /**
+     * @param value a non-null value to write
+     * @param generator the generator to write it to
+     */
+    void write(T value, JsonGenerator generator) throws IOException;
+}
@@ -0,0 +1,96 @@
+package uk.co.littlestickyleaves.aws.lambda.base.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.jr.ob.JSON;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The registry of JsonCodecs, looked up by type.
+ * String and Map are built in, as is every RegisteredJsonCodec listed in a services file (which is how
+ * codecs generated for LambdaJson types arrive); register codecs for other types before the runtime starts.
+ * A type with no registered codec gets a BeanJsonCodec, which uses reflection.
+ */
+public final class JsonCodecs {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE)
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    private static final Map<Class<?>, JsonCodec<?>> CODECS = new ConcurrentHashMap<>();
+
+    static {
+        register(String.class, new StringCodec());
+        register(Map.class, new MapCodec());
+        for (RegisteredJsonCodec<?> codec : ServiceLoader.load(RegisteredJsonCodec.class,
+                JsonCodecs.class.getClassLoader())) {
+            registerCodec(codec);
+        }
+    }
+
+    private JsonCodecs() {
+    }
+
+    public static <T> void register(Class<T> type, JsonCodec<T> codec) {
+        CODECS.put(type, codec);
+    }
+
+    private static <T> void registerCodec(RegisteredJsonCodec<T> codec) {
+        register(codec.getType(), codec);
+    }
+
+    /**
+     * @return the codec registered for the type, or a BeanJsonCodec if there isn't one
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> JsonCodec<T> forType(Class<T> type) {
+        JsonCodec<T> codec = (JsonCodec<T>) CODECS.get(type);
+        return codec == null ? new BeanJsonCodec<>(type) : codec;
+    }
+
+    /**
+     * @return the factory for parsers and generators to use with codecs; they leave the underlying streams open
+     */
+    public static JsonFactory getJsonFactory() {
+        return JSON_FACTORY;
+    }
+
+    private static class StringCodec implements JsonCodec<String> {
+
+        @Override
+        public String read(JsonParser parser) throws IOException {
+            if (parser.currentToken() == JsonToken.VALUE_NULL) {
+                return null;
+            }
+            if (parser.currentToken() != JsonToken.VALUE_STRING) {
+                throw new IOException("Expected a json string but found " + parser.currentToken());
+            }
+            return parser.getText();
+        }
+
+        @Override
+        public void write(String value, JsonGenerator generator) throws IOException {
+            generator.writeString(value);
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static class MapCodec implements JsonCodec<Map> {
+
+        @Override
+        public Map read(JsonParser parser) throws IOException {
+            return parser.currentToken() == JsonToken.VALUE_NULL ? null : JSON.std.mapFrom(parser);
+        }
+
+        @Override
+        public void write(Map value, JsonGenerator generator) throws IOException {
+            JSON.std.write(value, generator);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package uk.co.littlestickyleaves.aws.lambda.base.json;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an event or response type for LambdaJsonProcessor, which at compile time generates
+ * a RegisteredJsonCodec for it, so it is read and written without reflection,
+ * and a native-image reflect-config.json entry for it, for anything which still handles it by reflection.
+ * A codec is generated for public classes with a public no-argument constructor whose bean properties
+ * (public getters and setters, or public fields) are primitives, Strings, enums, other classes, or Lists of those;
+ * for anything else the compiler warns and only the reflect-config.json entry is generated.
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface LambdaJson {
+}
@@ -0,0 +1,15 @@
+package uk.co.littlestickyleaves.aws.lambda.base.json;
+
+/**
+ * A JsonCodec which registers itself: JsonCodecs finds every one listed in
+ * META-INF/services/uk.co.littlestickyleaves.aws.lambda.base.json.RegisteredJsonCodec when it is first used.
+ * LambdaJsonProcessor generates these, and the services file, for types marked with LambdaJson.
+ * @param <T> the type handled
+ */
+public interface RegisteredJsonCodec<T> extends JsonCodec<T> {
+
+    /**
+     * @return the type this codec is for
+     */
+    Class<T> getType();
+}
@@ -0,0 +1,164 @@
+package uk.co.littlestickyleaves.aws.lambda.base.json.processor;
+
+import javax.lang.model.type.TypeKind;
+import java.util.List;
+
+/**
+ * Renders the source of one generated RegisteredJsonCodec.
+ * Every name is written out in full, so nothing in the target type's package can clash with an import.
+ * Codecs which come from JsonCodecs are looked up on first use rather than in a static initializer,
+ * so that generated codecs which refer to each other don't depend on the order they are loaded in.
+ */
+final class CodecSource {
+
+    private static final String SUPPORT = "uk.co.littlestickyleaves.aws.lambda.base.json.GeneratedCodecSupport";
+    private static final String JSON_CODEC = "uk.co.littlestickyleaves.aws.lambda.base.json.JsonCodec";
+    private static final String REGISTERED_JSON_CODEC =
+            "uk.co.littlestickyleaves.aws.lambda.base.json.RegisteredJsonCodec";
+    private static final String PARSER = "com.fasterxml.jackson.core.JsonParser";
+    private static final String GENERATOR = "com.fasterxml.jackson.core.JsonGenerator";
+    private static final String TOKEN = "com.fasterxml.jackson.core.JsonToken";
+
+    private final String packageName;
+    private final String codecName;
+    private final String typeName;
+    private final List<LambdaJsonProcessor.Property> properties;
+    private final StringBuilder source = new StringBuilder();
+
+    CodecSource(String packageName, String codecName, String typeName, List<LambdaJsonProcessor.Property> properties) {
+        this.packageName = packageName;
+        this.codecName = codecName;
+        this.typeName = typeName;
+        this.properties = properties;
+    }
+
+    String render() {
+        line(0, "// Generated by LambdaJsonProcessor from " + typeName + "; do not edit.");
+        if (!packageName.isEmpty()) {
+            line(0, "package " + packageName + ";");
+        }
+        line(0, "");
+        line(0, "@SuppressWarnings({\"unchecked\", \"rawtypes\"})");
+        line(0, "public final class " + codecName + " implements " + REGISTERED_JSON_CODEC + "<" + typeName + "> {");
+        renderCodecFields();
+        line(0, "");
+        line(1, "@Override");
+        line(1, "public Class<" + typeName + "> getType() {");
+        line(2, "return " + typeName + ".class;");
+        line(1, "}");
+        renderRead();
+        renderWrite();
+        line(0, "}");
+        return source.toString();
+    }
+
+    private void renderCodecFields() {
+        for (int i = 0; i < properties.size(); i++) {
+            LambdaJsonProcessor.Property property = properties.get(i);
+            if (!isConstant(property)) {
+                String fieldType = JSON_CODEC + "<" + property.codecType + ">";
+                line(0, "");
+                line(1, "private " + fieldType + " codec" + i + ";");
+                line(0, "");
+                line(1, "private " + fieldType + " codec" + i + "() {");
+                line(2, "if (codec" + i + " == null) {");
+                line(3, "codec" + i + " = " + property.codec + ";");
+                line(2, "}");
+                line(2, "return codec" + i + ";");
+                line(1, "}");
+            }
+        }
+    }
+
+    private String codec(int i) {
+        LambdaJsonProcessor.Property property = properties.get(i);
+        return isConstant(property) ? property.codec : "codec" + i + "()";
+    }
+
+    private static boolean isConstant(LambdaJsonProcessor.Property property) {
+        return property.codec.startsWith(SUPPORT + ".") && !property.codec.startsWith(SUPPORT + ".enumCodec");
+    }
+
+    private void renderRead() {
+        line(0, "");
+        line(1, "@Override");
+        line(1, "public " + typeName + " read(" + PARSER + " parser) throws java.io.IOException {");
+        line(2, "if (!" + SUPPORT + ".startObject(parser, \"" + typeName + "\")) {");
+        line(3, "return null;");
+        line(2, "}");
+        line(2, typeName + " value = new " + typeName + "();");
+        line(2, "while (parser.nextToken() == " + TOKEN + ".FIELD_NAME) {");
+        line(3, "String field = parser.getCurrentName();");
+        line(3, "parser.nextToken();");
+        line(3, "switch (field) {");
+        for (int i = 0; i < properties.size(); i++) {
+            LambdaJsonProcessor.Property property = properties.get(i);
+            if (property.setter == null) {
+                continue;
+            }
+            line(4, "case \"" + property.jsonName + "\": {");
+            if (property.primitive) {
+                line(5, property.codecType + " read = " + codec(i) + ".read(parser);");
+                line(5, "if (read != null) {");
+                line(6, assign(property, "read") + ";");
+                line(5, "}");
+            } else if (property.list) {
+                line(5, assign(property, SUPPORT + ".readList(parser, " + codec(i) + ")") + ";");
+            } else if (property.type.toString().equals(property.codecType)) {
+                line(5, assign(property, codec(i) + ".read(parser)") + ";");
+            } else {
+                line(5, assign(property, "(" + property.type + ") " + codec(i) + ".read(parser)") + ";");
+            }
+            line(5, "break;");
+            line(4, "}");
+        }
+        line(4, "default:");
+        line(5, "parser.skipChildren();");
+        line(3, "}");
+        line(2, "}");
+        line(2, "return value;");
+        line(1, "}");
+    }
+
+    private void renderWrite() {
+        line(0, "");
+        line(1, "@Override");
+        line(1, "public void write(" + typeName + " value, " + GENERATOR + " generator) throws java.io.IOException {");
+        line(2, "generator.writeStartObject();");
+        for (int i = 0; i < properties.size(); i++) {
+            LambdaJsonProcessor.Property property = properties.get(i);
+            if (property.getter == null) {
+                continue;
+            }
+            if (property.primitive) {
+                String method = property.type.getKind() == TypeKind.BOOLEAN ? "writeBooleanField" : "writeNumberField";
+                line(2, "generator." + method + "(\"" + property.jsonName + "\", value." + property.getter + ");");
+                continue;
+            }
+            String local = "property" + i;
+            line(2, property.type + " " + local + " = value." + property.getter + ";");
+            line(2, "if (" + local + " != null) {");
+            line(3, "generator.writeFieldName(\"" + property.jsonName + "\");");
+            if (property.list) {
+                line(3, SUPPORT + ".writeList(" + local + ", " + codec(i) + ", generator);");
+            } else {
+                line(3, codec(i) + ".write(" + local + ", generator);");
+            }
+            line(2, "}");
+        }
+        line(2, "generator.writeEndObject();");
+        line(1, "}");
+    }
+
+    private static String assign(LambdaJsonProcessor.Property property, String expression) {
+        return property.setter.endsWith("(") ? "value." + property.setter + expression + ")" :
+                "value." + property.setter + expression;
+    }
+
+    private void line(int indent, String text) {
+        for (int i = 0; i < indent; i++) {
+            source.append("    ");
+        }
+        source.append(text).append('\n');
+    }
+}
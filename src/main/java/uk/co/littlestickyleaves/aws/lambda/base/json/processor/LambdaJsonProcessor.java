@@ -0,0 +1,379 @@
+package uk.co.littlestickyleaves.aws.lambda.base.json.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Annotation processor for LambdaJson types.
+ * For each one it generates a RegisteredJsonCodec next to it (Type to TypeJsonCodec, Outer.Inner to Outer_InnerJsonCodec)
+ * which reads and writes it through jackson's streaming API with plain method calls,
+ * and lists the codec in the RegisteredJsonCodec services file so JsonCodecs picks it up.
+ * It also writes a reflect-config.json entry for each type, under META-INF/native-image/ and the path given by the
+ * lambdaJson.metadataPath option (default lambda-json), so native-image needs no hand-maintained config for them.
+ * Both files are merged with what an earlier compilation left in the class output, so an incremental build which
+ * only recompiles some LambdaJson types keeps the others; entries whose types no longer exist are dropped.
+ * Like jackson-jr, the generated codecs leave out null properties when writing and skip unknown ones when reading.
+ */
+@SupportedAnnotationTypes(LambdaJsonProcessor.LAMBDA_JSON)
+@SupportedOptions(LambdaJsonProcessor.METADATA_PATH_OPTION)
+public class LambdaJsonProcessor extends AbstractProcessor {
+
+    static final String LAMBDA_JSON = "uk.co.littlestickyleaves.aws.lambda.base.json.LambdaJson";
+    static final String METADATA_PATH_OPTION = "lambdaJson.metadataPath";
+
+    private static final String JSON_PACKAGE = "uk.co.littlestickyleaves.aws.lambda.base.json";
+    private static final String SERVICES_FILE = "META-INF/services/" + JSON_PACKAGE + ".RegisteredJsonCodec";
+    private static final Pattern REFLECTED_NAME = Pattern.compile("\"name\": \"([^\"]+)\"");
+
+    private static final Map<String, String> SIMPLE_CODECS = new LinkedHashMap<>();
+
+    static {
+        SIMPLE_CODECS.put("java.lang.String", "STRING");
+        SIMPLE_CODECS.put("java.lang.Boolean", "BOOLEAN");
+        SIMPLE_CODECS.put("java.lang.Integer", "INTEGER");
+        SIMPLE_CODECS.put("java.lang.Long", "LONG");
+        SIMPLE_CODECS.put("java.lang.Short", "SHORT");
+        SIMPLE_CODECS.put("java.lang.Byte", "BYTE");
+        SIMPLE_CODECS.put("java.lang.Double", "DOUBLE");
+        SIMPLE_CODECS.put("java.lang.Float", "FLOAT");
+    }
+
+    private final Set<String> reflectedTypes = new TreeSet<>();
+    private final Set<String> generatedCodecs = new TreeSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            writeResources();
+            return false;
+        }
+        for (TypeElement annotation : annotations) {
+            for (TypeElement type : ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(annotation))) {
+                reflectedTypes.add(processingEnv.getElementUtils().getBinaryName(type).toString());
+                generateCodec(type);
+            }
+        }
+        return true;
+    }
+
+    private void generateCodec(TypeElement type) {
+        List<Property> properties = new ArrayList<>();
+        String problem = findProperties(type, properties);
+        if (problem != null) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "No JsonCodec generated for " + type.getQualifiedName() + ": " + problem +
+                            "; it will be handled by reflection", type);
+            return;
+        }
+
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String codecName = codecSimpleName(type);
+        String qualifiedCodecName = packageName.isEmpty() ? codecName : packageName + "." + codecName;
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedCodecName, type);
+            try (Writer writer = file.openWriter()) {
+                writer.write(new CodecSource(packageName, codecName, type.getQualifiedName().toString(), properties)
+                        .render());
+            }
+            generatedCodecs.add(qualifiedCodecName);
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Could not write " + qualifiedCodecName + ": " + e.getMessage(), type);
+        }
+    }
+
+    /**
+     * @return null if a codec can be generated, otherwise the reason it can't
+     */
+    private String findProperties(TypeElement type, List<Property> properties) {
+        if (!type.getModifiers().contains(Modifier.PUBLIC) || type.getKind() != ElementKind.CLASS ||
+                type.getModifiers().contains(Modifier.ABSTRACT)) {
+            return "it is not a public concrete class";
+        }
+        if (type.getNestingKind().isNested() && !type.getModifiers().contains(Modifier.STATIC)) {
+            return "it is an inner class";
+        }
+        if (!type.getTypeParameters().isEmpty()) {
+            return "it has type parameters";
+        }
+        boolean hasNoArgConstructor = false;
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC)) {
+                hasNoArgConstructor = true;
+            }
+        }
+        if (!hasNoArgConstructor) {
+            return "it has no public no-argument constructor";
+        }
+
+        // sorted by name, as jackson-jr does, so output doesn't change when a type gains a generated codec
+        Map<String, Property> byName = new TreeMap<>();
+        List<? extends Element> members = processingEnv.getElementUtils().getAllMembers(type);
+        for (VariableElement field : ElementFilter.fieldsIn(members)) {
+            Set<Modifier> modifiers = field.getModifiers();
+            if (modifiers.contains(Modifier.PUBLIC) && !modifiers.contains(Modifier.STATIC) &&
+                    !modifiers.contains(Modifier.TRANSIENT)) {
+                Property property = property(byName, field.getSimpleName().toString(), field.asType());
+                property.getter = field.getSimpleName().toString();
+                if (!modifiers.contains(Modifier.FINAL)) {
+                    property.setter = field.getSimpleName() + " = ";
+                }
+            }
+        }
+        for (ExecutableElement method : ElementFilter.methodsIn(members)) {
+            Set<Modifier> modifiers = method.getModifiers();
+            if (!modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.STATIC) ||
+                    isFromObject(method)) {
+                continue;
+            }
+            String name = method.getSimpleName().toString();
+            if (method.getParameters().isEmpty() && method.getReturnType().getKind() != TypeKind.VOID) {
+                if (name.startsWith("get") && name.length() > 3) {
+                    property(byName, decapitalize(name.substring(3)), method.getReturnType()).getter = name + "()";
+                } else if (name.startsWith("is") && name.length() > 2 &&
+                        method.getReturnType().getKind() == TypeKind.BOOLEAN) {
+                    property(byName, decapitalize(name.substring(2)), method.getReturnType()).getter = name + "()";
+                }
+            } else if (method.getParameters().size() == 1 && name.startsWith("set") && name.length() > 3) {
+                property(byName, decapitalize(name.substring(3)), method.getParameters().get(0).asType()).setter =
+                        name + "(";
+            }
+        }
+
+        for (Property property : byName.values()) {
+            if (property.problem != null) {
+                return property.problem;
+            }
+            properties.add(property);
+        }
+        return null;
+    }
+
+    private Property property(Map<String, Property> byName, String jsonName, TypeMirror type) {
+        Property property = byName.get(jsonName);
+        if (property == null) {
+            property = new Property(jsonName, type);
+            classify(property);
+            byName.put(jsonName, property);
+        } else if (!processingEnv.getTypeUtils().isSameType(property.type, type)) {
+            property.problem = "property " + jsonName + " has getter and setter types which differ";
+        }
+        return property;
+    }
+
+    private void classify(Property property) {
+        TypeMirror type = property.type;
+        if (type.getKind().isPrimitive()) {
+            TypeElement boxed = processingEnv.getTypeUtils().boxedClass(processingEnv.getTypeUtils()
+                    .getPrimitiveType(type.getKind()));
+            property.primitive = true;
+            property.codec = simpleCodec(boxed.getQualifiedName().toString());
+            property.codecType = boxed.getQualifiedName().toString();
+            if (property.codec == null) {
+                property.problem = "property " + property.jsonName + " is a " + type;
+            }
+            return;
+        }
+        if (type.getKind() != TypeKind.DECLARED) {
+            property.problem = "property " + property.jsonName + " is a " + type;
+            return;
+        }
+        DeclaredType declared = (DeclaredType) type;
+        TypeElement element = (TypeElement) declared.asElement();
+        String name = element.getQualifiedName().toString();
+        if ((name.equals("java.util.List") || name.equals("java.util.Collection")) &&
+                declared.getTypeArguments().size() == 1) {
+            TypeMirror elementType = declared.getTypeArguments().get(0);
+            if (elementType.getKind() != TypeKind.DECLARED ||
+                    !((DeclaredType) elementType).getTypeArguments().isEmpty()) {
+                property.problem = "property " + property.jsonName + " is a " + type;
+                return;
+            }
+            property.list = true;
+            property.codecType = ((TypeElement) ((DeclaredType) elementType).asElement()).getQualifiedName()
+                    .toString();
+            property.codec = codecFor((TypeElement) ((DeclaredType) elementType).asElement());
+            return;
+        }
+        property.codecType = name;
+        property.codec = codecFor(element);
+    }
+
+    private String codecFor(TypeElement element) {
+        String name = element.getQualifiedName().toString();
+        String simple = simpleCodec(name);
+        if (simple != null) {
+            return simple;
+        }
+        if (element.getKind() == ElementKind.ENUM) {
+            return JSON_PACKAGE + ".GeneratedCodecSupport.enumCodec(" + name + ".values())";
+        }
+        // generated codecs for other LambdaJson types, and any registered by hand, are found through JsonCodecs
+        return JSON_PACKAGE + ".JsonCodecs.forType(" + name + ".class)";
+    }
+
+    private static String simpleCodec(String boxedName) {
+        String constant = SIMPLE_CODECS.get(boxedName);
+        return constant == null ? null : JSON_PACKAGE + ".GeneratedCodecSupport." + constant;
+    }
+
+    private boolean isFromObject(ExecutableElement method) {
+        return ((TypeElement) method.getEnclosingElement()).getQualifiedName().contentEquals("java.lang.Object");
+    }
+
+    private static String codecSimpleName(TypeElement type) {
+        StringBuilder name = new StringBuilder(type.getSimpleName());
+        Element enclosing = type.getEnclosingElement();
+        while (!(enclosing instanceof PackageElement)) {
+            name.insert(0, enclosing.getSimpleName() + "_");
+            enclosing = enclosing.getEnclosingElement();
+        }
+        return name.append("JsonCodec").toString();
+    }
+
+    private static String decapitalize(String name) {
+        if (name.length() > 1 && Character.isUpperCase(name.charAt(1)) && Character.isUpperCase(name.charAt(0))) {
+            return name;
+        }
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private void writeResources() {
+        if (!generatedCodecs.isEmpty()) {
+            for (String line : readResource(SERVICES_FILE).split("\n")) {
+                String codec = line.trim();
+                if (!codec.isEmpty() && !codec.startsWith("#") && stillExists(codec)) {
+                    generatedCodecs.add(codec);
+                }
+            }
+            StringBuilder services = new StringBuilder();
+            for (String codec : generatedCodecs) {
+                services.append(codec).append('\n');
+            }
+            writeResource(SERVICES_FILE, services.toString());
+        }
+        if (!reflectedTypes.isEmpty()) {
+            String metadataPath = processingEnv.getOptions().get(METADATA_PATH_OPTION);
+            String configPath = "META-INF/native-image/" + (metadataPath == null ? "lambda-json" : metadataPath) +
+                    "/reflect-config.json";
+            Matcher existing = REFLECTED_NAME.matcher(readResource(configPath));
+            while (existing.find()) {
+                if (stillExists(existing.group(1))) {
+                    reflectedTypes.add(existing.group(1));
+                }
+            }
+            StringBuilder config = new StringBuilder("[\n");
+            String separator = "";
+            for (String type : reflectedTypes) {
+                config.append(separator)
+                        .append("  {\n")
+                        .append("    \"name\": \"").append(type).append("\",\n")
+                        .append("    \"allPublicConstructors\": true,\n")
+                        .append("    \"allPublicMethods\": true,\n")
+                        .append("    \"allPublicFields\": true\n")
+                        .append("  }");
+                separator = ",\n";
+            }
+            config.append("\n]\n");
+            writeResource(configPath, config.toString());
+        }
+    }
+
+    /**
+     * @return the content an earlier compilation left at the path in the class output, or "" if there is none
+     */
+    private String readResource(String path) {
+        try {
+            FileObject file = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", path);
+            StringBuilder content = new StringBuilder();
+            try (Reader reader = new BufferedReader(file.openReader(true))) {
+                char[] buffer = new char[4096];
+                for (int read = reader.read(buffer); read != -1; read = reader.read(buffer)) {
+                    content.append(buffer, 0, read);
+                }
+            }
+            return content.toString();
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    /**
+     * @param binaryName a class name as listed in a services file or reflect-config.json
+     */
+    private boolean stillExists(String binaryName) {
+        return processingEnv.getElementUtils().getTypeElement(binaryName.replace('$', '.')) != null;
+    }
+
+    private void writeResource(String path, String content) {
+        try {
+            FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", path);
+            try (Writer writer = file.openWriter()) {
+                writer.write(content);
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Could not write " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * One bean property, as far as json is concerned.
+     */
+    static final class Property {
+
+        final String jsonName;
+        final TypeMirror type;
+        // the member access, such as "getName()" or "name"; null if write-only
+        String getter;
+        // the start of the assignment, such as "setName(" or "name = "; null if read-only
+        String setter;
+        boolean primitive;
+        boolean list;
+        // the element type for lists
+        String codecType;
+        String codec;
+        String problem;
+
+        Property(String jsonName, TypeMirror type) {
+            this.jsonName = jsonName;
+            this.type = type;
+        }
+    }
+}
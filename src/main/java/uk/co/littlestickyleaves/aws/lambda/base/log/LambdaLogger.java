@@ -0,0 +1,111 @@
+package uk.co.littlestickyleaves.aws.lambda.base.log;
+
+import java.io.PrintStream;
+
+/**
+ * A small levelled logger for the runtime (and for LambdaWorkers, if they like), with no dependencies.
+ * Log calls below the configured level cost one comparison; the rest are put on a lock-free ring buffer
+ * and only formatted and written to stdout when flush() is called, which LambdaRunner does before each GET for input.
+ * The level comes from AWS_LAMBDA_LOG_LEVEL (default INFO) and the format from AWS_LAMBDA_LOG_FORMAT
+ * (TEXT or JSON, default TEXT), or can be set with configure().
+ * The request id of the invocation being handled on the current thread is added to each line.
+ */
+public final class LambdaLogger {
+
+    private static final int RING_BUFFER_CAPACITY = 1024;
+
+    private static final LogRingBuffer RING_BUFFER = new LogRingBuffer(RING_BUFFER_CAPACITY);
+    private static final ThreadLocal<String> REQUEST_ID = new ThreadLocal<>();
+
+    private static volatile LogLevel level = LogLevel.fromName(System.getenv("AWS_LAMBDA_LOG_LEVEL"), LogLevel.INFO);
+    private static volatile LogFormat format = LogFormat.fromName(System.getenv("AWS_LAMBDA_LOG_FORMAT"),
+            LogFormat.TEXT);
+    private static volatile PrintStream out = System.out;
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(LambdaLogger::flush, "lambda-logger-flush"));
+    }
+
+    private final String name;
+
+    private LambdaLogger(String name) {
+        this.name = name;
+    }
+
+    public static LambdaLogger getLogger(Class<?> owner) {
+        return new LambdaLogger(owner.getSimpleName());
+    }
+
+    public static void configure(LogLevel newLevel, LogFormat newFormat) {
+        level = newLevel;
+        format = newFormat;
+    }
+
+    /**
+     * Sets where log lines are written, instead of stdout.
+     * @param printStream the stream to write to
+     */
+    public static void setOutput(PrintStream printStream) {
+        flush();
+        out = printStream;
+    }
+
+    /**
+     * @param awsRequestId the request id of the invocation now being handled on this thread, or null once it's done
+     */
+    public static void setRequestId(String awsRequestId) {
+        if (awsRequestId == null) {
+            REQUEST_ID.remove();
+        } else {
+            REQUEST_ID.set(awsRequestId);
+        }
+    }
+
+    /**
+     * Formats and writes everything logged so far.
+     */
+    public static void flush() {
+        RING_BUFFER.drain(format, out);
+    }
+
+    public boolean isEnabled(LogLevel logLevel) {
+        return logLevel.compareTo(level) >= 0;
+    }
+
+    public void trace(String message) {
+        log(LogLevel.TRACE, message, null);
+    }
+
+    public void debug(String message) {
+        log(LogLevel.DEBUG, message, null);
+    }
+
+    public void info(String message) {
+        log(LogLevel.INFO, message, null);
+    }
+
+    public void warn(String message) {
+        log(LogLevel.WARN, message, null);
+    }
+
+    public void error(String message) {
+        log(LogLevel.ERROR, message, null);
+    }
+
+    public void error(String message, Throwable throwable) {
+        log(LogLevel.ERROR, message, throwable);
+    }
+
+    /**
+     * For failures which end the runtime, so they are still logged when AWS_LAMBDA_LOG_LEVEL is FATAL.
+     */
+    public void fatal(String message, Throwable throwable) {
+        log(LogLevel.FATAL, message, throwable);
+    }
+
+    public void log(LogLevel logLevel, String message, Throwable throwable) {
+        if (isEnabled(logLevel)) {
+            RING_BUFFER.add(logLevel, name, REQUEST_ID.get(), message, throwable, format, out);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package uk.co.littlestickyleaves.aws.lambda.base.log;
+
+/**
+ * The log line formats, matching the ones AWS Lambda uses for AWS_LAMBDA_LOG_FORMAT.
+ */
+public enum LogFormat {
+    TEXT, JSON;
+
+    /**
+     * @param name a format name in any case, possibly null
+     * @param defaultFormat the format to use if the name is null or not recognised
+     * @return the matching LogFormat
+     */
+    public static LogFormat fromName(String name, LogFormat defaultFormat) {
+        if (name != null) {
+            for (LogFormat format : values()) {
+                if (format.name().equalsIgnoreCase(name.trim())) {
+                    return format;
+                }
+            }
+        }
+        return defaultFormat;
+    }
+}
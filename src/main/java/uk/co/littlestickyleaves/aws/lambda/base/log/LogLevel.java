@@ -0,0 +1,24 @@
+package uk.co.littlestickyleaves.aws.lambda.base.log;
+
+/**
+ * The log levels, matching the ones AWS Lambda uses for AWS_LAMBDA_LOG_LEVEL.
+ */
+public enum LogLevel {
+    TRACE, DEBUG, INFO, WARN, ERROR, FATAL;
+
+    /**
+     * @param name a level name in any case, possibly null
+     * @param defaultLevel the level to use if the name is null or not recognised
+     * @return the matching LogLevel
+     */
+    public static LogLevel fromName(String name, LogLevel defaultLevel) {
+        if (name != null) {
+            for (LogLevel level : values()) {
+                if (level.name().equalsIgnoreCase(name.trim())) {
+                    return level;
+                }
+            }
+        }
+        return defaultLevel;
+    }
+}
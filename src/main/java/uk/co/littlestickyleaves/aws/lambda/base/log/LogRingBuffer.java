@@ -0,0 +1,169 @@
+package uk.co.littlestickyleaves.aws.lambda.base.log;
+
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, lock-free ring buffer of log entries, written to by any number of threads
+ * and drained by whichever thread calls drain().
+ * Logging only claims a slot and fills in references; formatting and writing the lines happens in drain(),
+ * which the runner calls before it blocks waiting for the next input.
+ * If the buffer fills up, the logging thread drains it itself rather than dropping entries.
+ */
+final class LogRingBuffer {
+
+    private static final class Entry {
+        private volatile long published = -1;
+        private long timeMillis;
+        private LogLevel level;
+        private String loggerName;
+        private String requestId;
+        private String message;
+        private Throwable throwable;
+    }
+
+    private final Entry[] entries;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final StringBuilder line = new StringBuilder(256);
+
+    LogRingBuffer(int capacityPowerOfTwo) {
+        if (Integer.bitCount(capacityPowerOfTwo) != 1) {
+            throw new IllegalArgumentException("Ring buffer capacity must be a power of two");
+        }
+        this.entries = new Entry[capacityPowerOfTwo];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = new Entry();
+        }
+        this.mask = capacityPowerOfTwo - 1;
+    }
+
+    void add(LogLevel level, String loggerName, String requestId, String message, Throwable throwable,
+             LogFormat format, PrintStream out) {
+        long sequence = claimed.getAndIncrement();
+        while (sequence - consumed.get() >= entries.length) {
+            drain(format, out);
+            Thread.yield();
+        }
+        Entry entry = entries[(int) (sequence & mask)];
+        entry.timeMillis = System.currentTimeMillis();
+        entry.level = level;
+        entry.loggerName = loggerName;
+        entry.requestId = requestId;
+        entry.message = message;
+        entry.throwable = throwable;
+        entry.published = sequence;
+    }
+
+    /**
+     * Writes out every published entry, in order. If another thread is already draining, returns straight away.
+     */
+    void drain(LogFormat format, PrintStream out) {
+        if (!draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long sequence = consumed.get();
+            boolean wrote = false;
+            while (true) {
+                Entry entry = entries[(int) (sequence & mask)];
+                if (entry.published != sequence) {
+                    break;
+                }
+                line.setLength(0);
+                if (format == LogFormat.JSON) {
+                    formatJson(entry);
+                } else {
+                    formatText(entry);
+                }
+                line.append('\n');
+                byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+                out.write(bytes, 0, bytes.length);
+                wrote = true;
+
+                entry.message = null;
+                entry.throwable = null;
+                entry.requestId = null;
+                consumed.lazySet(++sequence);
+            }
+            if (wrote) {
+                out.flush();
+            }
+        } finally {
+            draining.set(false);
+        }
+    }
+
+    private void formatText(Entry entry) {
+        line.append(Instant.ofEpochMilli(entry.timeMillis)).append(' ');
+        if (entry.requestId != null) {
+            line.append(entry.requestId).append(' ');
+        }
+        line.append(entry.level).append(' ')
+                .append(entry.loggerName).append(" - ")
+                .append(entry.message);
+        if (entry.throwable != null) {
+            line.append(" - ").append(entry.throwable);
+        }
+    }
+
+    private void formatJson(Entry entry) {
+        line.append("{\"timestamp\":\"").append(Instant.ofEpochMilli(entry.timeMillis))
+                .append("\",\"level\":\"").append(entry.level)
+                .append("\",\"logger\":");
+        appendJsonString(entry.loggerName);
+        if (entry.requestId != null) {
+            line.append(",\"requestId\":");
+            appendJsonString(entry.requestId);
+        }
+        line.append(",\"message\":");
+        appendJsonString(entry.message);
+        if (entry.throwable != null) {
+            line.append(",\"errorType\":");
+            appendJsonString(entry.throwable.getClass().getName());
+            line.append(",\"errorMessage\":");
+            appendJsonString(entry.throwable.getMessage());
+        }
+        line.append('}');
+    }
+
+    private void appendJsonString(String value) {
+        if (value == null) {
+            line.append("null");
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    line.append("\\\"");
+                    break;
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                case '\t':
+                    line.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+            }
+        }
+        line.append('"');
+    }
+}
@@ -0,0 +1,75 @@
+package uk.co.littlestickyleaves.aws.lambda.base.metrics;
+
+import java.io.PrintStream;
+import java.util.Map;
+
+/**
+ * Writes histogram snapshots as one CloudWatch Embedded Metric Format line, using EMF's
+ * Values/Counts form so that CloudWatch can compute percentiles from the bucket midpoints.
+ * See https://docs.aws.amazon.com/AmazonCloudWatch/latest/monitoring/CloudWatch_Embedded_Metric_Format_Specification.html
+ */
+final class EmbeddedMetricFormatWriter {
+
+    static final String NAMESPACE = "rjr-aws-lambda-base";
+
+    private final PrintStream out;
+    private final String functionName;
+
+    EmbeddedMetricFormatWriter(PrintStream out, String functionName) {
+        this.out = out;
+        this.functionName = functionName;
+    }
+
+    void write(Map<Phase, PhaseHistogram.Snapshot> snapshots, long timestampMillis) {
+        if (snapshots.isEmpty()) {
+            return;
+        }
+        StringBuilder line = new StringBuilder(512);
+        line.append("{\"_aws\":{\"Timestamp\":").append(timestampMillis)
+                .append(",\"CloudWatchMetrics\":[{\"Namespace\":\"").append(NAMESPACE)
+                .append("\",\"Dimensions\":[[\"FunctionName\"]],\"Metrics\":[");
+        boolean first = true;
+        for (Phase phase : snapshots.keySet()) {
+            if (!first) {
+                line.append(',');
+            }
+            first = false;
+            line.append("{\"Name\":\"").append(phase.getMetricName()).append("\",\"Unit\":\"Microseconds\"}");
+        }
+        line.append("]}]},\"FunctionName\":\"").append(escape(functionName)).append('"');
+
+        for (Map.Entry<Phase, PhaseHistogram.Snapshot> entry : snapshots.entrySet()) {
+            PhaseHistogram.Snapshot snapshot = entry.getValue();
+            line.append(",\"").append(entry.getKey().getMetricName()).append("\":{\"Values\":[");
+            StringBuilder counts = new StringBuilder();
+            double min = -1;
+            for (int i = 0; i < PhaseHistogram.BUCKET_COUNT; i++) {
+                long bucketCount = snapshot.getBucketCount(i);
+                if (bucketCount > 0) {
+                    double midpoint = Math.min(PhaseHistogram.bucketMidpoint(i), snapshot.getMax());
+                    if (min < 0) {
+                        min = PhaseHistogram.bucketLowerBound(i);
+                    } else {
+                        line.append(',');
+                        counts.append(',');
+                    }
+                    line.append(midpoint);
+                    counts.append(bucketCount);
+                }
+            }
+            line.append("],\"Counts\":[").append(counts)
+                    .append("],\"Min\":").append(min)
+                    .append(",\"Max\":").append(snapshot.getMax())
+                    .append(",\"Sum\":").append(snapshot.getSum())
+                    .append(",\"Count\":").append(snapshot.getCount())
+                    .append('}');
+        }
+        line.append('}');
+        out.println(line);
+        out.flush();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
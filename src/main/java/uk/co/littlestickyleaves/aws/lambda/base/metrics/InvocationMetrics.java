@@ -0,0 +1,101 @@
+package uk.co.littlestickyleaves.aws.lambda.base.metrics;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-phase invocation timings, held in one PhaseHistogram per Phase and written out periodically to stdout
+ * as CloudWatch Embedded Metric Format lines, so CloudWatch can work out percentiles without an agent.
+ * Recording never allocates. Code outside the runner (like the LambdaIOHandlers) records through the static
+ * recordActive(), which does nothing unless a LambdaRunner has activated a set of metrics.
+ */
+public final class InvocationMetrics {
+
+    private static final long DEFAULT_INTERVAL_SECONDS = 60;
+
+    private static volatile InvocationMetrics active;
+
+    private final PhaseHistogram[] histograms = new PhaseHistogram[Phase.values().length];
+    private final EmbeddedMetricFormatWriter writer;
+    private final long intervalNanos;
+    private volatile long lastEmitNanos = System.nanoTime();
+
+    public InvocationMetrics() {
+        this(System.out, DEFAULT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public InvocationMetrics(PrintStream out, long interval, TimeUnit unit) {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new PhaseHistogram();
+        }
+        String functionName = System.getenv("AWS_LAMBDA_FUNCTION_NAME");
+        this.writer = new EmbeddedMetricFormatWriter(out, functionName == null ? "unknown" : functionName);
+        this.intervalNanos = unit.toNanos(interval);
+    }
+
+    /**
+     * Makes these the metrics that recordActive() records to.
+     */
+    public void activate() {
+        active = this;
+    }
+
+    /**
+     * @return a start time to pass to recordActive, or 0 if no metrics are active (saving the clock read)
+     */
+    public static long startActive() {
+        return active == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Records the time since startNanos to the active metrics, if there are any.
+     * @param phase the phase being timed
+     * @param startNanos the value returned by startActive()
+     */
+    public static void recordActive(Phase phase, long startNanos) {
+        InvocationMetrics metrics = active;
+        if (metrics != null && startNanos != 0) {
+            metrics.record(phase, System.nanoTime() - startNanos);
+        }
+    }
+
+    public void record(Phase phase, long nanos) {
+        histograms[phase.ordinal()].recordNanos(nanos);
+    }
+
+    /**
+     * Writes out the metrics if the emission interval has passed since they were last written.
+     */
+    public void emitIfDue() {
+        if (System.nanoTime() - lastEmitNanos >= intervalNanos) {
+            synchronized (this) {
+                // another runner loop may have got here first
+                if (System.nanoTime() - lastEmitNanos >= intervalNanos) {
+                    emit();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes out and resets the metrics recorded so far, if there are any.
+     */
+    public synchronized void emit() {
+        lastEmitNanos = System.nanoTime();
+        Map<Phase, PhaseHistogram.Snapshot> snapshots = snapshotAndReset();
+        writer.write(snapshots, System.currentTimeMillis());
+    }
+
+    Map<Phase, PhaseHistogram.Snapshot> snapshotAndReset() {
+        Map<Phase, PhaseHistogram.Snapshot> snapshots = new EnumMap<>(Phase.class);
+        for (Phase phase : Phase.values()) {
+            PhaseHistogram.Snapshot snapshot = histograms[phase.ordinal()].snapshotAndReset();
+            if (snapshot.getCount() > 0) {
+                snapshots.put(phase, snapshot);
+            }
+        }
+        return snapshots;
+    }
+}
@@ -0,0 +1,48 @@
+package uk.co.littlestickyleaves.aws.lambda.base.metrics;
+
+/**
+ * The phases of an invocation which the runtime times, plus its init phase, and the durations Lambda itself reports
+ * through the Telemetry API, so that the two can be compared side by side.
+ */
+public enum Phase {
+
+    /** Time blocked in LambdaIOHandler.getLambdaInput(), including reading the body. */
+    POLL("PollTime"),
+
+    /** Time spent reading the input body, once the response headers have arrived. */
+    BODY_READ("BodyReadTime"),
+
+    /** Time spent in the LambdaWorker. */
+    HANDLE("HandleTime"),
+
+    /** Time spent turning an exception into the Lambda API's error json. */
+    ERROR_SERIALIZATION("ErrorSerializationTime"),
+
+    /** Time spent posting a successful output; not recorded with asyncCompletion, as the post isn't waited for. */
+    POST("PostTime"),
+
+    /** Time the runner spent in its init phase, before the first GET for input. */
+    INIT("InitTime"),
+
+    /** Lambda's figure for the whole init phase, from platform.initReport. */
+    PLATFORM_INIT("PlatformInitDuration"),
+
+    /** Lambda's figure for restoring from a snapshot, from platform.restoreReport. */
+    PLATFORM_RESTORE("PlatformRestoreDuration"),
+
+    /** Lambda's figure for an invocation, from its start to the runtime's response, from platform.runtimeDone. */
+    PLATFORM_RUNTIME("PlatformRuntimeDuration"),
+
+    /** Lambda's billed duration for an invocation, from platform.report. */
+    PLATFORM_BILLED("PlatformBilledDuration");
+
+    private final String metricName;
+
+    Phase(String metricName) {
+        this.metricName = metricName;
+    }
+
+    public String getMetricName() {
+        return metricName;
+    }
+}
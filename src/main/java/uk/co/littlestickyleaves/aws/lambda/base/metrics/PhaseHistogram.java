@@ -0,0 +1,145 @@
+package uk.co.littlestickyleaves.aws.lambda.base.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-bucket histogram of durations, in microseconds, which can be recorded to from any thread
+ * without locking or allocating.
+ * Buckets are logarithmic with four sub-buckets per power of two, so a recorded value is known to within about 20%.
+ */
+public final class PhaseHistogram {
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_POWER_OF_TWO = 40;
+    static final int BUCKET_COUNT = (MAX_POWER_OF_TWO - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param nanos a duration in nanoseconds
+     */
+    public void recordNanos(long nanos) {
+        record(nanos / 1000);
+    }
+
+    /**
+     * @param micros a duration in microseconds
+     */
+    public void record(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        counts.incrementAndGet(bucketIndex(micros));
+        count.incrementAndGet();
+        sum.addAndGet(micros);
+        long currentMax;
+        while (micros > (currentMax = max.get()) && !max.compareAndSet(currentMax, micros)) {
+            // another thread raised the max first; try again against the new value
+        }
+    }
+
+    /**
+     * Copies the current state into a Snapshot and empties this histogram, ready for the next period.
+     * Values recorded while this runs end up in either this snapshot or the next one.
+     * @return the values recorded since the last reset
+     */
+    public Snapshot snapshotAndReset() {
+        long[] snapshotCounts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshotCounts[i] = counts.getAndSet(i, 0);
+        }
+        return new Snapshot(snapshotCounts, count.getAndSet(0), sum.getAndSet(0), max.getAndSet(0));
+    }
+
+    static int bucketIndex(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int powerOfTwo = 63 - Long.numberOfLeadingZeros(micros);
+        if (powerOfTwo > MAX_POWER_OF_TWO) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) ((micros >>> (powerOfTwo - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return (powerOfTwo - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketLowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int powerOfTwo = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + subBucket) << (powerOfTwo - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * @return a single value to stand for everything in the bucket: its midpoint
+     */
+    static double bucketMidpoint(int index) {
+        long lower = bucketLowerBound(index);
+        long upper = index + 1 < BUCKET_COUNT ? bucketLowerBound(index + 1) : lower * 2;
+        return (lower + upper - 1) / 2.0;
+    }
+
+    /**
+     * An immutable copy of a PhaseHistogram's values over one period.
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return an estimate of the given percentile, in microseconds; 0 if nothing was recorded
+         */
+        public double getPercentile(double percentile) {
+            long total = 0;
+            for (long bucketCount : counts) {
+                total += bucketCount;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= Math.max(rank, 1)) {
+                    return Math.min(bucketMidpoint(i), max);
+                }
+            }
+            return max;
+        }
+
+        long getBucketCount(int index) {
+            return counts[index];
+        }
+    }
+}
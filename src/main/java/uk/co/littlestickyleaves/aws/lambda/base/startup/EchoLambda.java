@@ -0,0 +1,22 @@
+package uk.co.littlestickyleaves.aws.lambda.base.startup;
+
+import uk.co.littlestickyleaves.aws.lambda.base.LambdaRunner;
+import uk.co.littlestickyleaves.aws.lambda.base.LambdaWorker;
+import uk.co.littlestickyleaves.aws.lambda.base.RetryPolicy;
+import uk.co.littlestickyleaves.aws.lambda.base.api.LambdaIOHandlerFactory;
+
+/**
+ * The smallest possible lambda, which returns its input, used as the main class of the native and appcds builds
+ * when no other is given: it measures the startup cost of the runtime itself.
+ * It doesn't retry, so it exits as soon as StartupBenchmark closes the emulator under it.
+ */
+public class EchoLambda {
+
+    public static void main(String[] args) throws Exception {
+        LambdaRunner.builder((LambdaWorker) rawInput -> rawInput)
+                .lambdaIOHandler(LambdaIOHandlerFactory.keepAlive())
+                .retryPolicy(RetryPolicy.none())
+                .build()
+                .loop();
+    }
+}
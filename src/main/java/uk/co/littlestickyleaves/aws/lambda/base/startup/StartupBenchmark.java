@@ -0,0 +1,153 @@
+package uk.co.littlestickyleaves.aws.lambda.base.startup;
+
+import uk.co.littlestickyleaves.aws.lambda.base.emulator.EmulatedInvocation;
+import uk.co.littlestickyleaves.aws.lambda.base.emulator.EventReplayer;
+import uk.co.littlestickyleaves.aws.lambda.base.emulator.RuntimeApiEmulator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures cold start: launches a runtime process against a RuntimeApiEmulator and times how long it takes
+ * from launch to its first GET for input, and to its first response.
+ * With a recording of events it also replays them through each run, which is how the appcds and native-pgo
+ * builds train their class archive and profile.
+ * Usage: StartupBenchmark [--runs n] [--max-millis m] [--replay events.jsonl] [--invocations i] [--log file]
+ * -- command...
+ * The runtime's own output goes to the log file (startup-benchmark.log by default), since it ends each run
+ * with an exception when the emulator goes away.
+ * With --max-millis it exits with status 1 if the median time to first GET is over m milliseconds,
+ * so a cold-start regression fails the build.
+ */
+public class StartupBenchmark {
+
+    private static final long PROCESS_TIMEOUT_SECONDS = 60;
+
+    private final List<String> command;
+    private final Path replay;
+    private final int invocations;
+    private final File log;
+
+    public StartupBenchmark(List<String> command, Path replay, int invocations, File log) {
+        this.command = command;
+        this.replay = replay;
+        this.invocations = invocations;
+        this.log = log;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int runs = 5;
+        long maxMillis = 0;
+        Path replay = null;
+        int invocations = 0;
+        File log = new File("startup-benchmark.log");
+        int i = 0;
+        for (; i < args.length && !args[i].equals("--"); i += 2) {
+            switch (args[i]) {
+                case "--runs":
+                    runs = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--max-millis":
+                    maxMillis = Long.parseLong(args[i + 1]);
+                    break;
+                case "--replay":
+                    replay = Paths.get(args[i + 1]);
+                    break;
+                case "--invocations":
+                    invocations = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--log":
+                    log = new File(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        List<String> command = Arrays.asList(args).subList(Math.min(i + 1, args.length), args.length);
+        if (command.isEmpty()) {
+            throw new IllegalArgumentException("No command given after --");
+        }
+
+        StartupBenchmark benchmark = new StartupBenchmark(command, replay, invocations, log);
+        List<Long> firstNextMillis = new ArrayList<>();
+        for (int run = 0; run < runs; run++) {
+            Timings timings = benchmark.run();
+            firstNextMillis.add(timings.getFirstNextMillis());
+            System.out.printf("run %d: first /next after %d ms, first response after %d ms%n",
+                    run + 1, timings.getFirstNextMillis(), timings.getFirstResponseMillis());
+        }
+        Collections.sort(firstNextMillis);
+        long median = firstNextMillis.get(firstNextMillis.size() / 2);
+        System.out.printf("time to first /next over %d runs: min %d ms, median %d ms, max %d ms%n",
+                runs, firstNextMillis.get(0), median, firstNextMillis.get(firstNextMillis.size() - 1));
+        if (maxMillis > 0 && median > maxMillis) {
+            System.out.printf("median time to first /next is over the limit of %d ms%n", maxMillis);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Launches the command once and waits for it to exit, which it does when the emulator is closed under it.
+     * @return how long it took to start
+     */
+    public Timings run() throws IOException, InterruptedException {
+        EmulatedInvocation first;
+        Process process;
+        long launchNanos;
+        try (RuntimeApiEmulator emulator = new RuntimeApiEmulator(TimeUnit.SECONDS.toMillis(PROCESS_TIMEOUT_SECONDS))) {
+            first = emulator.submit("{}");
+            ProcessBuilder processBuilder = new ProcessBuilder(command)
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.appendTo(log));
+            processBuilder.environment().put("AWS_LAMBDA_RUNTIME_API", emulator.getEndpoint());
+            processBuilder.environment().put("AWS_LAMBDA_LOG_LEVEL", "FATAL");
+
+            launchNanos = System.nanoTime();
+            process = processBuilder.start();
+            try {
+                first.getCompletion().get(PROCESS_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                if (replay != null && invocations > 0) {
+                    System.out.println(EventReplayer.fromFile(emulator, replay)
+                            .replay(invocations, 0, TimeUnit.SECONDS.toMillis(PROCESS_TIMEOUT_SECONDS)));
+                }
+            } catch (Exception e) {
+                process.destroyForcibly();
+                throw new IOException("Runtime did not complete its first invocation: " + e, e);
+            }
+        }
+        // the emulator being closed is what makes the runtime exit
+        if (!process.waitFor(PROCESS_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+        }
+        return new Timings(first.getDispatchedNanos() - launchNanos, first.getCompletedNanos() - launchNanos);
+    }
+
+    /**
+     * How long one launch took to reach its first GET for input and its first response.
+     */
+    public static class Timings {
+
+        private final long firstNextNanos;
+        private final long firstResponseNanos;
+
+        Timings(long firstNextNanos, long firstResponseNanos) {
+            this.firstNextNanos = firstNextNanos;
+            this.firstResponseNanos = firstResponseNanos;
+        }
+
+        public long getFirstNextMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(firstNextNanos);
+        }
+
+        public long getFirstResponseMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(firstResponseNanos);
+        }
+    }
+}
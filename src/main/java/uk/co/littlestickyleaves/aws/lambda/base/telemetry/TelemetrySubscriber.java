@@ -0,0 +1,231 @@
+package uk.co.littlestickyleaves.aws.lambda.base.telemetry;
+
+import com.fasterxml.jackson.jr.ob.JSON;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import uk.co.littlestickyleaves.aws.lambda.base.LambdaLifecycle;
+import uk.co.littlestickyleaves.aws.lambda.base.api.ByteBufferOutputStream;
+import uk.co.littlestickyleaves.aws.lambda.base.error.LambdaException;
+import uk.co.littlestickyleaves.aws.lambda.base.log.LambdaLogger;
+import uk.co.littlestickyleaves.aws.lambda.base.log.LogLevel;
+import uk.co.littlestickyleaves.aws.lambda.base.metrics.InvocationMetrics;
+import uk.co.littlestickyleaves.aws.lambda.base.metrics.Phase;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An internal Lambda extension which subscribes to the Telemetry API's platform events, so that Lambda's own figures
+ * for init, restore, runtime and billed durations go into the runtime's InvocationMetrics, next to its own timings,
+ * and come out in the same Embedded Metric Format lines.
+ * Use it as a LambdaLifecycle (LambdaRunner.builder(worker).lifecycle(...)): in init() it starts a small HTTP
+ * listener, registers with the Extensions API, subscribes the listener to platform events, and starts a daemon
+ * thread polling the Extensions API for events, as Lambda expects every registered extension to.
+ * That all happens before the runner's first GET for input, as it has to.
+ * See https://docs.aws.amazon.com/lambda/latest/dg/telemetry-api.html.
+ */
+public class TelemetrySubscriber implements LambdaLifecycle, AutoCloseable {
+
+    private static final LambdaLogger LOGGER = LambdaLogger.getLogger(TelemetrySubscriber.class);
+
+    private static final String EXTENSION_NAME = "rjr-aws-lambda-base-telemetry";
+    private static final String EXTENSION = "/2020-01-01/extension/";
+    private static final String TELEMETRY = "/2022-07-01/telemetry";
+    private static final String EXTENSION_NAME_HEADER = "Lambda-Extension-Name";
+    private static final String EXTENSION_IDENTIFIER_HEADER = "Lambda-Extension-Identifier";
+    private static final String SANDBOX_HOST = "sandbox.localdomain";
+
+    private final String runtimeApiEndpoint;
+    private final InvocationMetrics invocationMetrics;
+    private final String listenerHost;
+
+    private HttpServer listener;
+    private Thread eventPoller;
+    private volatile boolean closed;
+
+    /**
+     * @param runtimeApiEndpoint the host:port of the Lambda API, which also serves the Extensions and Telemetry APIs
+     * @param invocationMetrics where to record the platform's durations
+     * @param listenerHost the host name Lambda should send events to; Lambda wants sandbox.localdomain
+     */
+    public TelemetrySubscriber(String runtimeApiEndpoint, InvocationMetrics invocationMetrics, String listenerHost) {
+        this.runtimeApiEndpoint = runtimeApiEndpoint;
+        this.invocationMetrics = invocationMetrics;
+        this.listenerHost = listenerHost;
+    }
+
+    /**
+     * @param invocationMetrics where to record the platform's durations; the runner's own, to see them together
+     * @return a subscriber for the Lambda API given by AWS_LAMBDA_RUNTIME_API
+     */
+    public static TelemetrySubscriber fromEnvironment(InvocationMetrics invocationMetrics) {
+        return new TelemetrySubscriber(System.getenv("AWS_LAMBDA_RUNTIME_API"), invocationMetrics, SANDBOX_HOST);
+    }
+
+    @Override
+    public void init() throws Exception {
+        listener = HttpServer.create(new InetSocketAddress(0), 0);
+        listener.createContext("/", this::receive);
+        listener.start();
+
+        String extensionId = register();
+        subscribe(extensionId);
+
+        eventPoller = new Thread(() -> pollEvents(extensionId), "telemetry-extension");
+        eventPoller.setDaemon(true);
+        eventPoller.start();
+    }
+
+    /**
+     * @return the port the listener for telemetry events is on, or -1 before init()
+     */
+    public int getListenerPort() {
+        return listener == null ? -1 : listener.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (listener != null) {
+            listener.stop(0);
+        }
+        if (eventPoller != null) {
+            eventPoller.interrupt();
+        }
+    }
+
+    private String register() throws Exception {
+        HttpURLConnection connection = open(EXTENSION + "register", "POST");
+        connection.setRequestProperty(EXTENSION_NAME_HEADER, EXTENSION_NAME);
+        send(connection, "{\"events\":[]}");
+        int status = connection.getResponseCode();
+        String extensionId = connection.getHeaderField(EXTENSION_IDENTIFIER_HEADER);
+        drain(connection);
+        if (status != 200 || extensionId == null) {
+            throw new LambdaException("Registering the telemetry extension resulted in status code " + status);
+        }
+        return extensionId;
+    }
+
+    private void subscribe(String extensionId) throws Exception {
+        HttpURLConnection connection = open(TELEMETRY, "PUT");
+        connection.setRequestProperty(EXTENSION_IDENTIFIER_HEADER, extensionId);
+        send(connection, "{\"schemaVersion\":\"2022-12-13\"," +
+                "\"destination\":{\"protocol\":\"HTTP\",\"URI\":\"http://" + listenerHost + ":" + getListenerPort() +
+                "\"},\"types\":[\"platform\"]," +
+                "\"buffering\":{\"maxItems\":1000,\"maxBytes\":262144,\"timeoutMs\":100}}");
+        int status = connection.getResponseCode();
+        drain(connection);
+        if (status != 200) {
+            throw new LambdaException("Subscribing to the Telemetry API resulted in status code " + status);
+        }
+    }
+
+    /**
+     * Keeps asking for the next extension event, which is how an extension tells Lambda it is ready.
+     * Having registered for no events, the call just waits, until the execution environment shuts down.
+     */
+    private void pollEvents(String extensionId) {
+        while (!closed) {
+            try {
+                HttpURLConnection connection = open(EXTENSION + "event/next", "GET");
+                connection.setRequestProperty(EXTENSION_IDENTIFIER_HEADER, extensionId);
+                int status = connection.getResponseCode();
+                drain(connection);
+                if (status != 200) {
+                    LOGGER.warn("Polling for extension events resulted in status code " + status);
+                    return;
+                }
+            } catch (IOException ex) {
+                if (!closed) {
+                    LOGGER.warn("Polling for extension events failed: " + ex.getMessage());
+                }
+                return;
+            }
+        }
+    }
+
+    private void receive(HttpExchange exchange) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            ByteBufferOutputStream content = new ByteBufferOutputStream();
+            content.writeFrom(body);
+            record(JSON.std.listFrom(StandardCharsets.UTF_8.decode(content.toByteBuffer()).toString()));
+        } catch (Exception ex) {
+            LOGGER.warn("Couldn't read telemetry events: " + ex.getMessage());
+        }
+        exchange.sendResponseHeaders(200, -1);
+        exchange.close();
+    }
+
+    /**
+     * Records the durations from a batch of platform events.
+     * @param events the batch, as parsed from its json
+     */
+    void record(List<Object> events) {
+        for (Object event : events) {
+            if (!(event instanceof Map)) {
+                continue;
+            }
+            Object type = ((Map<?, ?>) event).get("type");
+            Object record = ((Map<?, ?>) event).get("record");
+            Map<?, ?> metrics = record instanceof Map && ((Map<?, ?>) record).get("metrics") instanceof Map ?
+                    (Map<?, ?>) ((Map<?, ?>) record).get("metrics") : null;
+            if (metrics == null) {
+                continue;
+            }
+            if ("platform.initReport".equals(type)) {
+                recordMillis(Phase.PLATFORM_INIT, metrics.get("durationMs"));
+            } else if ("platform.restoreReport".equals(type)) {
+                recordMillis(Phase.PLATFORM_RESTORE, metrics.get("durationMs"));
+            } else if ("platform.runtimeDone".equals(type)) {
+                recordMillis(Phase.PLATFORM_RUNTIME, metrics.get("durationMs"));
+            } else if ("platform.report".equals(type)) {
+                recordMillis(Phase.PLATFORM_BILLED, metrics.get("billedDurationMs"));
+                if (LOGGER.isEnabled(LogLevel.DEBUG)) {
+                    LOGGER.debug("Platform report for " + ((Map<?, ?>) record).get("requestId") + ": " + metrics);
+                }
+            }
+        }
+    }
+
+    private void recordMillis(Phase phase, Object millis) {
+        if (millis instanceof Number) {
+            invocationMetrics.record(phase, (long) (((Number) millis).doubleValue() * 1000000));
+        }
+    }
+
+    private HttpURLConnection open(String path, String method) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://" + runtimeApiEndpoint + path)
+                .openConnection();
+        connection.setRequestMethod(method);
+        return connection;
+    }
+
+    private static void send(HttpURLConnection connection, String body) throws IOException {
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json");
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void drain(HttpURLConnection connection) throws IOException {
+        InputStream body = connection.getResponseCode() >= 400 ? connection.getErrorStream() :
+                connection.getInputStream();
+        if (body != null) {
+            try (InputStream in = body) {
+                byte[] buffer = new byte[1024];
+                while (in.read(buffer) != -1) {
+                    // discard
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package uk.co.littlestickyleaves.aws.lambda.base.trace;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * An X-Ray subsegment covering the runtime's part of one invocation, with a nested subsegment per phase
+ * (worker handle, response post), so traces show how much time the runtime adds around the business logic.
+ * It is only created for sampled traces: see start().
+ */
+public class RuntimeSubsegment {
+
+    private static final String NAME = "runtime";
+    private static final int MAX_PHASES = 4;
+
+    // X-Ray wants wall-clock times, but nanoTime is better for measuring, so one is anchored to the other
+    private static final long EPOCH_MICROS_AT_ORIGIN = System.currentTimeMillis() * 1000;
+    private static final long NANOS_AT_ORIGIN = System.nanoTime();
+
+    private final String traceRoot;
+    private final String parentId;
+    private final String[] phaseNames = new String[MAX_PHASES];
+    private final long[] phaseStarts = new long[MAX_PHASES];
+    private final long[] phaseEnds = new long[MAX_PHASES];
+    private int phaseCount;
+
+    private RuntimeSubsegment(String traceRoot, String parentId) {
+        this.traceRoot = traceRoot;
+        this.parentId = parentId;
+    }
+
+    /**
+     * @param traceHeader the invocation's Lambda-Runtime-Trace-Id header, possibly null
+     * @return a subsegment to record phases on, or null if the trace isn't sampled (or there's no trace)
+     */
+    public static RuntimeSubsegment start(String traceHeader) {
+        if (traceHeader == null) {
+            return null;
+        }
+        String root = null;
+        String parent = null;
+        boolean sampled = false;
+        for (String part : traceHeader.split(";")) {
+            int equals = part.indexOf('=');
+            if (equals < 0) {
+                continue;
+            }
+            String key = part.substring(0, equals).trim();
+            String value = part.substring(equals + 1).trim();
+            if (key.equals("Root")) {
+                root = value;
+            } else if (key.equals("Parent")) {
+                parent = value;
+            } else if (key.equals("Sampled")) {
+                sampled = value.equals("1");
+            }
+        }
+        return sampled && root != null && parent != null ? new RuntimeSubsegment(root, parent) : null;
+    }
+
+    /**
+     * Records a phase; any beyond the first few are ignored.
+     * @param name the phase's subsegment name
+     * @param startNanos when the phase started, from System.nanoTime()
+     * @param endNanos when the phase ended, from System.nanoTime()
+     */
+    public void addPhase(String name, long startNanos, long endNanos) {
+        if (phaseCount < MAX_PHASES) {
+            phaseNames[phaseCount] = name;
+            phaseStarts[phaseCount] = toEpochMicros(startNanos);
+            phaseEnds[phaseCount] = toEpochMicros(endNanos);
+            phaseCount++;
+        }
+    }
+
+    public int getPhaseCount() {
+        return phaseCount;
+    }
+
+    /**
+     * @return the subsegment as an X-Ray segment document, covering all the recorded phases
+     */
+    String toJson() {
+        long start = Long.MAX_VALUE;
+        long end = Long.MIN_VALUE;
+        for (int i = 0; i < phaseCount; i++) {
+            start = Math.min(start, phaseStarts[i]);
+            end = Math.max(end, phaseEnds[i]);
+        }
+        StringBuilder json = new StringBuilder(200 + phaseCount * 100);
+        json.append("{\"type\":\"subsegment\",\"name\":\"").append(NAME)
+                .append("\",\"id\":\"").append(newId())
+                .append("\",\"trace_id\":\"").append(traceRoot)
+                .append("\",\"parent_id\":\"").append(parentId).append('"');
+        times(json, start, end);
+        json.append(",\"subsegments\":[");
+        for (int i = 0; i < phaseCount; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"name\":\"").append(phaseNames[i]).append("\",\"id\":\"").append(newId()).append('"');
+            times(json, phaseStarts[i], phaseEnds[i]);
+            json.append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    private static long toEpochMicros(long nanos) {
+        return EPOCH_MICROS_AT_ORIGIN + (nanos - NANOS_AT_ORIGIN) / 1000;
+    }
+
+    private static void times(StringBuilder json, long startMicros, long endMicros) {
+        json.append(",\"start_time\":");
+        seconds(json, startMicros);
+        json.append(",\"end_time\":");
+        seconds(json, endMicros);
+    }
+
+    private static void seconds(StringBuilder json, long micros) {
+        String fraction = Long.toString(1000000 + micros % 1000000);
+        json.append(micros / 1000000).append('.').append(fraction, 1, fraction.length());
+    }
+
+    private static String newId() {
+        String hex = Long.toHexString(ThreadLocalRandom.current().nextLong());
+        return hex.length() == 16 ? hex : "0000000000000000".substring(hex.length()) + hex;
+    }
+}
@@ -0,0 +1,121 @@
+package uk.co.littlestickyleaves.aws.lambda.base.trace;
+
+import uk.co.littlestickyleaves.aws.lambda.base.log.LambdaLogger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Sends RuntimeSubsegments to the X-Ray daemon over UDP, from a background thread,
+ * so an invocation only pays for putting its subsegment on a queue.
+ * The sender takes whatever has queued up each time it wakes, and sends it one datagram per subsegment.
+ * If the queue is full, subsegments are dropped rather than holding up the runtime.
+ */
+public class XRaySubsegmentEmitter implements AutoCloseable {
+
+    private static final LambdaLogger LOGGER = LambdaLogger.getLogger(XRaySubsegmentEmitter.class);
+
+    private static final String DEFAULT_DAEMON_ADDRESS = "127.0.0.1:2000";
+    private static final byte[] HEADER = "{\"format\":\"json\",\"version\":1}\n".getBytes(StandardCharsets.US_ASCII);
+    private static final int QUEUE_CAPACITY = 1024;
+
+    private final DatagramChannel channel;
+    private final BlockingQueue<RuntimeSubsegment> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread sender;
+
+    private volatile boolean closed;
+
+    /**
+     * @param daemonAddress where the X-Ray daemon listens for UDP
+     * @throws IOException if the socket can't be opened
+     */
+    public XRaySubsegmentEmitter(InetSocketAddress daemonAddress) throws IOException {
+        this.channel = DatagramChannel.open();
+        this.channel.connect(daemonAddress);
+        this.sender = new Thread(this::send, "xray-subsegment-emitter");
+        this.sender.setDaemon(true);
+        this.sender.start();
+    }
+
+    /**
+     * @return an emitter for the daemon given by AWS_XRAY_DAEMON_ADDRESS, which Lambda sets when tracing is on
+     * @throws IOException if the socket can't be opened
+     */
+    public static XRaySubsegmentEmitter fromEnvironment() throws IOException {
+        return new XRaySubsegmentEmitter(parseDaemonAddress(System.getenv("AWS_XRAY_DAEMON_ADDRESS")));
+    }
+
+    /**
+     * @param daemonAddress host:port, or separate udp:host:port and tcp:host:port addresses
+     * @return the UDP address
+     */
+    static InetSocketAddress parseDaemonAddress(String daemonAddress) {
+        String udpAddress = DEFAULT_DAEMON_ADDRESS;
+        if (daemonAddress != null && !daemonAddress.trim().isEmpty()) {
+            for (String part : daemonAddress.trim().split("\\s+")) {
+                if (part.startsWith("udp:")) {
+                    udpAddress = part.substring(4);
+                    break;
+                } else if (!part.startsWith("tcp:")) {
+                    udpAddress = part;
+                }
+            }
+        }
+        int colon = udpAddress.lastIndexOf(':');
+        return new InetSocketAddress(udpAddress.substring(0, colon), Integer.parseInt(udpAddress.substring(colon + 1)));
+    }
+
+    /**
+     * Queues a subsegment to be sent; never blocks.
+     * @param subsegment the subsegment, or null, which is ignored
+     */
+    public void emit(RuntimeSubsegment subsegment) {
+        if (subsegment != null && subsegment.getPhaseCount() > 0 && !closed && !queue.offer(subsegment)) {
+            LOGGER.debug("Dropping X-Ray subsegment as the queue is full");
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        sender.interrupt();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.debug("Closing X-Ray socket failed with " + e.getMessage());
+        }
+    }
+
+    private void send() {
+        List<RuntimeSubsegment> batch = new ArrayList<>();
+        while (!closed) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch);
+            for (RuntimeSubsegment subsegment : batch) {
+                byte[] document = subsegment.toJson().getBytes(StandardCharsets.UTF_8);
+                ByteBuffer datagram = ByteBuffer.allocate(HEADER.length + document.length);
+                datagram.put(HEADER).put(document).flip();
+                try {
+                    channel.write(datagram);
+                } catch (IOException e) {
+                    if (closed) {
+                        return;
+                    }
+                    LOGGER.debug("Sending X-Ray subsegment failed with " + e.getMessage());
+                }
+            }
+            batch.clear();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package uk.co.littlestickyleaves.aws.lambda.base;
+
+import org.junit.After;
+import org.junit.Test;
+import uk.co.littlestickyleaves.aws.lambda.base.error.InvocationTimeoutException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class AsyncLambdaWorkerAdapterTest {
+
+    @After
+    public void tearDown() {
+        InvocationContext.set(null);
+    }
+
+    @Test
+    public void fanOutCallsOverlap() throws Exception {
+        // arrange
+        // each call waits until all three have started, so they can only finish if they run at once
+        CountDownLatch allStarted = new CountDownLatch(3);
+        AsyncLambdaWorkerAdapter testObject = new AsyncLambdaWorkerAdapter((String input, Executor executor) -> {
+            List<CompletableFuture<String>> calls = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                String part = input + i;
+                calls.add(CompletableFuture.supplyAsync(() -> {
+                    allStarted.countDown();
+                    try {
+                        allStarted.await();
+                    } catch (InterruptedException ex) {
+                        throw new IllegalStateException(ex);
+                    }
+                    return part;
+                }, executor));
+            }
+            return CompletableFuture.allOf(calls.toArray(new CompletableFuture[0]))
+                    .thenApply(done -> calls.stream().map(CompletableFuture::join).collect(Collectors.joining(",")));
+        });
+        InvocationContext.set(new InvocationContext("id", System.currentTimeMillis() + 5000, null));
+
+        // act
+        String result = testObject.handleRaw("call");
+
+        // assert
+        assertEquals("call0,call1,call2", result);
+    }
+
+    @Test(expected = InvocationTimeoutException.class)
+    public void deadlineAppliedToFuture() throws Exception {
+        // arrange
+        CompletableFuture<String> never = new CompletableFuture<>();
+        AsyncLambdaWorkerAdapter testObject = new AsyncLambdaWorkerAdapter((input, executor) -> never,
+                Runnable::run, 50);
+        InvocationContext.set(new InvocationContext("id", System.currentTimeMillis() + 150, null));
+
+        // act
+        try {
+            testObject.handleRaw("input");
+        } finally {
+            // assert
+            assertTrue(never.isCancelled());
+        }
+    }
+
+    @Test
+    public void timedOutTasksInterrupted() throws Exception {
+        // arrange
+        CountDownLatch interrupted = new CountDownLatch(1);
+        ThreadPoolExecutor pool = AsyncLambdaWorkerAdapter.boundedPool(1, 1);
+        AsyncLambdaWorkerAdapter testObject = new AsyncLambdaWorkerAdapter((input, executor) ->
+                CompletableFuture.supplyAsync(() -> {
+                    try {
+                        Thread.sleep(10000);
+                    } catch (InterruptedException ex) {
+                        interrupted.countDown();
+                    }
+                    return input;
+                }, executor), pool, 50);
+        InvocationContext.set(new InvocationContext("id", System.currentTimeMillis() + 150, null));
+
+        // act
+        try {
+            testObject.handleRaw("input");
+            fail("Expected an InvocationTimeoutException");
+        } catch (InvocationTimeoutException ex) {
+            // assert
+            assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void fullPoolRejectsRatherThanRunningOnCaller() throws Exception {
+        // arrange
+        CountDownLatch release = new CountDownLatch(1);
+        ThreadPoolExecutor pool = AsyncLambdaWorkerAdapter.boundedPool(1, 1);
+        Thread invocationThread = Thread.currentThread();
+        List<Thread> runOn = new ArrayList<>();
+        AsyncLambdaWorkerAdapter testObject = new AsyncLambdaWorkerAdapter((input, executor) -> {
+            for (int i = 0; i < 2; i++) {
+                executor.execute(() -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            return CompletableFuture.supplyAsync(() -> {
+                runOn.add(Thread.currentThread());
+                return input;
+            }, executor);
+        }, pool, 50);
+
+        // act
+        try {
+            testObject.handleRaw("input");
+            fail("Expected a RejectedExecutionException");
+        } catch (RejectedExecutionException ex) {
+            // assert
+            assertFalse(runOn.contains(invocationThread));
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void failureOfFutureThrownAsItself() throws Exception {
+        // arrange
+        AsyncLambdaWorkerAdapter testObject = new AsyncLambdaWorkerAdapter((input, executor) ->
+                CompletableFuture.<String>supplyAsync(() -> {
+                    throw new IllegalArgumentException("bad input");
+                }, executor).thenApply(String::toUpperCase));
+
+        // act
+        testObject.handleRaw("input");
+    }
+}
@@ -0,0 +1,135 @@
+package uk.co.littlestickyleaves.aws.lambda.base;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class CachingLambdaWorkerTest {
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    public void returnsCachedResultForRepeatedInput() throws Exception {
+        // arrange
+        CachingLambdaWorker testObject = new CachingLambdaWorker(countingWorker(), 60000);
+
+        // act
+        String first = testObject.handleRaw("{\"a\":1}");
+        String second = testObject.handleRaw("{\"a\":1}");
+        String other = testObject.handleRaw("{\"a\":2}");
+
+        // assert
+        assertEquals("{\"A\":1}", first);
+        assertEquals(first, second);
+        assertEquals("{\"A\":2}", other);
+        assertEquals(2, calls.get());
+        assertEquals(1, testObject.getHitCount());
+        assertEquals(2, testObject.getMissCount());
+    }
+
+    @Test
+    public void expiresEntriesAfterTtl() throws Exception {
+        // arrange
+        CachingLambdaWorker testObject = new CachingLambdaWorker(countingWorker(), 20);
+        testObject.handleRaw("input");
+        Thread.sleep(50);
+
+        // act
+        testObject.handleRaw("input");
+
+        // assert
+        assertEquals(2, calls.get());
+        assertEquals(0, testObject.getHitCount());
+        assertEquals(1, testObject.getEvictionCount());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedWhenFull() throws Exception {
+        // arrange
+        // room for two of these entries, but not three
+        CachingLambdaWorker testObject = new CachingLambdaWorker(countingWorker(), 60000, 400);
+        testObject.handleRaw("one");
+        testObject.handleRaw("two");
+        testObject.handleRaw("one");
+
+        // act
+        testObject.handleRaw("three");
+        testObject.handleRaw("one");
+        testObject.handleRaw("two");
+
+        // assert
+        assertEquals(2, testObject.size());
+        assertEquals(2, testObject.getHitCount());
+        assertEquals(4, testObject.getMissCount());
+        assertEquals(2, testObject.getEvictionCount());
+    }
+
+    @Test
+    public void doesNotCacheFailures() throws Exception {
+        // arrange
+        CachingLambdaWorker testObject = new CachingLambdaWorker(input -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("downstream unavailable");
+        }, 60000);
+
+        // act
+        for (int i = 0; i < 2; i++) {
+            try {
+                testObject.handleRaw("input");
+                fail("Expected the worker's exception");
+            } catch (IllegalStateException e) {
+                assertEquals("downstream unavailable", e.getMessage());
+            }
+        }
+
+        // assert
+        assertEquals(2, calls.get());
+        assertEquals(0, testObject.size());
+    }
+
+    @Test
+    public void coalescesConcurrentIdenticalInputs() throws Exception {
+        // arrange
+        CountDownLatch release = new CountDownLatch(1);
+        CachingLambdaWorker testObject = new CachingLambdaWorker(input -> {
+            calls.incrementAndGet();
+            release.await(5, TimeUnit.SECONDS);
+            return input.toUpperCase();
+        }, 60000);
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+
+        try {
+            // act
+            Future<String> first = executorService.submit(() -> testObject.handleRaw("same"));
+            while (calls.get() == 0) {
+                Thread.sleep(1);
+            }
+            Future<String> second = executorService.submit(() -> testObject.handleRaw("same"));
+            while (testObject.getCoalescedCount() == 0) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            // assert
+            assertEquals("SAME", first.get(5, TimeUnit.SECONDS));
+            assertEquals("SAME", second.get(5, TimeUnit.SECONDS));
+            assertEquals(1, calls.get());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private LambdaWorker countingWorker() {
+        return input -> {
+            calls.incrementAndGet();
+            return input.toUpperCase();
+        };
+    }
+}
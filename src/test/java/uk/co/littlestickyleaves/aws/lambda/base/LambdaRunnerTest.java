@@ -4,10 +4,32 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.mockito.InOrder;
+import uk.co.littlestickyleaves.aws.lambda.base.api.DeferredOutputFailure;
 import uk.co.littlestickyleaves.aws.lambda.base.api.LambdaIOHandler;
 import uk.co.littlestickyleaves.aws.lambda.base.api.LambdaInputWithId;
+import uk.co.littlestickyleaves.aws.lambda.base.api.LambdaResponseStream;
+import uk.co.littlestickyleaves.aws.lambda.base.error.InvocationTimeoutException;
 import uk.co.littlestickyleaves.aws.lambda.base.error.LambdaException;
+import uk.co.littlestickyleaves.aws.lambda.base.trace.XRaySubsegmentEmitter;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
 public class LambdaRunnerTest {
@@ -66,6 +88,30 @@ public class LambdaRunnerTest {
         verify(mockLambdaIOHandler).returnInitializationError(testEndingException);
     }
 
+    @Test
+    public void nullResultFailsInvocation() throws Exception {
+        // arrange
+        LambdaInputWithId inputWithId = new LambdaInputWithId("id", "rawInput");
+        Exception testEndingException = new LambdaException("Necessary to exit test");
+        when(mockLambdaIOHandler.getLambdaInput())
+                .thenReturn(inputWithId)
+                .thenThrow(testEndingException);
+        when(mockLambdaWorker.handleRaw("rawInput")).thenReturn(null);
+        doThrow(new LambdaException("All initialization errors cause system to exit"))
+                .when(mockLambdaIOHandler).returnInitializationError(any(Exception.class));
+        expectedException.expect(LambdaException.class);
+
+        // act
+        try {
+            testObject.loop();
+        } finally {
+            // assert
+            verify(mockLambdaIOHandler).returnInvocationError(eq("id"), isA(LambdaException.class));
+            verify(mockLambdaIOHandler, never()).returnLambdaOutput(anyString(), any(ByteBuffer.class));
+            verify(mockLambdaIOHandler, never()).returnLambdaOutput(anyString(), anyString());
+        }
+    }
+
     @Test
     public void successfulRun() throws Exception {
         // arrange
@@ -86,7 +132,578 @@ public class LambdaRunnerTest {
         testObject.loop();
 
         // assert
-        verify(mockLambdaIOHandler).returnLambdaOutput(id, rawOutput);
+        verify(mockLambdaIOHandler).returnLambdaOutput(id, utf8(rawOutput));
         verify(mockLambdaIOHandler).returnInitializationError(exception);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void successfulRunWithByteWorker() throws Exception {
+        // arrange
+        String id = "id";
+        byte[] rawInput = {'{', '"', (byte) 0xC3, (byte) 0xA9, '"', '}', '\r', '\n'};
+        LambdaInputWithId inputWithId = new LambdaInputWithId(id, ByteBuffer.wrap(rawInput));
+        Exception exception = new LambdaException("Necessary to exit test");
+        when(mockLambdaIOHandler.getLambdaInput())
+                .thenReturn(inputWithId)
+                .thenThrow(exception);
+        doThrow(new LambdaException("All initialization errors cause system to exit"))
+                .when(mockLambdaIOHandler).returnInitializationError(any(Exception.class));
+        LambdaByteWorker echoWorker = (InputStream input, OutputStream output) -> {
+            int b;
+            while ((b = input.read()) != -1) {
+                output.write(b);
+            }
+        };
+        testObject = new LambdaRunner(mockLambdaIOHandler, echoWorker);
+        expectedException.expect(LambdaException.class);
+
+        // act
+        try {
+            testObject.loop();
+        } finally {
+            // assert
+            InOrder inOrder = inOrder(mockLambdaIOHandler);
+            inOrder.verify(mockLambdaIOHandler).returnLambdaOutput(id, ByteBuffer.wrap(rawInput));
+            inOrder.verify(mockLambdaIOHandler).recycle(inputWithId);
+        }
+    }
+
+    @Test
+    public void streamingRun() throws Exception {
+        // arrange
+        String id = "id";
+        String rawInput = "rawInput";
+        LambdaInputWithId inputWithId = new LambdaInputWithId(id, rawInput);
+        Exception exception = new LambdaException("Necessary to exit test");
+        when(mockLambdaIOHandler.getLambdaInput())
+                .thenReturn(inputWithId)
+                .thenThrow(exception);
+        LambdaResponseStream mockResponseStream = mock(LambdaResponseStream.class);
+        when(mockLambdaIOHandler.openResponseStream(id)).thenReturn(mockResponseStream);
+        when(mockLambdaWorker.handleRaw(rawInput)).thenReturn("rawOutput");
+        doThrow(new LambdaException("All initialization errors cause system to exit"))
+                .when(mockLambdaIOHandler).returnInitializationError(any(Exception.class));
+        testObject = LambdaRunner.builder(mockLambdaWorker)
+                .lambdaIOHandler(mockLambdaIOHandler)
+                .responseStreaming(true)
+                .build();
+        expectedException.expect(LambdaException.class);
+
+        // act
+        try {
+            testObject.loop();
+        } finally {
+            // assert
+            verify(mockResponseStream).write("rawOutput".getBytes(StandardCharsets.UTF_8));
+            verify(mockResponseStream).complete();
+            verify(mockLambdaIOHandler, never()).returnLambdaOutput(anyString(), any(ByteBuffer.class));
+        }
+    }
+
+    @Test
+    public void asyncCompletionReconcilesFailedOutput() throws Exception {
+        // arrange
+        String id = "id";
+        String rawInput = "rawInput";
+        LambdaInputWithId inputWithId = new LambdaInputWithId(id, rawInput);
+        Exception exception = new LambdaException("Necessary to exit test");
+        when(mockLambdaIOHandler.getLambdaInput())
+                .thenReturn(inputWithId)
+                .thenThrow(exception);
+        Exception outputFailed = new LambdaException("Output rejected");
+        when(mockLambdaIOHandler.takeDeferredOutputFailures())
+                .thenReturn(Collections.emptyList())
+                .thenReturn(Collections.singletonList(new DeferredOutputFailure(id, outputFailed)));
+        when(mockLambdaWorker.handleRaw(rawInput)).thenReturn("rawOutput");
+        doThrow(new LambdaException("All initialization errors cause system to exit"))
+                .when(mockLambdaIOHandler).returnInitializationError(any(Exception.class));
+        testObject = LambdaRunner.builder(mockLambdaWorker)
+                .lambdaIOHandler(mockLambdaIOHandler)
+                .asyncCompletion(true)
+                .build();
+        expectedException.expect(LambdaException.class);
+
+        // act
+        try {
+            testObject.loop();
+        } finally {
+            // assert
+            verify(mockLambdaIOHandler).returnLambdaOutputDeferred(id, utf8("rawOutput"));
+            verify(mockLambdaIOHandler, never()).returnLambdaOutput(anyString(), any(ByteBuffer.class));
+            verify(mockLambdaIOHandler).returnInvocationError(id, outputFailed);
+            verify(mockLambdaIOHandler).returnInitializationError(exception);
+        }
+    }
+
+    @Test
+    public void refusedReportOfFailedOutputDoesNotStopLoop() throws Exception {
+        // arrange
+        Exception exception = new LambdaException("Necessary to exit test");
+        when(mockLambdaIOHandler.getLambdaInput())
+                .thenReturn(new LambdaInputWithId("id1", "input1"))
+                .thenReturn(new LambdaInputWithId("id2", "input2"))
+                .thenThrow(exception);
+        Exception outputFailed = new LambdaException("Output rejected");
+        when(mockLambdaIOHandler.takeDeferredOutputFailures())
+                .thenReturn(Collections.emptyList())
+                .thenReturn(Collections.singletonList(new DeferredOutputFailure("id1", outputFailed)))
+                .thenReturn(Collections.emptyList());
+        doThrow(new LambdaException("POSTing invocation error resulted in status code 400", 400))
+                .when(mockLambdaIOHandler).returnInvocationError("id1", outputFailed);
+        when(mockLambdaWorker.handleRaw(anyString())).thenReturn("rawOutput");
+        doThrow(new LambdaException("All initialization errors cause system to exit"))
+                .when(mockLambdaIOHandler).returnInitializationError(any(Exception.class));
+        testObject = LambdaRunner.builder(mockLambdaWorker)
+                .lambdaIOHandler(mockLambdaIOHandler)
+                .asyncCompletion(true)
+                .build();
+        expectedException.expect(LambdaException.class);
+
+        // act
+        try {
+            testObject.loop();
+        } finally {
+            // assert
+            verify(mockLambdaIOHandler).returnInvocationError("id1", outputFailed);
+            verify(mockLambdaIOHandler).returnLambdaOutputDeferred("id2", utf8("rawOutput"));
+            verify(mockLambdaIOHandler).returnInitializationError(exception);
+        }
+    }
+
+    @Test
+    public void initPhaseRunsBeforeFirstPoll() throws Exception {
+        // arrange
+        LambdaWorker lifecycleWorker = mock(LambdaWorker.class, withSettings().extraInterfaces(LambdaLifecycle.class));
+        LambdaLifecycle otherLifecycle = mock(LambdaLifecycle.class);
+        when(lifecycleWorker.handleRaw(anyString())).thenReturn("output");
+        Exception exception = new LambdaException("Necessary to exit test");
+        when(mockLambdaIOHandler.getLambdaInput()).thenThrow(exception);
+        doThrow(new LambdaException("All initialization errors cause system to exit"))
+                .when(mockLambdaIOHandler).returnInitializationError(any(Exception.class));
+        testObject = LambdaRunner.builder(lifecycleWorker)
+                .lambdaIOHandler(mockLambdaIOHandler)
+                .lifecycle(otherLifecycle)
+                .priming(2, "priming/sample-event.json")
+                .build();
+        expectedException.expect(LambdaException.class);
+
+        // act
+        try {
+            testObject.loop();
+        } finally {
+            // assert
+            InOrder inOrder = inOrder((LambdaLifecycle) lifecycleWorker, otherLifecycle, lifecycleWorker,
+                    mockLambdaIOHandler);
+            inOrder.verify((LambdaLifecycle) lifecycleWorker).init();
+            inOrder.verify(otherLifecycle).init();
+            inOrder.verify(lifecycleWorker, times(2)).handleRaw("{\"sample\":\"event\"}\n");
+            inOrder.verify(mockLambdaIOHandler).open();
+            inOrder.verify(mockLambdaIOHandler).getLambdaInput();
+        }
+    }
+
+    @Test
+    public void initFailureReported() throws Exception {
+        // arrange
+        LambdaLifecycle failingLifecycle = mock(LambdaLifecycle.class);
+        Exception initFailed = new IllegalStateException("Could not load configuration");
+        doThrow(initFailed).when(failingLifecycle).init();
+        testObject = LambdaRunner.builder(mockLambdaWorker)
+                .lambdaIOHandler(mockLambdaIOHandler)
+                .lifecycle(failingLifecycle)
+                .build();
+        expectedException.expect(LambdaException.class);
+
+        // act
+        try {
+            testObject.loop();
+        } finally {
+            // assert
+            verify(mockLambdaIOHandler).returnInitializationError(initFailed);
+            verify(mockLambdaIOHandler, never()).open();
+            verify(mockLambdaIOHandler, never()).getLambdaInput();
+        }
+    }
+
+    @Test
+    public void checkpointRestoreCycleRunsBeforeFirstPoll() throws Exception {
+        // arrange
+        LambdaLifecycle lifecycle = mock(LambdaLifecycle.class);
+        Exception exception = new LambdaException("Necessary to exit test");
+        when(mockLambdaIOHandler.getLambdaInput()).thenThrow(exception);
+        doThrow(new LambdaException("All initialization errors cause system to exit"))
+                .when(mockLambdaIOHandler).returnInitializationError(any(Exception.class));
+        testObject = LambdaRunner.builder(mockLambdaWorker)
+                .lambdaIOHandler(mockLambdaIOHandler)
+                .lifecycle(lifecycle)
+                .checkpointRestore(true)
+                .build();
+        expectedException.expect(LambdaException.class);
+
+        // act
+        try {
+            testObject.loop();
+        } finally {
+            // assert
+            InOrder inOrder = inOrder(lifecycle, mockLambdaIOHandler);
+            inOrder.verify(lifecycle).init();
+            inOrder.verify(lifecycle).beforeCheckpoint();
+            inOrder.verify(mockLambdaIOHandler).beforeCheckpoint();
+            inOrder.verify(mockLambdaIOHandler).restoreNext();
+            inOrder.verify(mockLambdaIOHandler).afterRestore();
+            inOrder.verify(lifecycle).afterRestore();
+            inOrder.verify(mockLambdaIOHandler).getLambdaInput();
+            verify(mockLambdaIOHandler, never()).open();
+        }
+    }
+
+    @Test
+    public void restoreFailureReported() throws Exception {
+        // arrange
+        LambdaLifecycle failingLifecycle = mock(LambdaLifecycle.class);
+        Exception restoreFailed = new IllegalStateException("Could not refresh credentials");
+        doThrow(restoreFailed).when(failingLifecycle).afterRestore();
+        testObject = LambdaRunner.builder(mockLambdaWorker)
+                .lambdaIOHandler(mockLambdaIOHandler)
+                .lifecycle(failingLifecycle)
+                .checkpointRestore(true)
+                .build();
+        expectedException.expect(LambdaException.class);
+
+        // act
+        try {
+            testObject.loop();
+        } finally {
+            // assert
+            verify(mockLambdaIOHandler).returnRestoreError(restoreFailed);
+            verify(mockLambdaIOHandler, never()).returnInitializationError(any(Exception.class));
+            verify(mockLambdaIOHandler, never()).getLambdaInput();
+        }
+    }
+
+    @Test
+    public void workerSeesInvocationContext() throws Exception {
+        // arrange
+        long deadline = System.currentTimeMillis() + 60000;
+        LambdaInputWithId inputWithId = new LambdaInputWithId("id", utf8("rawInput"), deadline);
+        Exception testEndingException = new LambdaException("Necessary to exit test");
+        when(mockLambdaIOHandler.getLambdaInput()).thenReturn(inputWithId).thenThrow(testEndingException);
+        doThrow(new LambdaException("All initialization errors cause system to exit"))
+                .when(mockLambdaIOHandler).returnInitializationError(any(Exception.class));
+        List<InvocationContext> seen = new ArrayList<>();
+        testObject = new LambdaRunner(mockLambdaIOHandler, (LambdaWorker) input -> {
+            seen.add(InvocationContext.current());
+            return "output";
+        });
+        expectedException.expect(LambdaException.class);
+
+        // act
+        try {
+            testObject.loop();
+        } finally {
+            // assert
+            assertEquals(1, seen.size());
+            assertEquals("id", seen.get(0).getAwsRequestId());
+            assertEquals(deadline, seen.get(0).getDeadlineEpochMillis());
+            assertTrue(seen.get(0).getRemainingTimeMillis() <= 60000);
+            assertNull(InvocationContext.current());
+        }
+    }
+
+    @Test
+    public void traceIdPassedOnAndSubsegmentEmitted() throws Exception {
+        // arrange
+        String traceId = "Root=1-5759e988-bd862e3fe1be46a994272793;Parent=53995c3f42cd8ad8;Sampled=1";
+        LambdaInputWithId inputWithId = new LambdaInputWithId("id", utf8("rawInput"), 0);
+        inputWithId.setTraceId(traceId);
+        Exception testEndingException = new LambdaException("Necessary to exit test");
+        when(mockLambdaIOHandler.getLambdaInput()).thenReturn(inputWithId).thenThrow(testEndingException);
+        doThrow(new LambdaException("All initialization errors cause system to exit"))
+                .when(mockLambdaIOHandler).returnInitializationError(any(Exception.class));
+        List<String> seen = new ArrayList<>();
+        try (DatagramSocket daemon = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+             XRaySubsegmentEmitter emitter = new XRaySubsegmentEmitter(
+                     new InetSocketAddress(InetAddress.getLoopbackAddress(), daemon.getLocalPort()))) {
+            daemon.setSoTimeout(5000);
+            testObject = LambdaRunner.builder((LambdaWorker) input -> {
+                        seen.add(InvocationContext.current().getTraceId());
+                        seen.add(System.getProperty("com.amazonaws.xray.traceHeader"));
+                        return "output";
+                    })
+                    .lambdaIOHandler(mockLambdaIOHandler)
+                    .xRaySubsegments(emitter)
+                    .build();
+
+            // act
+            try {
+                testObject.loop();
+                fail("Expected loop to exit");
+            } catch (LambdaException e) {
+                // the test ending exception
+            }
+
+            // assert
+            assertEquals(Arrays.asList(traceId, traceId), seen);
+            DatagramPacket packet = new DatagramPacket(new byte[65536], 65536);
+            daemon.receive(packet);
+            String datagram = new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8);
+            assertTrue(datagram.contains("\"trace_id\":\"1-5759e988-bd862e3fe1be46a994272793\""));
+            assertTrue(datagram.contains("{\"name\":\"handle\""));
+            assertTrue(datagram.contains("{\"name\":\"post\""));
+        }
+    }
+
+    @Test
+    public void asyncCompletionLeavesPostOutOfSubsegment() throws Exception {
+        // arrange
+        LambdaInputWithId inputWithId = new LambdaInputWithId("id", utf8("rawInput"), 0);
+        inputWithId.setTraceId("Root=1-5759e988-bd862e3fe1be46a994272793;Parent=53995c3f42cd8ad8;Sampled=1");
+        Exception testEndingException = new LambdaException("Necessary to exit test");
+        when(mockLambdaIOHandler.getLambdaInput()).thenReturn(inputWithId).thenThrow(testEndingException);
+        when(mockLambdaIOHandler.takeDeferredOutputFailures()).thenReturn(Collections.emptyList());
+        doThrow(new LambdaException("All initialization errors cause system to exit"))
+                .when(mockLambdaIOHandler).returnInitializationError(any(Exception.class));
+        when(mockLambdaWorker.handleRaw(anyString())).thenReturn("output");
+        try (DatagramSocket daemon = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+             XRaySubsegmentEmitter emitter = new XRaySubsegmentEmitter(
+                     new InetSocketAddress(InetAddress.getLoopbackAddress(), daemon.getLocalPort()))) {
+            daemon.setSoTimeout(5000);
+            testObject = LambdaRunner.builder(mockLambdaWorker)
+                    .lambdaIOHandler(mockLambdaIOHandler)
+                    .asyncCompletion(true)
+                    .xRaySubsegments(emitter)
+                    .build();
+
+            // act
+            try {
+                testObject.loop();
+                fail("Expected loop to exit");
+            } catch (LambdaException e) {
+                // the test ending exception
+            }
+
+            // assert
+            verify(mockLambdaIOHandler).returnLambdaOutputDeferred("id", utf8("output"));
+            DatagramPacket packet = new DatagramPacket(new byte[65536], 65536);
+            daemon.receive(packet);
+            String datagram = new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8);
+            assertTrue(datagram.contains("{\"name\":\"handle\""));
+            assertFalse(datagram.contains("{\"name\":\"post\""));
+        }
+    }
+
+    @Test
+    public void timeBudgetStopsSlowWorker() throws Exception {
+        // arrange
+        LambdaInputWithId inputWithId = new LambdaInputWithId("id", utf8("rawInput"),
+                System.currentTimeMillis() + 300);
+        Exception testEndingException = new LambdaException("Necessary to exit test");
+        when(mockLambdaIOHandler.getLambdaInput()).thenReturn(inputWithId).thenThrow(testEndingException);
+        doThrow(new LambdaException("All initialization errors cause system to exit"))
+                .when(mockLambdaIOHandler).returnInitializationError(any(Exception.class));
+        CountDownLatch interrupted = new CountDownLatch(1);
+        testObject = LambdaRunner.builder((LambdaWorker) input -> {
+                    try {
+                        Thread.sleep(10000);
+                    } catch (InterruptedException e) {
+                        interrupted.countDown();
+                        throw e;
+                    }
+                    return "too late";
+                })
+                .lambdaIOHandler(mockLambdaIOHandler)
+                .timeBudget(100)
+                .build();
+        expectedException.expect(LambdaException.class);
+
+        // act
+        try {
+            testObject.loop();
+        } finally {
+            // assert
+            verify(mockLambdaIOHandler).returnInvocationError(eq("id"), isA(InvocationTimeoutException.class));
+            verify(mockLambdaIOHandler, never()).returnLambdaOutput(anyString(), any(ByteBuffer.class));
+            assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void transientPollFailuresAfterWarmUpAreRetried() throws Exception {
+        // arrange
+        Exception transientFailure = new LambdaException("GET for input resulted in IOException",
+                new IOException("Connection reset"));
+        Exception testEndingException = new LambdaException("Necessary to exit test");
+        when(mockLambdaIOHandler.getLambdaInput())
+                .thenReturn(new LambdaInputWithId("id1", "input1"))
+                .thenThrow(transientFailure)
+                .thenThrow(transientFailure)
+                .thenReturn(new LambdaInputWithId("id2", "input2"))
+                .thenThrow(testEndingException);
+        doThrow(new LambdaException("All initialization errors cause system to exit"))
+                .when(mockLambdaIOHandler).returnInitializationError(any(Exception.class));
+        when(mockLambdaWorker.handleRaw(anyString())).thenReturn("output");
+        testObject = LambdaRunner.builder(mockLambdaWorker)
+                .lambdaIOHandler(mockLambdaIOHandler)
+                .retryPolicy(new RetryPolicy(3, 1, 5, 5, 0))
+                .build();
+        expectedException.expect(LambdaException.class);
+
+        // act
+        try {
+            testObject.loop();
+        } finally {
+            // assert
+            verify(mockLambdaIOHandler).returnLambdaOutput(eq("id1"), any(ByteBuffer.class));
+            verify(mockLambdaIOHandler).returnLambdaOutput(eq("id2"), any(ByteBuffer.class));
+            verify(mockLambdaIOHandler, never()).returnInitializationError(transientFailure);
+            verify(mockLambdaIOHandler).returnInitializationError(testEndingException);
+        }
+    }
+
+    @Test
+    public void sustainedPollFailuresGiveUp() throws Exception {
+        // arrange
+        Exception transientFailure = new LambdaException("GET for input resulted in IOException",
+                new IOException("Connection refused"));
+        when(mockLambdaIOHandler.getLambdaInput())
+                .thenReturn(new LambdaInputWithId("id1", "input1"))
+                .thenThrow(transientFailure);
+        when(mockLambdaWorker.handleRaw(anyString())).thenReturn("output");
+        testObject = LambdaRunner.builder(mockLambdaWorker)
+                .lambdaIOHandler(mockLambdaIOHandler)
+                .retryPolicy(new RetryPolicy(1, 1, 2, 3, 0))
+                .build();
+        expectedException.expect(LambdaException.class);
+        expectedException.expectMessage("runtime API has been unreachable for too long");
+
+        // act
+        try {
+            testObject.loop();
+        } finally {
+            // assert
+            verify(mockLambdaIOHandler, times(4)).getLambdaInput();
+            verify(mockLambdaIOHandler, never()).returnInitializationError(any(Exception.class));
+            assertEquals(RuntimeHealth.State.FAILED, testObject.getHealth().getState());
+        }
+    }
+
+    @Test
+    public void transientPostFailureRetried() throws Exception {
+        // arrange
+        Exception testEndingException = new LambdaException("Necessary to exit test");
+        when(mockLambdaIOHandler.getLambdaInput())
+                .thenReturn(new LambdaInputWithId("id", "input"))
+                .thenThrow(testEndingException);
+        doThrow(new LambdaException("All initialization errors cause system to exit"))
+                .when(mockLambdaIOHandler).returnInitializationError(any(Exception.class));
+        doThrow(new IOException("Broken pipe")).doNothing()
+                .when(mockLambdaIOHandler).returnLambdaOutput(eq("id"), any(ByteBuffer.class));
+        when(mockLambdaWorker.handleRaw(anyString())).thenReturn("output");
+        testObject = LambdaRunner.builder(mockLambdaWorker)
+                .lambdaIOHandler(mockLambdaIOHandler)
+                .retryPolicy(new RetryPolicy(3, 1, 5, 5, 0))
+                .build();
+        expectedException.expect(LambdaException.class);
+
+        // act
+        try {
+            testObject.loop();
+        } finally {
+            // assert
+            verify(mockLambdaIOHandler, times(2)).returnLambdaOutput(eq("id"), any(ByteBuffer.class));
+            verify(mockLambdaIOHandler, never()).returnInvocationError(anyString(), any(Exception.class));
+        }
+    }
+
+    @Test
+    public void retriedPostRefusedAsRepeatTakenAsDelivered() throws Exception {
+        // arrange
+        Exception testEndingException = new LambdaException("Necessary to exit test");
+        when(mockLambdaIOHandler.getLambdaInput())
+                .thenReturn(new LambdaInputWithId("id", "input"))
+                .thenThrow(testEndingException);
+        doThrow(new LambdaException("All initialization errors cause system to exit"))
+                .when(mockLambdaIOHandler).returnInitializationError(any(Exception.class));
+        doThrow(new IOException("Connection reset"))
+                .doThrow(new LambdaException("POSTing processed output resulted in status code 400", 400))
+                .when(mockLambdaIOHandler).returnLambdaOutput(eq("id"), any(ByteBuffer.class));
+        when(mockLambdaWorker.handleRaw(anyString())).thenReturn("output");
+        testObject = LambdaRunner.builder(mockLambdaWorker)
+                .lambdaIOHandler(mockLambdaIOHandler)
+                .retryPolicy(new RetryPolicy(3, 1, 5, 5, 0))
+                .build();
+        expectedException.expect(LambdaException.class);
+
+        // act
+        try {
+            testObject.loop();
+        } finally {
+            // assert
+            verify(mockLambdaIOHandler, times(2)).returnLambdaOutput(eq("id"), any(ByteBuffer.class));
+            verify(mockLambdaIOHandler, never()).returnInvocationError(anyString(), any(Exception.class));
+        }
+    }
+
+    @Test
+    public void concurrentLoopsHandleInvocationsAtOnce() throws Exception {
+        // arrange
+        LambdaIOHandler firstHandler = mock(LambdaIOHandler.class);
+        LambdaIOHandler secondHandler = mock(LambdaIOHandler.class);
+        CountDownLatch bothPosted = new CountDownLatch(2);
+        for (LambdaIOHandler handler : Arrays.asList(firstHandler, secondHandler)) {
+            String id = handler == firstHandler ? "first" : "second";
+            when(handler.getLambdaInput())
+                    .thenReturn(new LambdaInputWithId(id, id))
+                    .thenAnswer(invocation -> {
+                        bothPosted.await(5, TimeUnit.SECONDS);
+                        throw new LambdaException("Necessary to exit test");
+                    });
+            doAnswer(invocation -> {
+                bothPosted.countDown();
+                return null;
+            }).when(handler).returnLambdaOutput(eq(id), any(ByteBuffer.class));
+            doThrow(new LambdaException("All initialization errors cause system to exit"))
+                    .when(handler).returnInitializationError(any(Exception.class));
+        }
+        CountDownLatch bothInFlight = new CountDownLatch(2);
+        List<String> requestIds = Collections.synchronizedList(new ArrayList<>());
+        LambdaWorker worker = input -> {
+            requestIds.add(InvocationContext.current().getAwsRequestId());
+            bothInFlight.countDown();
+            if (!bothInFlight.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Invocations were not handled at once");
+            }
+            return input.toUpperCase();
+        };
+        testObject = LambdaRunner.builder(worker)
+                .lambdaIOHandlerFactory(Arrays.asList(firstHandler, secondHandler).iterator()::next)
+                .concurrency(2)
+                .build();
+        expectedException.expect(LambdaException.class);
+
+        // act
+        try {
+            testObject.loop();
+        } finally {
+            // assert
+            verify(firstHandler).returnLambdaOutput("first", utf8("FIRST"));
+            verify(secondHandler).returnLambdaOutput("second", utf8("SECOND"));
+            verify(firstHandler).open();
+            verify(secondHandler).open();
+            assertTrue(requestIds.containsAll(Arrays.asList("first", "second")));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void concurrencyNeedsAHandlerPerLoop() {
+        // act
+        LambdaRunner.builder(mockLambdaWorker)
+                .lambdaIOHandler(mockLambdaIOHandler)
+                .concurrency(2)
+                .build();
+    }
+
+    private static ByteBuffer utf8(String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
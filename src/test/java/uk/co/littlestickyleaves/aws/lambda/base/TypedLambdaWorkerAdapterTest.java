@@ -0,0 +1,129 @@
+package uk.co.littlestickyleaves.aws.lambda.base;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.junit.Test;
+import uk.co.littlestickyleaves.aws.lambda.base.api.ByteBufferInputStream;
+import uk.co.littlestickyleaves.aws.lambda.base.api.ByteBufferOutputStream;
+import uk.co.littlestickyleaves.aws.lambda.base.json.JsonCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class TypedLambdaWorkerAdapterTest {
+
+    @Test
+    public void handCodedCodecs() throws Exception {
+        // arrange
+        JsonCodec<Greeting> codec = new GreetingCodec();
+        TypedLambdaWorkerAdapter<Greeting, Greeting> testObject = new TypedLambdaWorkerAdapter<>(codec, codec,
+                input -> new Greeting(input.getName().toUpperCase(), input.getCount() + 1));
+
+        // act
+        String result = run(testObject, "{\"name\":\"world\",\"count\":1,\"ignored\":[1,2]}");
+
+        // assert
+        assertEquals("{\"name\":\"WORLD\",\"count\":2}", result);
+    }
+
+    @Test
+    public void beanFallback() throws Exception {
+        // arrange
+        TypedLambdaWorkerAdapter<Greeting, Map> testObject = new TypedLambdaWorkerAdapter<>(Greeting.class, Map.class,
+                input -> Collections.singletonMap("greeting", "hello " + input.getName()));
+
+        // act
+        String result = run(testObject, "{\"name\":\"bean\",\"count\":3}");
+
+        // assert
+        assertEquals("{\"greeting\":\"hello bean\"}", result);
+    }
+
+    @Test
+    public void emptyInputAndNullOutput() throws Exception {
+        // arrange
+        Object[] seen = {"not called"};
+        TypedLambdaWorkerAdapter<String, String> testObject = new TypedLambdaWorkerAdapter<>(String.class,
+                String.class, input -> {
+            seen[0] = input;
+            return null;
+        });
+
+        // act
+        String result = run(testObject, "");
+
+        // assert
+        assertNull(seen[0]);
+        assertEquals("", result);
+    }
+
+    private static String run(LambdaByteWorker worker, String input) throws Exception {
+        ByteBufferOutputStream output = new ByteBufferOutputStream();
+        worker.handle(new ByteBufferInputStream(ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8))), output);
+        return StandardCharsets.UTF_8.decode(output.toByteBuffer()).toString();
+    }
+
+    public static class Greeting {
+
+        private String name;
+        private int count;
+
+        public Greeting() {
+        }
+
+        Greeting(String name, int count) {
+            this.name = name;
+            this.count = count;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+    }
+
+    private static class GreetingCodec implements JsonCodec<Greeting> {
+
+        @Override
+        public Greeting read(JsonParser parser) throws IOException {
+            Greeting greeting = new Greeting();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("name".equals(field)) {
+                    greeting.setName(parser.getText());
+                } else if ("count".equals(field)) {
+                    greeting.setCount(parser.getIntValue());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return greeting;
+        }
+
+        @Override
+        public void write(Greeting value, JsonGenerator generator) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("name", value.getName());
+            generator.writeNumberField("count", value.getCount());
+            generator.writeEndObject();
+        }
+    }
+}
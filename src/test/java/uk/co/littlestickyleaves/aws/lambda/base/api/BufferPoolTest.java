@@ -0,0 +1,88 @@
+package uk.co.littlestickyleaves.aws.lambda.base.api;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class BufferPoolTest {
+
+    private BufferPool testObject;
+
+    @Before
+    public void setUp() {
+        testObject = new BufferPool();
+    }
+
+    @Test
+    public void releasedBufferIsReused() {
+        // arrange
+        byte[] first = testObject.acquire(100);
+        testObject.release(first);
+
+        // act
+        byte[] second = testObject.acquire(200);
+
+        // assert
+        assertSame(first, second);
+        assertEquals(4096, second.length);
+    }
+
+    @Test
+    public void newBuffersFollowObservedPayloadSize() {
+        // arrange
+        testObject.observe(10000);
+
+        // act
+        byte[] result = testObject.acquire(10);
+
+        // assert
+        assertEquals(16384, result.length);
+        assertEquals(10000, testObject.getTypicalSize());
+    }
+
+    @Test
+    public void typicalSizeDecaysAfterLargePayload() {
+        // arrange
+        testObject.observe(100000);
+
+        // act
+        for (int i = 0; i < 100; i++) {
+            testObject.observe(100);
+        }
+
+        // assert
+        assertTrue(testObject.getTypicalSize() < 4096);
+    }
+
+    @Test
+    public void oversizedBufferNotKept() {
+        // arrange
+        byte[] huge = testObject.acquire(1 << 20);
+        testObject.release(huge);
+
+        // act
+        byte[] result = testObject.acquire(1 << 20);
+
+        // assert
+        assertNotSame(huge, result);
+    }
+
+    @Test
+    public void bufferReleasedTwiceOnlyPooledOnce() {
+        // arrange
+        byte[] buffer = testObject.acquire(10);
+        testObject.release(buffer);
+        testObject.release(ByteBuffer.wrap(buffer));
+
+        // act
+        byte[] first = testObject.acquire(10);
+        byte[] second = testObject.acquire(10);
+
+        // assert
+        assertSame(buffer, first);
+        assertNotSame(buffer, second);
+    }
+}
@@ -0,0 +1,97 @@
+package uk.co.littlestickyleaves.aws.lambda.base.api;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class HttpResponseReaderTest {
+
+    private HttpResponseReader testObject;
+
+    @Before
+    public void setUp() {
+        testObject = new HttpResponseReader("Lambda-Runtime-Aws-Request-Id", "Lambda-Runtime-Deadline-Ms");
+    }
+
+    @Test
+    public void contentLengthBodyAndCapturedHeaders() throws Exception {
+        // arrange
+        ReadableByteChannel channel = channel("HTTP/1.1 200 OK\r\n" +
+                "lambda-runtime-aws-request-id:  abc-123 \r\n" +
+                "Content-Type: application/json\r\n" +
+                "Content-Length: 7\r\n" +
+                "\r\n" +
+                "{\"a\":1}");
+
+        // act
+        HttpResponse result = testObject.read(channel);
+
+        // assert
+        assertEquals(200, result.getStatus());
+        assertEquals("abc-123", result.getHeaderValue(0));
+        assertNull(result.getHeaderValue(1));
+        assertEquals("{\"a\":1}", result.getBodyAsString());
+        assertTrue(result.isKeepAlive());
+    }
+
+    @Test
+    public void chunkedBodyFollowedBySecondResponse() throws Exception {
+        // arrange
+        ReadableByteChannel channel = channel("HTTP/1.1 200 OK\r\n" +
+                "Transfer-Encoding: chunked\r\n" +
+                "\r\n" +
+                "5\r\nhello\r\n" +
+                "7;ext=1\r\n, world\r\n" +
+                "0\r\n" +
+                "\r\n" +
+                "HTTP/1.1 202 Accepted\r\n" +
+                "Connection: close\r\n" +
+                "Content-Length: 0\r\n" +
+                "\r\n");
+
+        // act
+        HttpResponse first = testObject.read(channel);
+        HttpResponse second = testObject.read(channel);
+
+        // assert
+        assertEquals("hello, world", first.getBodyAsString());
+        assertEquals(202, second.getStatus());
+        assertFalse(second.isKeepAlive());
+        assertEquals(0, second.getBody().remaining());
+    }
+
+    @Test
+    public void bodyLargerThanBuffer() throws Exception {
+        // arrange
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            body.append("0123456789");
+        }
+        ReadableByteChannel channel = channel("HTTP/1.1 200 OK\r\n" +
+                "Content-Length: " + body.length() + "\r\n" +
+                "\r\n" +
+                body);
+
+        // act
+        HttpResponse result = testObject.read(channel);
+
+        // assert
+        assertEquals(body.toString(), result.getBodyAsString());
+    }
+
+    @Test(expected = EOFException.class)
+    public void connectionClosedBeforeResponse() throws Exception {
+        testObject.read(channel(""));
+    }
+
+    private static ReadableByteChannel channel(String content) {
+        return Channels.newChannel(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+    }
+}
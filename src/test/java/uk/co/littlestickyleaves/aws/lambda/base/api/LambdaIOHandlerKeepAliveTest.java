@@ -0,0 +1,175 @@
+package uk.co.littlestickyleaves.aws.lambda.base.api;
+
+import com.github.tomakehurst.wiremock.http.Fault;
+import org.junit.Test;
+import uk.co.littlestickyleaves.aws.lambda.base.error.ErrorJsonProvider;
+import uk.co.littlestickyleaves.aws.lambda.base.error.LambdaException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.*;
+
+/**
+ * Runs the Open API specification tests from LambdaIOHandlerTest against LambdaIOHandlerKeepAlive,
+ * plus some checks that only make sense for a persistent connection.
+ */
+public class LambdaIOHandlerKeepAliveTest extends LambdaIOHandlerTest {
+
+    @Override
+    LambdaIOHandler createTestObject() {
+        return new LambdaIOHandlerKeepAlive(LOCALHOST_PORT, new ErrorJsonProvider());
+    }
+
+    // several exchanges over the same handler, with a body that isn't just one line
+    @Test
+    public void repeatedRoundTrips() throws Exception {
+        // arrange
+        LambdaIOHandler handler = createTestObject();
+        String lambdaInputString = "{\n  \"line\": 1,\r\n  \"line\": 2\n}";
+        stubFor(get(urlEqualTo("/2018-06-01/runtime/invocation/next"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Lambda-Runtime-Aws-Request-Id", "awsId")
+                        .withBody(lambdaInputString)));
+        stubFor(post(urlEqualTo("/2018-06-01/runtime/invocation/awsId/response"))
+                .withHeader("Content-Type", equalTo("application/json; utf-8"))
+                .willReturn(status(202)));
+
+        // act
+        for (int i = 0; i < 5; i++) {
+            LambdaInputWithId result = handler.getLambdaInput();
+            assertEquals(lambdaInputString, result.getRawInput());
+            handler.returnLambdaOutput(result.getAwsRequestId(), "output " + i);
+        }
+
+        // assert
+        verify(5, getRequestedFor(urlEqualTo("/2018-06-01/runtime/invocation/next")));
+        for (int i = 0; i < 5; i++) {
+            verify(postRequestedFor(urlEqualTo("/2018-06-01/runtime/invocation/awsId/response"))
+                    .withRequestBody(equalTo("output " + i)));
+        }
+    }
+
+    // output bigger than one chunk is streamed with chunked transfer encoding
+    @Test
+    public void openResponseStreamChunked() throws Exception {
+        // arrange
+        LambdaIOHandler handler = createTestObject();
+        String piece = "0123456789abcdef";
+        StringBuilder expected = new StringBuilder();
+        stubFor(post(urlEqualTo("/2018-06-01/runtime/invocation/awsId/response"))
+                .withHeader("Lambda-Runtime-Function-Response-Mode", equalTo("streaming"))
+                .withHeader("Transfer-Encoding", equalTo("chunked"))
+                .willReturn(status(202)));
+
+        // act
+        LambdaResponseStream responseStream = handler.openResponseStream("awsId");
+        for (int i = 0; i < 10000; i++) {
+            responseStream.write(piece.getBytes(StandardCharsets.UTF_8));
+            expected.append(piece);
+        }
+        responseStream.complete();
+
+        // assert
+        verify(postRequestedFor(urlEqualTo("/2018-06-01/runtime/invocation/awsId/response"))
+                .withRequestBody(equalTo(expected.toString())));
+    }
+
+    // once output has been streamed, a failure is reported on the same request rather than to /error
+    @Test
+    public void openResponseStreamFailsPartWay() throws Exception {
+        // arrange
+        LambdaIOHandler handler = createTestObject();
+        stubFor(post(urlEqualTo("/2018-06-01/runtime/invocation/awsId/response"))
+                .withHeader("Lambda-Runtime-Function-Response-Mode", equalTo("streaming"))
+                .willReturn(status(202)));
+
+        // act
+        LambdaResponseStream responseStream = handler.openResponseStream("awsId");
+        responseStream.write("partial output".getBytes(StandardCharsets.UTF_8));
+        responseStream.flush();
+        responseStream.fail(new LambdaException("Failed part way"));
+
+        // assert
+        verify(postRequestedFor(urlEqualTo("/2018-06-01/runtime/invocation/awsId/response"))
+                .withRequestBody(equalTo("partial output")));
+        verify(0, postRequestedFor(urlEqualTo("/2018-06-01/runtime/invocation/awsId/error")));
+    }
+
+    // deferred output is acknowledged when the next input is fetched
+    @Test
+    public void returnLambdaOutputDeferredThenNext() throws Exception {
+        // arrange
+        LambdaIOHandler handler = createTestObject();
+        stubFor(post(urlEqualTo("/2018-06-01/runtime/invocation/firstId/response"))
+                .willReturn(status(202)));
+        stubFor(get(urlEqualTo("/2018-06-01/runtime/invocation/next"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Lambda-Runtime-Aws-Request-Id", "secondId")
+                        .withBody("body")));
+
+        // act
+        handler.returnLambdaOutputDeferred("firstId", ByteBuffer.wrap("first output".getBytes(StandardCharsets.UTF_8)));
+        LambdaInputWithId result = handler.getLambdaInput();
+
+        // assert
+        assertEquals("secondId", result.getAwsRequestId());
+        assertTrue(handler.takeDeferredOutputFailures().isEmpty());
+        verify(postRequestedFor(urlEqualTo("/2018-06-01/runtime/invocation/firstId/response"))
+                .withRequestBody(equalTo("first output")));
+    }
+
+    // a rejected deferred output is handed back, with the same message as a synchronous post would give
+    @Test
+    public void returnLambdaOutputDeferred413() throws Exception {
+        // arrange
+        LambdaIOHandler handler = createTestObject();
+        stubFor(post(urlEqualTo("/2018-06-01/runtime/invocation/firstId/response"))
+                .willReturn(status(413)
+                        .withBody("Payload too large")));
+        stubFor(get(urlEqualTo("/2018-06-01/runtime/invocation/next"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Lambda-Runtime-Aws-Request-Id", "secondId")
+                        .withBody("body")));
+
+        // act
+        handler.returnLambdaOutputDeferred("firstId", ByteBuffer.wrap("too big".getBytes(StandardCharsets.UTF_8)));
+        LambdaInputWithId result = handler.getLambdaInput();
+        List<DeferredOutputFailure> failures = handler.takeDeferredOutputFailures();
+
+        // assert
+        assertEquals("secondId", result.getAwsRequestId());
+        assertEquals(1, failures.size());
+        assertEquals("firstId", failures.get(0).getAwsRequestId());
+        assertEquals("POSTing processed output for awsRequestId firstId resulted in status code 413 " +
+                "with message: 'Payload too large'. Exiting with exception", failures.get(0).getException().getMessage());
+        assertTrue(handler.takeDeferredOutputFailures().isEmpty());
+    }
+
+    // a lost acknowledgement leaves the output's outcome unknown, so it isn't reported as a failure
+    @Test
+    public void returnLambdaOutputDeferredAcknowledgementLost() throws Exception {
+        // arrange
+        LambdaIOHandler handler = createTestObject();
+        stubFor(post(urlEqualTo("/2018-06-01/runtime/invocation/firstId/response"))
+                .willReturn(aResponse().withFault(Fault.CONNECTION_RESET_BY_PEER)));
+        stubFor(get(urlEqualTo("/2018-06-01/runtime/invocation/next"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Lambda-Runtime-Aws-Request-Id", "secondId")
+                        .withBody("body")));
+
+        // act
+        handler.returnLambdaOutputDeferred("firstId", ByteBuffer.wrap("output".getBytes(StandardCharsets.UTF_8)));
+        LambdaInputWithId result = handler.getLambdaInput();
+
+        // assert
+        assertEquals("secondId", result.getAwsRequestId());
+        assertTrue(handler.takeDeferredOutputFailures().isEmpty());
+    }
+}
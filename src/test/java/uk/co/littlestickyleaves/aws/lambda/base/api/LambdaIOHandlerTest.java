@@ -1,6 +1,7 @@
 package uk.co.littlestickyleaves.aws.lambda.base.api;
 
 import com.fasterxml.jackson.jr.ob.JSON;
+import com.github.tomakehurst.wiremock.http.Fault;
 import com.github.tomakehurst.wiremock.http.Request;
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
 import com.github.tomakehurst.wiremock.matching.MatchResult;
@@ -10,10 +11,12 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import uk.co.littlestickyleaves.aws.lambda.base.error.ErrorJsonProvider;
-import uk.co.littlestickyleaves.aws.lambda.base.error.ErrorJsonShape;
 import uk.co.littlestickyleaves.aws.lambda.base.error.LambdaException;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static org.junit.Assert.*;
@@ -30,7 +33,7 @@ public class LambdaIOHandlerTest {
 
     private static final String LOCALHOST = "localhost";
     private static final int HOST_PORT = 8089;
-    private static final String LOCALHOST_PORT = LOCALHOST + ":" + HOST_PORT;
+    static final String LOCALHOST_PORT = LOCALHOST + ":" + HOST_PORT;
 
     private static final JSON JSON_JR = JSON.std;
 
@@ -40,7 +43,11 @@ public class LambdaIOHandlerTest {
 
     @Before
     public void setUp() throws Exception {
-        testObject = new LambdaIOHandlerSimple(LOCALHOST_PORT, new ErrorJsonProvider());
+        testObject = createTestObject();
+    }
+
+    LambdaIOHandler createTestObject() {
+        return new LambdaIOHandlerSimple(LOCALHOST_PORT, new ErrorJsonProvider());
     }
 
     @Rule
@@ -67,6 +74,60 @@ public class LambdaIOHandlerTest {
         assertEquals(lambdaInputString, result.getRawInput());
     }
 
+    // connection reset -- the cause is kept, so the runner can tell it's worth retrying
+    @Test
+    public void getLambdaInputConnectionReset() throws Exception {
+        // arrange
+        stubFor(get(urlEqualTo("/2018-06-01/runtime/invocation/next"))
+                .willReturn(aResponse().withFault(Fault.CONNECTION_RESET_BY_PEER)));
+
+        // act
+        try {
+            testObject.getLambdaInput();
+            fail("Expected a LambdaException");
+        } catch (LambdaException exception) {
+            // assert
+            assertTrue(exception.getCause() instanceof IOException);
+        }
+    }
+
+    // 200 ok with a deadline -- the deadline is passed on
+    @Test
+    public void getLambdaInput200WithDeadline() throws Exception {
+        // arrange
+        stubFor(get(urlEqualTo("/2018-06-01/runtime/invocation/next"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Lambda-Runtime-Aws-Request-Id", AWS_ID)
+                        .withHeader("Lambda-Runtime-Deadline-Ms", "1542409706888")
+                        .withBody("body")));
+
+        // act
+        LambdaInputWithId result = testObject.getLambdaInput();
+
+        // assert
+        assertEquals(1542409706888L, result.getDeadlineEpochMillis());
+    }
+
+    // 200 ok with a trace id -- the trace id is passed on
+    @Test
+    public void getLambdaInput200WithTraceId() throws Exception {
+        // arrange
+        String traceId = "Root=1-5759e988-bd862e3fe1be46a994272793;Parent=53995c3f42cd8ad8;Sampled=1";
+        stubFor(get(urlEqualTo("/2018-06-01/runtime/invocation/next"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Lambda-Runtime-Aws-Request-Id", AWS_ID)
+                        .withHeader("Lambda-Runtime-Trace-Id", traceId)
+                        .withBody("body")));
+
+        // act
+        LambdaInputWithId result = testObject.getLambdaInput();
+
+        // assert
+        assertEquals(traceId, result.getTraceId());
+    }
+
     // 200 ok but no aws request id header -- no point in continuing
     @Test
     public void getLambdaInput200NoId() throws Exception {
@@ -213,6 +274,45 @@ public class LambdaIOHandlerTest {
     }
 
 
+    // 202 accepted for output written through a response stream -- runtime continues
+    @Test
+    public void openResponseStream202() throws Exception {
+        // arrange
+        stubFor(post(urlEqualTo("/2018-06-01/runtime/invocation/" + AWS_ID + "/response"))
+                .willReturn(status(202)));
+
+        // act
+        LambdaResponseStream responseStream = testObject.openResponseStream(AWS_ID);
+        responseStream.write("lambdaResult".getBytes(StandardCharsets.UTF_8));
+        responseStream.write("String".getBytes(StandardCharsets.UTF_8));
+        responseStream.close();
+        responseStream.complete();
+
+        // assert
+        verify(postRequestedFor(urlEqualTo("/2018-06-01/runtime/invocation/" + AWS_ID + "/response"))
+                .withRequestBody(equalTo("lambdaResultString")));
+    }
+
+    // a failure before any output is sent through a response stream is posted as an invocation error
+    @Test
+    public void openResponseStreamFailsBeforeOutput() throws Exception {
+        // arrange
+        String lambdaError = "Something wrong happened";
+        Exception exception = new LambdaException(lambdaError);
+        stubFor(post(urlEqualTo("/2018-06-01/runtime/invocation/" + AWS_ID + "/error"))
+                .withHeader("Lambda-Runtime-Function-Error-Type", equalTo("Unhandled"))
+                .willReturn(status(202)));
+
+        // act
+        LambdaResponseStream responseStream = testObject.openResponseStream(AWS_ID);
+        responseStream.fail(exception);
+
+        // assert
+        verify(postRequestedFor(urlMatching("/2018-06-01/runtime/invocation/" + AWS_ID + "/error"))
+                .andMatching(bodyMatchesAwsErrorFormat(exception.getClass().getName(), lambdaError)));
+        verify(0, postRequestedFor(urlEqualTo("/2018-06-01/runtime/invocation/" + AWS_ID + "/response")));
+    }
+
     ///////// Tests for "/runtime/invocation/{AwsRequestId}/error" /////////
 
     // 202 accepted -- runtime continues
@@ -384,14 +484,89 @@ public class LambdaIOHandlerTest {
                 .andMatching(bodyMatchesAwsErrorFormat(exception.getClass().getName(), lambdaError)));
     }
 
-    private ValueMatcher<Request> bodyMatchesAwsErrorFormat(String className, String error) {
+    ///////// Tests for "/runtime/restore/next" and "/runtime/restore/error" /////////
+
+    // 200 ok -- runtime has been restored and carries on
+    @Test
+    public void restoreNext200() throws Exception {
+        // arrange
+        stubFor(get(urlEqualTo("/2018-06-01/runtime/restore/next"))
+                .willReturn(aResponse().withStatus(200)));
+
+        // act
+        testObject.beforeCheckpoint();
+        testObject.restoreNext();
+        testObject.afterRestore();
+
+        // assert
+        verify(getRequestedFor(urlEqualTo("/2018-06-01/runtime/restore/next")));
+    }
+
+    // connection reset -- the cause is kept, so the runner can tell it's worth retrying
+    @Test
+    public void restoreNextConnectionReset() throws Exception {
+        // arrange
+        stubFor(get(urlEqualTo("/2018-06-01/runtime/restore/next"))
+                .willReturn(aResponse().withFault(Fault.CONNECTION_RESET_BY_PEER)));
+
+        // act
+        try {
+            testObject.restoreNext();
+            fail("Expected a LambdaException");
+        } catch (LambdaException exception) {
+            // assert
+            assertTrue(exception.getCause() instanceof IOException);
+        }
+    }
+
+    // 500 Container error -- runtime should exit
+    @Test
+    public void restoreNext500() throws Exception {
+        // arrange
+        stubFor(get(urlEqualTo("/2018-06-01/runtime/restore/next"))
+                .willReturn(aResponse().withStatus(500).withBody("Container error")));
+
+        expectedException.expect(LambdaException.class);
+        expectedException.expectMessage("GET for restore resulted in status code 500 with message: " +
+                "'Container error'. Exiting with exception");
+
+        // act
+        testObject.restoreNext();
+    }
+
+    // 202 accepted -- runtime should exit
+    @Test
+    public void returnRestoreError202() throws Exception {
+        // arrange
+        String lambdaError = "Stale credentials";
+        Exception exception = new RuntimeException(lambdaError);
+        stubFor(post(urlEqualTo("/2018-06-01/runtime/restore/error"))
+                .withHeader("Content-Type", equalTo("application/json; utf-8"))
+                .withHeader("Lambda-Runtime-Function-Error-Type", equalTo("Unhandled"))
+                .willReturn(status(202)
+                .withBody("{\"status\":\"OK\"}")));
+
+        expectedException.expect(LambdaException.class);
+        expectedException.expectMessage("Runtime unable to continue.  POSTed restore error, receiving status: 202");
+
+        // act
+        try {
+            testObject.returnRestoreError(exception);
+        } finally {
+            // assert
+            verify(postRequestedFor(urlMatching("/2018-06-01/runtime/restore/error"))
+                    .andMatching(bodyMatchesAwsErrorFormat(exception.getClass().getName(), lambdaError)));
+        }
+    }
+
+    ValueMatcher<Request> bodyMatchesAwsErrorFormat(String className, String error) {
         return request -> {
             String body = request.getBodyAsString();
             try {
-                ErrorJsonShape errorJsonShape = JSON_JR.beanFrom(ErrorJsonShape.class, body);
-                if (errorJsonShape.getErrorMessage().equals(error)
-                        && errorJsonShape.getErrorType().equals(className)
-                        && !errorJsonShape.getStackTrace().isEmpty()) {
+                Map<String, Object> errorJson = JSON_JR.mapFrom(body);
+                if (error.equals(errorJson.get("errorMessage"))
+                        && className.equals(errorJson.get("errorType"))
+                        && !((List<?>) errorJson.get("stackTrace")).isEmpty()) {
                     return MatchResult.exactMatch();
                 } else {
                     return MatchResult.noMatch();
@@ -0,0 +1,125 @@
+package uk.co.littlestickyleaves.aws.lambda.base.batch;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import uk.co.littlestickyleaves.aws.lambda.base.error.LambdaException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BatchLambdaWorkerAdapterTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void reportsOnlyFailedSqsRecords() throws Exception {
+        // arrange
+        BatchLambdaWorkerAdapter testObject = new BatchLambdaWorkerAdapter(record -> {
+            if (record.getPayload().contains("bad")) {
+                throw new IllegalArgumentException("bad record");
+            }
+        }, 4);
+        String event = "{\"Records\":[" + sqsRecord("m1", "good") + "," + sqsRecord("m2", "bad") + "," +
+                sqsRecord("m3", "good") + "," + sqsRecord("m4", "bad") + "]}";
+
+        // act
+        String result = testObject.handleRaw(event);
+
+        // assert
+        assertEquals("{\"batchItemFailures\":[{\"itemIdentifier\":\"m2\"},{\"itemIdentifier\":\"m4\"}]}", result);
+    }
+
+    @Test
+    public void handlesUnkeyedRecordsInParallel() throws Exception {
+        // arrange
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        BatchLambdaWorkerAdapter testObject = new BatchLambdaWorkerAdapter(record -> {
+            bothStarted.countDown();
+            if (!bothStarted.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("records were not handled in parallel");
+            }
+        }, 2);
+        String event = "{\"Records\":[" + sqsRecord("m1", "one") + "," + sqsRecord("m2", "two") + "]}";
+
+        // act
+        String result = testObject.handleRaw(event);
+
+        // assert
+        assertEquals("{\"batchItemFailures\":[]}", result);
+    }
+
+    @Test
+    public void keepsKinesisPartitionKeyOrderAndSkipsAfterFailure() throws Exception {
+        // arrange
+        List<String> handled = Collections.synchronizedList(new ArrayList<>());
+        BatchLambdaWorkerAdapter testObject = new BatchLambdaWorkerAdapter(record -> {
+            handled.add(record.getPayload());
+            if (record.getPayload().equals("a2")) {
+                throw new IllegalArgumentException("bad record");
+            }
+        }, 4);
+        String event = "{\"Records\":[" + kinesisRecord("1", "a", "a1") + "," + kinesisRecord("2", "b", "b1") + "," +
+                kinesisRecord("3", "a", "a2") + "," + kinesisRecord("4", "b", "b2") + "," +
+                kinesisRecord("5", "a", "a3") + "]}";
+
+        // act
+        String result = testObject.handleRaw(event);
+
+        // assert
+        assertEquals("{\"batchItemFailures\":[{\"itemIdentifier\":\"3\"},{\"itemIdentifier\":\"5\"}]}", result);
+        assertFalse(handled.contains("a3"));
+        assertTrue(handled.indexOf("a1") < handled.indexOf("a2"));
+        assertTrue(handled.indexOf("b1") < handled.indexOf("b2"));
+    }
+
+    @Test
+    public void identifiesDynamoDbRecordsBySequenceNumber() throws Exception {
+        // arrange
+        List<String> orderingKeys = Collections.synchronizedList(new ArrayList<>());
+        BatchLambdaWorkerAdapter testObject = new BatchLambdaWorkerAdapter(record -> {
+            orderingKeys.add(record.getOrderingKey());
+            throw new IllegalStateException("table unavailable");
+        }, 2);
+        String event = "{\"Records\":[{\"eventSource\":\"aws:dynamodb\",\"dynamodb\":{" +
+                "\"Keys\":{\"Id\":{\"N\":\"101\"}},\"SequenceNumber\":\"111\"}}]}";
+
+        // act
+        String result = testObject.handleRaw(event);
+
+        // assert
+        assertEquals("{\"batchItemFailures\":[{\"itemIdentifier\":\"111\"}]}", result);
+        assertEquals(Arrays.asList("{Id={N=101}}"), orderingKeys);
+    }
+
+    @Test
+    public void failsWholeBatchForUnknownEvent() throws Exception {
+        // arrange
+        BatchLambdaWorkerAdapter testObject = new BatchLambdaWorkerAdapter(record -> { }, 2);
+        expectedException.expect(LambdaException.class);
+        expectedException.expectMessage("Batch event has no Records list");
+
+        // act
+        testObject.handleRaw("{\"detail\":\"not a batch\"}");
+    }
+
+    private static String sqsRecord(String messageId, String body) {
+        return "{\"messageId\":\"" + messageId + "\",\"body\":\"" + body + "\",\"attributes\":{}," +
+                "\"eventSource\":\"aws:sqs\"}";
+    }
+
+    private static String kinesisRecord(String sequenceNumber, String partitionKey, String data) {
+        return "{\"kinesis\":{\"partitionKey\":\"" + partitionKey + "\",\"sequenceNumber\":\"" + sequenceNumber +
+                "\",\"data\":\"" + Base64.getEncoder().encodeToString(data.getBytes(StandardCharsets.UTF_8)) +
+                "\"},\"eventSource\":\"aws:kinesis\"}";
+    }
+}
@@ -0,0 +1,173 @@
+package uk.co.littlestickyleaves.aws.lambda.base.emulator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.co.littlestickyleaves.aws.lambda.base.LambdaLifecycle;
+import uk.co.littlestickyleaves.aws.lambda.base.LambdaRunner;
+import uk.co.littlestickyleaves.aws.lambda.base.LambdaWorker;
+import uk.co.littlestickyleaves.aws.lambda.base.RetryPolicy;
+import uk.co.littlestickyleaves.aws.lambda.base.api.LambdaIOHandlerKeepAlive;
+import uk.co.littlestickyleaves.aws.lambda.base.error.ErrorJsonProvider;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RuntimeApiEmulatorTest {
+
+    private RuntimeApiEmulator testObject;
+
+    private Thread runner;
+
+    private final List<String> lifecycleEvents = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setUp() throws Exception {
+        testObject = new RuntimeApiEmulator(500);
+        LambdaRunner lambdaRunner = LambdaRunner.builder((LambdaWorker) input -> {
+                    if (input.contains("fail")) {
+                        throw new IllegalArgumentException("asked to fail");
+                    }
+                    if (input.contains("slow")) {
+                        Thread.sleep(1000);
+                    }
+                    return input.toUpperCase();
+                })
+                .lambdaIOHandler(new LambdaIOHandlerKeepAlive(testObject.getEndpoint(), new ErrorJsonProvider()))
+                .lifecycle(new LambdaLifecycle() {
+                    @Override
+                    public void beforeCheckpoint() {
+                        lifecycleEvents.add("beforeCheckpoint");
+                    }
+
+                    @Override
+                    public void afterRestore() {
+                        lifecycleEvents.add("afterRestore");
+                    }
+                })
+                .checkpointRestore(true)
+                // retries posts as standard does, but gives up on GETs quickly once the emulator is closed
+                .retryPolicy(new RetryPolicy(3, 10, 100, 3, 0))
+                .build();
+        runner = new Thread(() -> {
+            try {
+                lambdaRunner.loop();
+            } catch (Exception e) {
+                // the emulator has been closed
+            }
+        }, "emulated-runtime");
+        runner.setDaemon(true);
+        runner.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        testObject.close();
+        runner.interrupt();
+        runner.join(TimeUnit.SECONDS.toMillis(5));
+        assertFalse("The runner outlived its test", runner.isAlive());
+    }
+
+    @Test
+    public void collectsResponsesErrorsAndTimeouts() throws Exception {
+        // arrange
+        EmulatedInvocation success = testObject.submit("{\"hello\":\"world\"}");
+        EmulatedInvocation error = testObject.submit("{\"please\":\"fail\"}");
+        EmulatedInvocation timeout = testObject.submit("{\"be\":\"slow\"}");
+
+        // act
+        success.getCompletion().get(5, TimeUnit.SECONDS);
+        error.getCompletion().get(5, TimeUnit.SECONDS);
+        timeout.getCompletion().get(5, TimeUnit.SECONDS);
+
+        // assert
+        assertEquals(InvocationOutcome.SUCCESS, success.getOutcome());
+        assertEquals("{\"HELLO\":\"WORLD\"}", success.getResultAsString());
+        assertEquals(InvocationOutcome.ERROR, error.getOutcome());
+        assertTrue(error.getResultAsString().contains("asked to fail"));
+        assertEquals(InvocationOutcome.TIMED_OUT, timeout.getOutcome());
+        assertEquals(0, testObject.getInitErrorCount());
+    }
+
+    @Test
+    public void keepsServingAfterTimeout() throws Exception {
+        // arrange
+        EmulatedInvocation timeout = testObject.submit("{\"be\":\"slow\"}");
+        timeout.getCompletion().get(5, TimeUnit.SECONDS);
+        EmulatedInvocation first = testObject.submit("{\"first\":1}");
+        EmulatedInvocation second = testObject.submit("{\"second\":2}");
+
+        // act
+        first.getCompletion().get(5, TimeUnit.SECONDS);
+        second.getCompletion().get(5, TimeUnit.SECONDS);
+
+        // assert
+        assertEquals(InvocationOutcome.TIMED_OUT, timeout.getOutcome());
+        assertNull(timeout.getResult());
+        assertEquals(InvocationOutcome.SUCCESS, first.getOutcome());
+        assertEquals("{\"FIRST\":1}", first.getResultAsString());
+        assertEquals(InvocationOutcome.SUCCESS, second.getOutcome());
+    }
+
+    @Test
+    public void lostAcknowledgementTakenAsDelivered() throws Exception {
+        // arrange
+        testObject.loseAcknowledgements(1);
+        EmulatedInvocation first = testObject.submit("{\"first\":1}");
+        EmulatedInvocation second = testObject.submit("{\"second\":2}");
+
+        // act
+        first.getCompletion().get(5, TimeUnit.SECONDS);
+        second.getCompletion().get(5, TimeUnit.SECONDS);
+
+        // assert
+        assertEquals(InvocationOutcome.SUCCESS, first.getOutcome());
+        assertEquals("{\"FIRST\":1}", first.getResultAsString());
+        assertEquals(InvocationOutcome.SUCCESS, second.getOutcome());
+    }
+
+    @Test
+    public void runsSimulatedCheckpointRestoreCycle() throws Exception {
+        // arrange
+        EmulatedInvocation invocation = testObject.submit("{\"after\":\"restore\"}");
+
+        // act
+        invocation.getCompletion().get(5, TimeUnit.SECONDS);
+
+        // assert
+        assertEquals(InvocationOutcome.SUCCESS, invocation.getOutcome());
+        assertEquals(1, testObject.getRestoreCount());
+        assertEquals(0, testObject.getRestoreErrorCount());
+        assertEquals(Arrays.asList("beforeCheckpoint", "afterRestore"), lifecycleEvents);
+    }
+
+    @Test
+    public void recordsAndReplaysEvents() throws Exception {
+        // arrange
+        StringWriter recording = new StringWriter();
+        testObject.recordTo(recording);
+        testObject.submit("{\n  \"one\": 1\n}").getCompletion().get(5, TimeUnit.SECONDS);
+        testObject.submit("{\"two\": 2}").getCompletion().get(5, TimeUnit.SECONDS);
+        testObject.recordTo(null);
+
+        // act
+        LoadReport report = EventReplayer.fromReader(testObject, new StringReader(recording.toString()))
+                .replay(50, 500, 5000);
+
+        // assert
+        assertEquals("{   \"one\": 1 }\n{\"two\": 2}\n", recording.toString());
+        assertEquals(50, report.getInvocationCount());
+        assertEquals(50, report.getCount(InvocationOutcome.SUCCESS));
+        assertEquals(0, report.getCount(InvocationOutcome.TIMED_OUT));
+        assertTrue(report.getThroughputPerSecond() > 0);
+        assertEquals(50, report.getServiceLatency().getCount());
+        assertTrue(report.getEndToEndLatency().getPercentile(50) >= report.getServiceLatency().getPercentile(0));
+    }
+}
@@ -43,4 +43,74 @@ public class ErrorJsonProviderTest {
         List<String> stackTrace = (ArrayList<String>) jsonMapResult.get("stackTrace");
         assertFalse(stackTrace.isEmpty());
     }
-}
\ No newline at end of file
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void boundedFramesAndCauses() throws IOException {
+        // arrange
+        testObject = new ErrorJsonProvider(3, 1);
+        IllegalStateException root = new IllegalStateException("root \"quoted\"\n");
+        RuntimeException middle = new RuntimeException(root);
+        LambdaException top = new LambdaException("top", middle);
+        top.setStackTrace(frames(10));
+
+        // act
+        String result = testObject.transform(top);
+
+        // assert
+        Map<String, Object> jsonMapResult = JSON.std.mapFrom(result);
+        assertEquals("top", jsonMapResult.get("errorMessage"));
+        List<String> stackTrace = (List<String>) jsonMapResult.get("stackTrace");
+        assertEquals(4, stackTrace.size());
+        assertEquals("Frame.method0(Frame.java:0)", stackTrace.get(0));
+        assertEquals("... 7 more", stackTrace.get(3));
+
+        Map<String, Object> cause = (Map<String, Object>) jsonMapResult.get("cause");
+        assertEquals(RuntimeException.class.getName(), cause.get("errorType"));
+        assertEquals(root.toString(), cause.get("errorMessage"));
+        assertFalse(cause.containsKey("cause"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void causeLoopAndEscaping() throws IOException {
+        // arrange
+        IllegalArgumentException first = new IllegalArgumentException("tab\there");
+        IllegalStateException second = new IllegalStateException();
+        first.initCause(second);
+        second.initCause(first);
+        second.setStackTrace(new StackTraceElement[0]);
+
+        // act
+        String result = testObject.transform(first);
+
+        // assert
+        Map<String, Object> jsonMapResult = JSON.std.mapFrom(result);
+        assertEquals("tab\there", jsonMapResult.get("errorMessage"));
+        Map<String, Object> cause = (Map<String, Object>) jsonMapResult.get("cause");
+        assertEquals(IllegalStateException.class.getName(), cause.get("errorType"));
+        assertFalse(cause.containsKey("errorMessage"));
+        assertTrue(((List<String>) cause.get("stackTrace")).isEmpty());
+        assertFalse(cause.containsKey("cause"));
+    }
+
+    private static StackTraceElement[] frames(int count) {
+        StackTraceElement[] frames = new StackTraceElement[count];
+        for (int i = 0; i < count; i++) {
+            frames[i] = new StackTraceElement("Frame", "method" + i, "Frame.java", i);
+        }
+        return frames;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeMaxFramesRejected() {
+        // act
+        new ErrorJsonProvider(-1, ErrorJsonProvider.DEFAULT_MAX_CAUSES);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeMaxCausesRejected() {
+        // act
+        new ErrorJsonProvider(ErrorJsonProvider.DEFAULT_MAX_FRAMES, -1);
+    }
+}
@@ -0,0 +1,83 @@
+package uk.co.littlestickyleaves.aws.lambda.base.http;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class HttpEventTest {
+
+    @Test
+    public void readsApiGatewayV1Event() throws Exception {
+        // arrange
+        HttpEvent testObject = event("{\"resource\":\"/orders/{id}\",\"path\":\"/orders/42\",\"httpMethod\":\"POST\"," +
+                "\"headers\":{\"Content-Type\":\"application/json\",\"X-Things\":\"a\"}," +
+                "\"multiValueHeaders\":{\"Content-Type\":[\"application/json\"],\"X-Things\":[\"a\",\"b\"]}," +
+                "\"queryStringParameters\":{\"verbose\":\"true\"},\"pathParameters\":{\"id\":\"42\"}," +
+                "\"requestContext\":{\"stage\":\"prod\",\"identity\":{\"sourceIp\":\"1.2.3.4\"}}," +
+                "\"body\":\"{\\\"qty\\\":2}\",\"isBase64Encoded\":false}");
+
+        // act
+        HttpEventFormat format = testObject.getFormat();
+
+        // assert
+        assertEquals(HttpEventFormat.API_GATEWAY_V1, format);
+        assertEquals("POST", testObject.getHttpMethod());
+        assertEquals("/orders/42", testObject.getPath());
+        assertEquals("application/json", testObject.getHeader("content-type"));
+        assertEquals("a", testObject.getHeader("X-THINGS"));
+        assertNull(testObject.getHeader("Authorization"));
+        assertEquals("true", testObject.getQueryParameter("verbose"));
+        assertEquals("42", testObject.getPathParameter("id"));
+        assertEquals("{\"qty\":2}", testObject.getBody());
+    }
+
+    @Test
+    public void readsApiGatewayV2Event() throws Exception {
+        // arrange
+        HttpEvent testObject = event("{\"version\":\"2.0\",\"routeKey\":\"GET /items\",\"rawPath\":\"/items\"," +
+                "\"rawQueryString\":\"page=2\",\"cookies\":[\"a=b\"],\"headers\":{\"accept\":\"*/*\"}," +
+                "\"queryStringParameters\":{\"page\":\"2\"}," +
+                "\"requestContext\":{\"http\":{\"method\":\"GET\",\"path\":\"/items\"}}," +
+                "\"body\":\"aGVsbG8=\",\"isBase64Encoded\":true}");
+
+        // act
+        HttpEventFormat format = testObject.getFormat();
+
+        // assert
+        assertEquals(HttpEventFormat.API_GATEWAY_V2, format);
+        assertEquals("GET", testObject.getHttpMethod());
+        assertEquals("/items", testObject.getPath());
+        assertEquals("*/*", testObject.getHeader("Accept"));
+        assertEquals("2", testObject.getQueryParameter("page"));
+        assertNull(testObject.getPathParameter("id"));
+        assertArrayEquals("hello".getBytes(StandardCharsets.UTF_8), testObject.getBodyBytes());
+    }
+
+    @Test
+    public void readsAlbEventWithMultiValueHeaders() throws Exception {
+        // arrange
+        HttpEvent testObject = event("{\"requestContext\":{\"elb\":{\"targetGroupArn\":\"arn\"}}," +
+                "\"httpMethod\":\"GET\",\"path\":\"/search\"," +
+                "\"multiValueQueryStringParameters\":{\"q\":[\"fish%20chips\",\"x\"]}," +
+                "\"multiValueHeaders\":{\"host\":[\"example.com\"]},\"body\":\"\",\"isBase64Encoded\":false}");
+
+        // act
+        HttpEventFormat format = testObject.getFormat();
+
+        // assert
+        assertEquals(HttpEventFormat.ALB, format);
+        assertEquals("/search", testObject.getPath());
+        assertEquals("fish chips", testObject.getQueryParameter("q"));
+        assertEquals("example.com", testObject.getHeader("Host"));
+        assertEquals("example.com", testObject.getHeaders().get("host"));
+        assertTrue(testObject.usesMultiValueHeaders());
+        assertEquals("", testObject.getBody());
+    }
+
+    private static HttpEvent event(String json) {
+        return new HttpEvent(ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8)));
+    }
+}
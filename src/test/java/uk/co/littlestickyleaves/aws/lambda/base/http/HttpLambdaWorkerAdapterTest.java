@@ -0,0 +1,109 @@
+package uk.co.littlestickyleaves.aws.lambda.base.http;
+
+import com.fasterxml.jackson.jr.ob.JSON;
+import org.junit.Test;
+import uk.co.littlestickyleaves.aws.lambda.base.api.ByteBufferInputStream;
+import uk.co.littlestickyleaves.aws.lambda.base.api.ByteBufferOutputStream;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class HttpLambdaWorkerAdapterTest {
+
+    @Test
+    public void writesApiGatewayResponse() throws Exception {
+        // arrange
+        HttpLambdaWorkerAdapter testObject = new HttpLambdaWorkerAdapter((event, response) ->
+                response.statusCode(201)
+                        .header("Content-Type", "application/json")
+                        .body("{\"path\":\"" + event.getPath() + "\"}"));
+
+        // act
+        Map<String, Object> result = handle(testObject, "{\"version\":\"2.0\",\"rawPath\":\"/things\"}");
+
+        // assert
+        assertEquals(201, result.get("statusCode"));
+        assertEquals(Collections.singletonMap("Content-Type", "application/json"), result.get("headers"));
+        assertEquals("{\"path\":\"/things\"}", result.get("body"));
+        assertEquals(false, result.get("isBase64Encoded"));
+        assertFalse(result.containsKey("statusDescription"));
+    }
+
+    @Test
+    public void writesBinaryAlbResponseWithMultiValueHeaders() throws Exception {
+        // arrange
+        HttpLambdaWorkerAdapter testObject = new HttpLambdaWorkerAdapter((event, response) ->
+                response.statusCode(404)
+                        .header("Content-Type", "application/octet-stream")
+                        .body("hello".getBytes(StandardCharsets.UTF_8)));
+
+        // act
+        Map<String, Object> result = handle(testObject, "{\"requestContext\":{\"elb\":{}},\"path\":\"/\"," +
+                "\"multiValueHeaders\":{\"host\":[\"example.com\"]}}");
+
+        // assert
+        assertEquals(404, result.get("statusCode"));
+        assertEquals("404 Not Found", result.get("statusDescription"));
+        assertEquals(Collections.singletonMap("Content-Type", Collections.singletonList("application/octet-stream")),
+                result.get("multiValueHeaders"));
+        assertEquals("aGVsbG8=", result.get("body"));
+        assertEquals(true, result.get("isBase64Encoded"));
+    }
+
+    @Test
+    public void repeatedHeaderKeepsEveryValue() throws Exception {
+        // arrange
+        HttpLambdaWorkerAdapter testObject = new HttpLambdaWorkerAdapter((event, response) ->
+                response.header("Set-Cookie", "a=1")
+                        .header("Vary", "Accept")
+                        .header("set-cookie", "b=2")
+                        .header("Vary", "Origin")
+                        .header("Content-Type", "text/plain"));
+
+        // act
+        Map<String, Object> apiGatewayV2 = handle(testObject, "{\"version\":\"2.0\",\"rawPath\":\"/\"}");
+        Map<String, Object> apiGatewayV1 = handle(testObject, "{\"httpMethod\":\"GET\",\"path\":\"/\"}");
+        Map<String, Object> alb = handle(testObject, "{\"requestContext\":{\"elb\":{}},\"path\":\"/\"," +
+                "\"multiValueHeaders\":{\"host\":[\"example.com\"]}}");
+
+        // assert
+        Map<String, Object> v2Headers = new LinkedHashMap<>();
+        v2Headers.put("Vary", "Accept, Origin");
+        v2Headers.put("Content-Type", "text/plain");
+        assertEquals(v2Headers, apiGatewayV2.get("headers"));
+        assertEquals(Arrays.asList("a=1", "b=2"), apiGatewayV2.get("cookies"));
+
+        assertEquals(Collections.singletonMap("Content-Type", "text/plain"), apiGatewayV1.get("headers"));
+        Map<String, Object> v1MultiValueHeaders = new LinkedHashMap<>();
+        v1MultiValueHeaders.put("Set-Cookie", Arrays.asList("a=1", "b=2"));
+        v1MultiValueHeaders.put("Vary", Arrays.asList("Accept", "Origin"));
+        assertEquals(v1MultiValueHeaders, apiGatewayV1.get("multiValueHeaders"));
+
+        Map<String, Object> albHeaders = new LinkedHashMap<>(v1MultiValueHeaders);
+        albHeaders.put("Content-Type", Collections.singletonList("text/plain"));
+        assertEquals(albHeaders, alb.get("multiValueHeaders"));
+        assertFalse(alb.containsKey("headers"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void repeatedSetCookieRejectedForSingleValueAlb() throws Exception {
+        // arrange
+        HttpLambdaWorkerAdapter testObject = new HttpLambdaWorkerAdapter((event, response) ->
+                response.header("Set-Cookie", "a=1").header("Set-Cookie", "b=2"));
+
+        // act
+        handle(testObject, "{\"requestContext\":{\"elb\":{}},\"path\":\"/\",\"headers\":{\"host\":\"example.com\"}}");
+    }
+
+    private static Map<String, Object> handle(HttpLambdaWorkerAdapter testObject, String event) throws Exception {
+        ByteBufferOutputStream output = new ByteBufferOutputStream();
+        testObject.handle(new ByteBufferInputStream(ByteBuffer.wrap(event.getBytes(StandardCharsets.UTF_8))), output);
+        return JSON.std.mapFrom(StandardCharsets.UTF_8.decode(output.toByteBuffer()).toString());
+    }
+}
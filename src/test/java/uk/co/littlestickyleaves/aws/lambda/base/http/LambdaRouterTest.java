@@ -0,0 +1,148 @@
+package uk.co.littlestickyleaves.aws.lambda.base.http;
+
+import com.fasterxml.jackson.jr.ob.JSON;
+import org.junit.Before;
+import org.junit.Test;
+import uk.co.littlestickyleaves.aws.lambda.base.api.ByteBufferInputStream;
+import uk.co.littlestickyleaves.aws.lambda.base.api.ByteBufferOutputStream;
+import uk.co.littlestickyleaves.aws.lambda.base.error.LambdaException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class LambdaRouterTest {
+
+    private LambdaRouter testObject;
+
+    @Before
+    public void setUp() {
+        testObject = LambdaRouter.builder()
+                .route("GET", "/orders", (event, response) -> response.body("list"))
+                .route("POST", "/orders", (event, response) -> response.statusCode(201).body("created"))
+                .route("GET", "/orders/latest", (event, response) -> response.body("latest"))
+                .route("GET", "/orders/{id}", (event, response) ->
+                        response.body("order " + event.getPathParameter("id")))
+                .route("GET", "/orders/{id}/lines/{line}", (event, response) ->
+                        response.body("line " + event.getPathParameter("line") + " of " +
+                                event.getPathParameter("id")))
+                .route("ANY", "/static/{file+}", (event, response) ->
+                        response.body("file " + event.getPathParameter("file")))
+                .eventSource("aws:sqs", rawInput -> "sqs")
+                .build();
+    }
+
+    @Test
+    public void literalSegmentsBeatParameters() throws Exception {
+        // act
+        Map<String, Object> latest = handle(httpEvent("GET", "/orders/latest"));
+        Map<String, Object> order = handle(httpEvent("GET", "/orders/42/"));
+        Map<String, Object> list = handle(httpEvent("GET", "/orders"));
+        Map<String, Object> created = handle(httpEvent("POST", "/orders"));
+
+        // assert
+        assertEquals("latest", latest.get("body"));
+        assertEquals("order 42", order.get("body"));
+        assertEquals("list", list.get("body"));
+        assertEquals(201, created.get("statusCode"));
+    }
+
+    @Test
+    public void parametersAndGreedyParameterMatched() throws Exception {
+        // act
+        Map<String, Object> line = handle(httpEvent("GET", "/orders/42/lines/3"));
+        Map<String, Object> file = handle(httpEvent("DELETE", "/static/css/site.css"));
+
+        // assert
+        assertEquals("line 3 of 42", line.get("body"));
+        assertEquals("file css/site.css", file.get("body"));
+    }
+
+    @Test
+    public void unmatchedPathAndMethodAnswered() throws Exception {
+        // act
+        Map<String, Object> notFound = handle(httpEvent("GET", "/customers/1"));
+        Map<String, Object> notAllowed = handle(httpEvent("DELETE", "/orders"));
+
+        // assert
+        assertEquals(404, notFound.get("statusCode"));
+        assertEquals(405, notAllowed.get("statusCode"));
+        assertEquals(Collections.singletonMap("Allow", "GET, POST"), notAllowed.get("headers"));
+    }
+
+    @Test
+    public void namedStageLeftOutOfPath() throws Exception {
+        // act
+        Map<String, Object> order = handle("{\"version\":\"2.0\",\"rawPath\":\"/prod/orders/42\"," +
+                "\"requestContext\":{\"stage\":\"prod\",\"http\":{\"method\":\"get\"}}}");
+        Map<String, Object> stageNamedLikePath = handle("{\"version\":\"2.0\",\"rawPath\":\"/orders\"," +
+                "\"requestContext\":{\"stage\":\"order\",\"http\":{\"method\":\"GET\"}}}");
+
+        // assert
+        assertEquals("order 42", order.get("body"));
+        assertEquals("list", stageNamedLikePath.get("body"));
+    }
+
+    @Test
+    public void methodMatchedWhateverTheLocale() throws Exception {
+        // arrange
+        testObject = LambdaRouter.builder()
+                .route("OPTIONS", "/orders", (event, response) -> response.statusCode(204))
+                .build();
+        Locale locale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+
+        // act
+        Map<String, Object> result;
+        try {
+            result = handle(httpEvent("options", "/orders"));
+        } finally {
+            Locale.setDefault(locale);
+        }
+
+        // assert
+        assertEquals(204, result.get("statusCode"));
+    }
+
+    @Test
+    public void eventSourceDispatched() throws Exception {
+        // act
+        String result = handleRaw("{\"Records\":[{\"messageId\":\"m1\",\"eventSource\":\"aws:sqs\",\"body\":\"x\"}]}");
+
+        // assert
+        assertEquals("sqs", result);
+    }
+
+    @Test(expected = LambdaException.class)
+    public void unknownEventSourceWithoutFallbackFails() throws Exception {
+        // act
+        handleRaw("{\"Records\":[{\"EventSource\":\"aws:sns\",\"Sns\":{}}]}");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void duplicateRouteRejected() {
+        // act
+        LambdaRouter.builder()
+                .route("GET", "/a/{id}", (event, response) -> response.body("one"))
+                .route("get", "/a/{id}", (event, response) -> response.body("two"));
+    }
+
+    private static String httpEvent(String method, String path) {
+        return "{\"version\":\"2.0\",\"rawPath\":\"" + path + "\",\"requestContext\":{\"http\":{\"method\":\"" +
+                method + "\"}},\"isBase64Encoded\":false}";
+    }
+
+    private Map<String, Object> handle(String event) throws Exception {
+        return JSON.std.mapFrom(handleRaw(event));
+    }
+
+    private String handleRaw(String event) throws Exception {
+        ByteBufferOutputStream output = new ByteBufferOutputStream();
+        testObject.handle(new ByteBufferInputStream(ByteBuffer.wrap(event.getBytes(StandardCharsets.UTF_8))), output);
+        return StandardCharsets.UTF_8.decode(output.toByteBuffer()).toString();
+    }
+}
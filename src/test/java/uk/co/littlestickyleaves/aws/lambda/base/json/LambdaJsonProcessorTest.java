@@ -0,0 +1,312 @@
+package uk.co.littlestickyleaves.aws.lambda.base.json;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.co.littlestickyleaves.aws.lambda.base.json.processor.LambdaJsonProcessor;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+import static org.junit.Assert.*;
+
+/**
+ * The types below are compiled with LambdaJsonProcessor, as part of the test sources.
+ */
+public class LambdaJsonProcessorTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void generatedCodecsAreRegistered() {
+        // act
+        JsonCodec<Order> codec = JsonCodecs.forType(Order.class);
+        JsonCodec<Unsupported> fallback = JsonCodecs.forType(Unsupported.class);
+
+        // assert
+        assertTrue(codec instanceof LambdaJsonProcessorTest_OrderJsonCodec);
+        assertTrue(fallback instanceof BeanJsonCodec);
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        // arrange
+        String json = "{\"id\":7,\"express\":true,\"status\":\"SHIPPED\",\"customer\":{\"name\":\"Anne\"}," +
+                "\"unknown\":{\"deep\":[1,2]},\"lines\":[{\"sku\":\"a\",\"quantity\":2},{\"sku\":\"b\"}]," +
+                "\"tags\":[\"x\",null],\"weight\":1.5,\"notes\":null,\"attributes\":{\"k\":\"v\"}}";
+
+        // act
+        Order order = read(Order.class, json);
+        String written = write(Order.class, order);
+
+        // assert
+        assertEquals(7L, order.getId());
+        assertTrue(order.isExpress());
+        assertEquals(Status.SHIPPED, order.getStatus());
+        assertEquals("Anne", order.customer.name);
+        assertEquals(2, order.getLines().size());
+        assertEquals(Integer.valueOf(2), order.getLines().get(0).getQuantity());
+        assertNull(order.getLines().get(1).getQuantity());
+        assertEquals(Arrays.asList("x", null), order.getTags());
+        assertEquals(1.5, order.getWeight(), 0);
+        assertEquals("v", order.getAttributes().get("k"));
+        assertEquals("{\"attributes\":{\"k\":\"v\"},\"customer\":{\"name\":\"Anne\"},\"express\":true,\"id\":7," +
+                "\"lines\":[{\"quantity\":2,\"sku\":\"a\"},{\"sku\":\"b\"}],\"status\":\"SHIPPED\"," +
+                "\"tags\":[\"x\",null],\"weight\":1.5}", written);
+    }
+
+    @Test
+    public void recursiveType() throws Exception {
+        // arrange
+        String json = "{\"children\":[{\"children\":[{\"label\":\"leaf\"}],\"label\":\"branch\"}],\"label\":\"root\"}";
+
+        // act
+        Node node = read(Node.class, json);
+
+        // assert
+        assertEquals("leaf", node.getChildren().get(0).getChildren().get(0).getLabel());
+        assertEquals(json, write(Node.class, node));
+    }
+
+    @Test
+    public void wrongKindOfValueRejected() {
+        for (String json : Arrays.asList("{\"id\":\"seven\"}", "{\"id\":1.5}", "{\"notes\":7}",
+                "{\"express\":\"yes\"}", "{\"status\":1}", "{\"weight\":\"heavy\"}",
+                "{\"lines\":[{\"quantity\":true}]}")) {
+            try {
+                // act
+                read(Order.class, json);
+                fail("Expected " + json + " to be rejected");
+            } catch (Exception e) {
+                // assert
+                assertTrue(json + " gave " + e, e instanceof JsonParseException);
+            }
+        }
+    }
+
+    @Test
+    public void reflectConfigGenerated() {
+        // arrange
+        InputStream config = getClass().getClassLoader()
+                .getResourceAsStream("META-INF/native-image/lambda-json/reflect-config.json");
+
+        // act
+        String content = new Scanner(config, "UTF-8").useDelimiter("\\A").next();
+
+        // assert
+        assertTrue(content.contains("\"name\": \"" + Order.class.getName() + "\""));
+        assertTrue(content.contains("\"name\": \"" + Unsupported.class.getName() + "\""));
+    }
+
+    // an incremental build compiles only the changed types, and mustn't lose the codecs of the others
+    @Test
+    public void incrementalBuildKeepsEarlierCodecs() throws Exception {
+        // arrange
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        File classes = temporaryFolder.newFolder("classes");
+        Path first = writeSource("First");
+        Path second = writeSource("Second");
+        String classPath = classes + File.pathSeparator + System.getProperty("java.class.path");
+        String[] options = {"-d", classes.toString(), "-cp", classPath,
+                "-processor", LambdaJsonProcessor.class.getName()};
+        assertEquals(0, compile(compiler, options, first));
+
+        // act
+        int status = compile(compiler, options, second);
+
+        // assert
+        assertEquals(0, status);
+        String services = new String(Files.readAllBytes(classes.toPath().resolve(
+                "META-INF/services/" + RegisteredJsonCodec.class.getName())), StandardCharsets.UTF_8);
+        assertEquals("incremental.FirstJsonCodec\nincremental.SecondJsonCodec\n", services);
+        String config = new String(Files.readAllBytes(classes.toPath().resolve(
+                "META-INF/native-image/lambda-json/reflect-config.json")), StandardCharsets.UTF_8);
+        assertTrue(config.contains("\"name\": \"incremental.First\""));
+        assertTrue(config.contains("\"name\": \"incremental.Second\""));
+    }
+
+    private Path writeSource(String name) throws Exception {
+        Path source = temporaryFolder.getRoot().toPath().resolve(name + ".java");
+        String content = "package incremental;\n" +
+                "@" + LambdaJson.class.getName() + "\n" +
+                "public class " + name + " {\n" +
+                "    public String value;\n" +
+                "}\n";
+        Files.write(source, content.getBytes(StandardCharsets.UTF_8));
+        return source;
+    }
+
+    private static int compile(JavaCompiler compiler, String[] options, Path source) {
+        String[] arguments = Arrays.copyOf(options, options.length + 1);
+        arguments[options.length] = source.toString();
+        return compiler.run(null, null, null, arguments);
+    }
+
+    private static <T> T read(Class<T> type, String json) throws Exception {
+        try (JsonParser parser = JsonCodecs.getJsonFactory().createParser(json)) {
+            parser.nextToken();
+            return JsonCodecs.forType(type).read(parser);
+        }
+    }
+
+    private static <T> String write(Class<T> type, T value) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (JsonGenerator generator = JsonCodecs.getJsonFactory().createGenerator(output, JsonEncoding.UTF8)) {
+            JsonCodecs.forType(type).write(value, generator);
+        }
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    public enum Status {
+        PLACED, SHIPPED
+    }
+
+    @LambdaJson
+    public static class Customer {
+        public String name;
+    }
+
+    @LambdaJson
+    public static class OrderLine {
+
+        private String sku;
+        private Integer quantity;
+
+        public String getSku() {
+            return sku;
+        }
+
+        public void setSku(String sku) {
+            this.sku = sku;
+        }
+
+        public Integer getQuantity() {
+            return quantity;
+        }
+
+        public void setQuantity(Integer quantity) {
+            this.quantity = quantity;
+        }
+    }
+
+    @LambdaJson
+    public static class Order {
+
+        public Customer customer;
+        private long id;
+        private boolean express;
+        private Status status;
+        private List<OrderLine> lines;
+        private List<String> tags;
+        private double weight;
+        private String notes;
+        private Map<String, Object> attributes;
+
+        public long getId() {
+            return id;
+        }
+
+        public void setId(long id) {
+            this.id = id;
+        }
+
+        public boolean isExpress() {
+            return express;
+        }
+
+        public void setExpress(boolean express) {
+            this.express = express;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public void setStatus(Status status) {
+            this.status = status;
+        }
+
+        public List<OrderLine> getLines() {
+            return lines;
+        }
+
+        public void setLines(List<OrderLine> lines) {
+            this.lines = lines;
+        }
+
+        public List<String> getTags() {
+            return tags;
+        }
+
+        public void setTags(List<String> tags) {
+            this.tags = tags;
+        }
+
+        public double getWeight() {
+            return weight;
+        }
+
+        public void setWeight(double weight) {
+            this.weight = weight;
+        }
+
+        public String getNotes() {
+            return notes;
+        }
+
+        public void setNotes(String notes) {
+            this.notes = notes;
+        }
+
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        public void setAttributes(Map<String, Object> attributes) {
+            this.attributes = attributes;
+        }
+    }
+
+    @LambdaJson
+    public static class Node {
+
+        private String label;
+        private List<Node> children;
+
+        public String getLabel() {
+            return label;
+        }
+
+        public void setLabel(String label) {
+            this.label = label;
+        }
+
+        public List<Node> getChildren() {
+            return children;
+        }
+
+        public void setChildren(List<Node> children) {
+            this.children = children;
+        }
+    }
+
+    @LambdaJson
+    public static class Unsupported {
+        public int[] values;
+    }
+}
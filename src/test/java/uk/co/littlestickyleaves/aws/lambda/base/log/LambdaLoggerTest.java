@@ -0,0 +1,134 @@
+package uk.co.littlestickyleaves.aws.lambda.base.log;
+
+import com.fasterxml.jackson.jr.ob.JSON;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LambdaLoggerTest {
+
+    private final ByteArrayOutputStream captured = new ByteArrayOutputStream();
+
+    private final LambdaLogger testObject = LambdaLogger.getLogger(LambdaLoggerTest.class);
+
+    @Before
+    public void setUp() {
+        LambdaLogger.setOutput(new PrintStream(captured, true));
+        LambdaLogger.configure(LogLevel.INFO, LogFormat.TEXT);
+    }
+
+    @After
+    public void tearDown() {
+        LambdaLogger.setRequestId(null);
+        LambdaLogger.setOutput(System.out);
+        LambdaLogger.configure(LogLevel.INFO, LogFormat.TEXT);
+    }
+
+    @Test
+    public void nothingWrittenUntilFlush() {
+        // act
+        testObject.info("first message");
+        String beforeFlush = output();
+        LambdaLogger.flush();
+
+        // assert
+        assertEquals("", beforeFlush);
+        assertTrue(output().contains("INFO LambdaLoggerTest - first message"));
+    }
+
+    @Test
+    public void levelsBelowConfiguredAreDropped() {
+        // arrange
+        LambdaLogger.configure(LogLevel.WARN, LogFormat.TEXT);
+
+        // act
+        testObject.debug("debug message");
+        testObject.info("info message");
+        testObject.warn("warn message");
+        LambdaLogger.flush();
+
+        // assert
+        String result = output();
+        assertFalse(result.contains("debug message"));
+        assertFalse(result.contains("info message"));
+        assertTrue(result.contains("warn message"));
+        assertFalse(testObject.isEnabled(LogLevel.INFO));
+    }
+
+    @Test
+    public void fatalLoggedAtFatalLevel() {
+        // arrange
+        LambdaLogger.configure(LogLevel.FATAL, LogFormat.TEXT);
+
+        // act
+        testObject.error("error message");
+        testObject.fatal("fatal message", new IllegalStateException("bad state"));
+        LambdaLogger.flush();
+
+        // assert
+        String result = output();
+        assertFalse(result.contains("error message"));
+        assertTrue(result.contains("FATAL LambdaLoggerTest - fatal message"));
+    }
+
+    @Test
+    public void jsonFormatWithRequestId() throws Exception {
+        // arrange
+        LambdaLogger.configure(LogLevel.INFO, LogFormat.JSON);
+        LambdaLogger.setRequestId("awsId");
+
+        // act
+        testObject.error("something \"quoted\"\nand split", new IllegalStateException("bad state"));
+        LambdaLogger.flush();
+
+        // assert
+        Map<String, Object> line = JSON.std.mapFrom(output().trim());
+        assertEquals("ERROR", line.get("level"));
+        assertEquals("awsId", line.get("requestId"));
+        assertEquals("something \"quoted\"\nand split", line.get("message"));
+        assertEquals(IllegalStateException.class.getName(), line.get("errorType"));
+        assertEquals("bad state", line.get("errorMessage"));
+    }
+
+    @Test
+    public void manyThreadsOverfillingTheBuffer() throws Exception {
+        // arrange
+        int threads = 4;
+        int perThread = 2000;
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+
+        // act
+        for (int t = 0; t < threads; t++) {
+            executorService.submit(() -> {
+                start.await();
+                for (int i = 0; i < perThread; i++) {
+                    testObject.info("message");
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+        LambdaLogger.flush();
+
+        // assert
+        assertEquals(threads * perThread, output().split("\n").length);
+    }
+
+    private String output() {
+        return new String(captured.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,95 @@
+package uk.co.littlestickyleaves.aws.lambda.base.metrics;
+
+import com.fasterxml.jackson.jr.ob.JSON;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class InvocationMetricsTest {
+
+    private final ByteArrayOutputStream captured = new ByteArrayOutputStream();
+
+    private InvocationMetrics testObject;
+
+    @Before
+    public void setUp() {
+        testObject = new InvocationMetrics(new PrintStream(captured, true), 1, TimeUnit.HOURS);
+    }
+
+    @Test
+    public void bucketBoundariesAreContiguous() {
+        for (long micros = 0; micros < 100_000; micros++) {
+            int index = PhaseHistogram.bucketIndex(micros);
+            assertTrue(PhaseHistogram.bucketLowerBound(index) <= micros);
+            assertTrue(PhaseHistogram.bucketLowerBound(index + 1) > micros);
+        }
+        assertEquals(PhaseHistogram.BUCKET_COUNT - 1, PhaseHistogram.bucketIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentilesWithinBucketAccuracy() {
+        // arrange
+        PhaseHistogram histogram = new PhaseHistogram();
+        for (int micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros);
+        }
+
+        // act
+        PhaseHistogram.Snapshot snapshot = histogram.snapshotAndReset();
+
+        // assert
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(1000, snapshot.getMax());
+        assertEquals(500, snapshot.getPercentile(50), 500 * 0.2);
+        assertEquals(990, snapshot.getPercentile(99), 990 * 0.2);
+        assertEquals(0, histogram.snapshotAndReset().getCount());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void emitsEmbeddedMetricFormat() throws Exception {
+        // arrange
+        testObject.record(Phase.HANDLE, TimeUnit.MILLISECONDS.toNanos(5));
+        testObject.record(Phase.HANDLE, TimeUnit.MILLISECONDS.toNanos(5));
+        testObject.record(Phase.POLL, TimeUnit.MILLISECONDS.toNanos(40));
+
+        // act
+        testObject.emitIfDue();
+        String beforeDue = output();
+        testObject.emit();
+
+        // assert
+        assertEquals("", beforeDue);
+        Map<String, Object> line = JSON.std.mapFrom(output().trim());
+        Map<String, Object> aws = (Map<String, Object>) line.get("_aws");
+        List<Object> directives = (List<Object>) aws.get("CloudWatchMetrics");
+        Map<String, Object> directive = (Map<String, Object>) directives.get(0);
+        assertEquals(EmbeddedMetricFormatWriter.NAMESPACE, directive.get("Namespace"));
+        assertEquals(2, ((List<Object>) directive.get("Metrics")).size());
+
+        Map<String, Object> handleTime = (Map<String, Object>) line.get("HandleTime");
+        assertEquals(2, ((Number) handleTime.get("Count")).intValue());
+        assertEquals(1, ((List<Object>) handleTime.get("Values")).size());
+        assertEquals(2, ((Number) ((List<Object>) handleTime.get("Counts")).get(0)).intValue());
+        assertTrue(line.containsKey("PollTime"));
+        assertFalse(line.containsKey("PostTime"));
+    }
+
+    @Test
+    public void nothingEmittedWhenNothingRecorded() {
+        testObject.emit();
+        assertEquals("", output());
+    }
+
+    private String output() {
+        return new String(captured.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
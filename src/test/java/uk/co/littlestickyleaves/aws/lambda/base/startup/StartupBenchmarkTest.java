@@ -0,0 +1,34 @@
+package uk.co.littlestickyleaves.aws.lambda.base.startup;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class StartupBenchmarkTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void timesFirstNextOfEchoLambda() throws Exception {
+        // arrange
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        StartupBenchmark testObject = new StartupBenchmark(
+                Arrays.asList(java, "-cp", System.getProperty("java.class.path"), EchoLambda.class.getName()),
+                Paths.get("src/test/resources/startup/training-events.jsonl"), 20,
+                new File(temporaryFolder.getRoot(), "startup.log"));
+
+        // act
+        StartupBenchmark.Timings timings = testObject.run();
+
+        // assert
+        assertTrue(timings.getFirstNextMillis() > 0);
+        assertTrue(timings.getFirstResponseMillis() >= timings.getFirstNextMillis());
+    }
+}
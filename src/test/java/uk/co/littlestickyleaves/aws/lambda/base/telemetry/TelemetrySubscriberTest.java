@@ -0,0 +1,109 @@
+package uk.co.littlestickyleaves.aws.lambda.base.telemetry;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import uk.co.littlestickyleaves.aws.lambda.base.error.LambdaException;
+import uk.co.littlestickyleaves.aws.lambda.base.metrics.InvocationMetrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.*;
+
+/**
+ * Uses WireMock as a stand-in for the Extensions and Telemetry APIs, and posts events to the subscriber's listener
+ * as Lambda would.
+ */
+public class TelemetrySubscriberTest {
+
+    private static final int HOST_PORT = 8091;
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(HOST_PORT);
+
+    private final ByteArrayOutputStream metricsOutput = new ByteArrayOutputStream();
+
+    private InvocationMetrics invocationMetrics;
+
+    private TelemetrySubscriber testObject;
+
+    @Before
+    public void setUp() {
+        invocationMetrics = new InvocationMetrics(new PrintStream(metricsOutput), 1, TimeUnit.HOURS);
+        testObject = new TelemetrySubscriber("localhost:" + HOST_PORT, invocationMetrics, "localhost");
+        stubFor(get(urlEqualTo("/2020-01-01/extension/event/next"))
+                .willReturn(aResponse().withStatus(200).withFixedDelay(10000)));
+    }
+
+    @After
+    public void tearDown() {
+        testObject.close();
+    }
+
+    @Test
+    public void subscribesAndRecordsPlatformDurations() throws Exception {
+        // arrange
+        stubFor(post(urlEqualTo("/2020-01-01/extension/register"))
+                .willReturn(aResponse().withStatus(200).withHeader("Lambda-Extension-Identifier", "ext-id")
+                        .withBody("{}")));
+        stubFor(put(urlEqualTo("/2022-07-01/telemetry"))
+                .willReturn(aResponse().withStatus(200).withBody("OK")));
+        testObject.init();
+        String events = "[" +
+                "{\"type\":\"platform.initReport\",\"record\":{\"phase\":\"init\",\"metrics\":{\"durationMs\":125.5}}}," +
+                "{\"type\":\"platform.start\",\"record\":{\"requestId\":\"id\"}}," +
+                "{\"type\":\"platform.runtimeDone\",\"record\":{\"requestId\":\"id\"," +
+                "\"metrics\":{\"durationMs\":20.25,\"producedBytes\":7}}}," +
+                "{\"type\":\"platform.report\",\"record\":{\"requestId\":\"id\"," +
+                "\"metrics\":{\"durationMs\":21.0,\"billedDurationMs\":22,\"maxMemoryUsedMB\":60}}}]";
+
+        // act
+        int status = postToListener(events);
+        invocationMetrics.emit();
+
+        // assert
+        assertEquals(200, status);
+        verify(postRequestedFor(urlEqualTo("/2020-01-01/extension/register"))
+                .withHeader("Lambda-Extension-Name", matching(".+")));
+        verify(putRequestedFor(urlEqualTo("/2022-07-01/telemetry"))
+                .withHeader("Lambda-Extension-Identifier", equalTo("ext-id"))
+                .withRequestBody(containing("\"URI\":\"http://localhost:" + testObject.getListenerPort() + "\""))
+                .withRequestBody(containing("\"types\":[\"platform\"]")));
+        String metrics = new String(metricsOutput.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(metrics.contains("\"PlatformInitDuration\":{"));
+        assertTrue(metrics.contains("\"PlatformRuntimeDuration\":{"));
+        assertTrue(metrics.contains("\"PlatformBilledDuration\":{"));
+        assertTrue(metrics.contains("\"Max\":125500"));
+        assertFalse(metrics.contains("PlatformRestoreDuration"));
+    }
+
+    @Test(expected = LambdaException.class)
+    public void failedRegistrationFailsInit() throws Exception {
+        // arrange
+        stubFor(post(urlEqualTo("/2020-01-01/extension/register"))
+                .willReturn(aResponse().withStatus(403).withBody("{\"errorMessage\":\"Forbidden\"}")));
+
+        // act
+        testObject.init();
+    }
+
+    private int postToListener(String body) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection)
+                new URL("http://localhost:" + testObject.getListenerPort() + "/").openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return connection.getResponseCode();
+    }
+}
@@ -0,0 +1,86 @@
+package uk.co.littlestickyleaves.aws.lambda.base.trace;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class XRaySubsegmentEmitterTest {
+
+    private static final String TRACE_HEADER = "Root=1-5759e988-bd862e3fe1be46a994272793;Parent=53995c3f42cd8ad8;" +
+            "Sampled=1";
+
+    private DatagramSocket daemon;
+
+    private XRaySubsegmentEmitter testObject;
+
+    @Before
+    public void setUp() throws Exception {
+        daemon = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        daemon.setSoTimeout(5000);
+        testObject = new XRaySubsegmentEmitter(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                daemon.getLocalPort()));
+    }
+
+    @After
+    public void tearDown() {
+        testObject.close();
+        daemon.close();
+    }
+
+    @Test
+    public void sendsSubsegmentDocumentToDaemon() throws Exception {
+        // arrange
+        RuntimeSubsegment subsegment = RuntimeSubsegment.start(TRACE_HEADER);
+        long start = System.nanoTime();
+        subsegment.addPhase("handle", start, start + 2000000);
+        subsegment.addPhase("post", start + 2000000, start + 3000000);
+
+        // act
+        testObject.emit(subsegment);
+
+        // assert
+        DatagramPacket packet = new DatagramPacket(new byte[65536], 65536);
+        daemon.receive(packet);
+        String datagram = new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8);
+        String[] lines = datagram.split("\n");
+        assertEquals("{\"format\":\"json\",\"version\":1}", lines[0]);
+        assertTrue(lines[1].startsWith("{\"type\":\"subsegment\",\"name\":\"runtime\",\"id\":\""));
+        assertTrue(lines[1].contains("\"trace_id\":\"1-5759e988-bd862e3fe1be46a994272793\""));
+        assertTrue(lines[1].contains("\"parent_id\":\"53995c3f42cd8ad8\""));
+        assertTrue(lines[1].contains("{\"name\":\"handle\""));
+        assertTrue(lines[1].contains("{\"name\":\"post\""));
+    }
+
+    @Test
+    public void unsampledTraceHasNoSubsegment() {
+        // act
+        RuntimeSubsegment result = RuntimeSubsegment.start("Root=1-5759e988-bd862e3fe1be46a994272793;" +
+                "Parent=53995c3f42cd8ad8;Sampled=0");
+
+        // assert
+        assertNull(result);
+        assertNull(RuntimeSubsegment.start(null));
+    }
+
+    @Test
+    public void parsesDaemonAddress() {
+        // act
+        InetSocketAddress plain = XRaySubsegmentEmitter.parseDaemonAddress("169.254.79.129:2000");
+        InetSocketAddress split = XRaySubsegmentEmitter.parseDaemonAddress(
+                "tcp:127.0.0.1:2001 udp:127.0.0.2:2002");
+        InetSocketAddress unset = XRaySubsegmentEmitter.parseDaemonAddress(null);
+
+        // assert
+        assertEquals(new InetSocketAddress("169.254.79.129", 2000), plain);
+        assertEquals(new InetSocketAddress("127.0.0.2", 2002), split);
+        assertEquals(new InetSocketAddress("127.0.0.1", 2000), unset);
+    }
+}